@@ -0,0 +1,43 @@
+package com.vstream.video_service.controller;
+
+import com.vstream.video_service.storage.StorageKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Per-request key work in streamHLSFile/streamHLSRenditionFile before any object is touched; the location
+// lookup itself is a cache hit and not included
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HlsPathBenchmark {
+
+    public String uploaderId = "uploader-1";
+    public String videoId = "3f2b8c9e-4d1a-4b7e-9c2f-8a6d5e4b3c21";
+    public String rendition = "720p";
+    public String fileName = "segment42.ts";
+    public String contentHash = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Benchmark
+    public String masterPlaylist() {
+        if (!VideoMetadataController.isSafePathSegment(uploaderId, videoId, "master.m3u8")) {
+            return null;
+        }
+        return StorageKeys.child(StorageKeys.hls(uploaderId, UUID.fromString(videoId), contentHash), "master.m3u8");
+    }
+
+    @Benchmark
+    public String renditionSegment() {
+        if (!VideoMetadataController.isSafePathSegment(uploaderId, videoId, rendition, fileName)) {
+            return null;
+        }
+        return StorageKeys.child(StorageKeys.hls(uploaderId, UUID.fromString(videoId), contentHash),
+                rendition, fileName);
+    }
+}
@@ -0,0 +1,52 @@
+package com.vstream.video_service.model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// VideoLikeId is the key Hibernate's persistence context hashes on every like lookup
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VideoLikeIdBenchmark {
+
+    private static final int IDS = 4096;
+
+    private VideoLike.VideoLikeId likeId;
+    private VideoLike.VideoLikeId[] probes;
+    private Set<VideoLike.VideoLikeId> likeIds;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        likeId = new VideoLike.VideoLikeId(UUID.randomUUID(), UUID.randomUUID());
+        likeIds = new HashSet<>();
+        probes = new VideoLike.VideoLikeId[IDS];
+        for (int i = 0; i < IDS; i++) {
+            VideoLike.VideoLikeId stored = new VideoLike.VideoLikeId(UUID.randomUUID(), UUID.randomUUID());
+            likeIds.add(stored);
+            // Equal but not identical, like an id built from a request
+            probes[i] = new VideoLike.VideoLikeId(stored.getUserId(), stored.getVideoId());
+        }
+    }
+
+    @Benchmark
+    public int hashCodeOnly() {
+        return likeId.hashCode();
+    }
+
+    @Benchmark
+    public boolean setLookup() {
+        next = (next + 1) & (IDS - 1);
+        return likeIds.contains(probes[next]);
+    }
+}
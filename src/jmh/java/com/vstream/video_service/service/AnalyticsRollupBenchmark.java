@@ -0,0 +1,78 @@
+package com.vstream.video_service.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Period keys and like buckets computed for every upload and like change. groupUploads replays the old
+// in-memory getUploadTrends grouping over a batch of dates; formatterPerRow is the pattern it used to
+// build for each row, kept as a baseline.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AnalyticsRollupBenchmark {
+
+    private static final int ROWS = 1024;
+
+    @Param({"day", "week", "month"})
+    public String period;
+
+    private LocalDate[] uploadDates;
+    private long[] likeCounts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        uploadDates = new LocalDate[ROWS];
+        likeCounts = new long[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            uploadDates[i] = LocalDate.of(2020, 1, 1).plusDays(random.nextInt(5 * 365));
+            likeCounts[i] = random.nextLong(500);
+        }
+    }
+
+    @Benchmark
+    public String getPeriodKey() {
+        return AnalyticsRollupService.getPeriodKey(nextDate(), period);
+    }
+
+    @Benchmark
+    public String formatterPerRow() {
+        return nextDate().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    }
+
+    @Benchmark
+    public Map<String, Long> groupUploads() {
+        Map<String, Long> counts = new HashMap<>();
+        for (LocalDate uploadDate : uploadDates) {
+            counts.merge(AnalyticsRollupService.getPeriodKey(uploadDate, period), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public void getLikeCountRange(Blackhole blackhole) {
+        for (long likeCount : likeCounts) {
+            blackhole.consume(AnalyticsRollupService.getLikeCountRange(likeCount));
+        }
+    }
+
+    private LocalDate nextDate() {
+        next = (next + 1) & (ROWS - 1);
+        return uploadDates[next];
+    }
+}
@@ -0,0 +1,269 @@
+package com.vstream.video_service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.vstream.video_service.dto.CommentDTO;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+// First page of top-level comments, newest first, for the most recently read videos. Writes patch the cached
+// page in place after their transaction commits instead of dropping it, so a popular video keeps answering
+// "open video, show comments" from memory while people comment on it. Pages are immutable lists that are
+// swapped on every change, so readers never see a half-applied update. The TTL bounds how stale a page can
+// get from writes made on other instances. Reads and patches only lock the one video they touch.
+@Slf4j
+@Component
+public class CommentFirstPageCache {
+
+    // Same order as CommentRepository.findPageNewestFirst; ids compare like MySQL compares binary(16)
+    private static final Comparator<CommentDTO> NEWEST_FIRST = Comparator
+            .comparing(CommentDTO::getCreatedAt)
+            .thenComparing(CommentDTO::getCommentId, CommentFirstPageCache::compareUnsigned)
+            .reversed();
+
+    @Value("${comments.first-page-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${comments.first-page-cache.max-videos:10000}")
+    private int maxVideos;
+
+    // Number of comments kept per video; requests for more than this go to the database
+    @Value("${comments.first-page-cache.page-size:20}")
+    private int pageSize;
+
+    @Value("${comments.first-page-cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private Cache<UUID, FirstPage> pages;
+    // Stamp of the last write to each recently written video. A page loaded while a write to its video was in
+    // flight is not stored, since it may miss it; writes to other videos do not affect it.
+    private final ConcurrentHashMap<UUID, Long> lastWrites = new ConcurrentHashMap<>();
+    // Highest stamp dropped from lastWrites; stands in for the last write of every video no longer tracked
+    private final AtomicLong forgottenWrites = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private record FirstPage(List<CommentDTO> comments, boolean hasMore) {
+    }
+
+    public record CachedPage(List<CommentDTO> comments, boolean hasMore) {
+    }
+
+    @PostConstruct
+    void init() {
+        // The TTL runs from the load; patching a page does not make it any fresher
+        pages = Caffeine.newBuilder()
+                .maximumSize(maxVideos)
+                .expireAfter(new Expiry<UUID, FirstPage>() {
+                    @Override
+                    public long expireAfterCreate(UUID videoId, FirstPage page, long currentTime) {
+                        return TimeUnit.SECONDS.toNanos(ttlSeconds);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID videoId, FirstPage page, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID videoId, FirstPage page, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+        log.info("Comment first page cache {} for {} video(s) of {} comment(s)", enabled ? "enabled" : "disabled",
+                maxVideos, pageSize);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long version(UUID videoId) {
+        // forgottenWrites is raised before a stamp is dropped, so a missing stamp is always covered by it
+        Long lastWrite = lastWrites.get(videoId);
+        return lastWrite != null ? lastWrite : forgottenWrites.get();
+    }
+
+    // The newest limit comments and whether more exist after them; null if the page is not cached or too short
+    public CachedPage get(UUID videoId, int limit) {
+        FirstPage page = enabled ? pages.getIfPresent(videoId) : null;
+        if (page == null || (page.comments().size() < limit && page.hasMore())) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        List<CommentDTO> comments = page.comments();
+        if (comments.size() > limit) {
+            return new CachedPage(comments.subList(0, limit), true);
+        }
+        return new CachedPage(comments, page.hasMore());
+    }
+
+    // comments holds at most pageSize entries; loadedAtVersion is version(videoId) read before the query ran.
+    // Checked under the video's entry lock: a write stamps the video before it patches the entry, so it either
+    // rejects this page or patches it once stored.
+    public void put(UUID videoId, List<CommentDTO> comments, boolean hasMore, long loadedAtVersion) {
+        if (!enabled) {
+            return;
+        }
+        FirstPage loaded = new FirstPage(List.copyOf(comments), hasMore);
+        pages.asMap().compute(videoId, (id, cached) -> loadedAtVersion == version(id) ? loaded : cached);
+    }
+
+    public void commentAdded(CommentDTO comment) {
+        afterCommit(() -> update(comment.getVideoId(), page -> {
+            List<CommentDTO> comments = new ArrayList<>(page.comments());
+            int position = 0;
+            while (position < comments.size() && NEWEST_FIRST.compare(comments.get(position), comment) < 0) {
+                position++;
+            }
+            if (position == comments.size() && page.hasMore()) {
+                // Older than everything cached, it belongs on a later page
+                return page;
+            }
+            comments.add(position, comment);
+            boolean hasMore = page.hasMore();
+            if (comments.size() > pageSize) {
+                comments.remove(comments.size() - 1);
+                hasMore = true;
+            }
+            return new FirstPage(List.copyOf(comments), hasMore);
+        }));
+    }
+
+    public void commentUpdated(CommentDTO comment) {
+        afterCommit(() -> update(comment.getVideoId(), page -> replace(page, comment.getCommentId(), cached -> {
+            CommentDTO updated = copy(cached);
+            updated.setContent(comment.getContent());
+            updated.setUpdatedAt(comment.getUpdatedAt());
+            return updated;
+        })));
+    }
+
+    public void replyCountChanged(UUID videoId, UUID parentCommentId, long delta) {
+        afterCommit(() -> update(videoId, page -> replace(page, parentCommentId, cached -> {
+            CommentDTO updated = copy(cached);
+            updated.setReplyCount(updated.getReplyCount() + delta);
+            return updated;
+        })));
+    }
+
+    public void commentDeleted(UUID videoId, UUID commentId) {
+        afterCommit(() -> update(videoId, page -> {
+            List<CommentDTO> comments = new ArrayList<>(page.comments());
+            if (!comments.removeIf(cached -> cached.getCommentId().equals(commentId))) {
+                return page;
+            }
+            // The page cannot be refilled from memory, let the next read load it
+            return page.hasMore() ? null : new FirstPage(List.copyOf(comments), false);
+        }));
+    }
+
+    public void evictAll(Collection<UUID> videoIds) {
+        afterCommit(() -> {
+            for (UUID videoId : videoIds) {
+                recordWrite(videoId);
+            }
+            pages.invalidateAll(videoIds);
+        });
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("videos", pages.estimatedSize());
+        stats.put("maxVideos", (long) maxVideos);
+        return stats;
+    }
+
+    // Applies a change to a cached page; returning null drops the page
+    private void update(UUID videoId, UnaryOperator<FirstPage> change) {
+        recordWrite(videoId);
+        pages.asMap().computeIfPresent(videoId, (id, page) -> change.apply(page));
+    }
+
+    private void recordWrite(UUID videoId) {
+        long stamp = writes.incrementAndGet();
+        lastWrites.put(videoId, stamp);
+        // Drop the older half once twice as many videos are tracked, so a write costs O(1) on average
+        if (lastWrites.size() > 2 * maxVideos) {
+            long cutoff = stamp - maxVideos;
+            lastWrites.forEach((id, lastWrite) -> {
+                if (lastWrite <= cutoff) {
+                    forgottenWrites.accumulateAndGet(lastWrite, Math::max);
+                    lastWrites.remove(id, lastWrite);
+                }
+            });
+        }
+    }
+
+    private static FirstPage replace(FirstPage page, UUID commentId, UnaryOperator<CommentDTO> change) {
+        List<CommentDTO> comments = new ArrayList<>(page.comments());
+        for (int i = 0; i < comments.size(); i++) {
+            if (comments.get(i).getCommentId().equals(commentId)) {
+                comments.set(i, change.apply(comments.get(i)));
+                return new FirstPage(List.copyOf(comments), page.hasMore());
+            }
+        }
+        return page;
+    }
+
+    private static CommentDTO copy(CommentDTO comment) {
+        CommentDTO copy = new CommentDTO();
+        copy.setCommentId(comment.getCommentId());
+        copy.setVideoId(comment.getVideoId());
+        copy.setUserId(comment.getUserId());
+        copy.setContent(comment.getContent());
+        copy.setCreatedAt(comment.getCreatedAt());
+        copy.setUpdatedAt(comment.getUpdatedAt());
+        copy.setParentCommentId(comment.getParentCommentId());
+        copy.setReplyCount(comment.getReplyCount());
+        return copy;
+    }
+
+    private static int compareUnsigned(UUID left, UUID right) {
+        int result = Long.compareUnsigned(left.getMostSignificantBits(), right.getMostSignificantBits());
+        return result != 0 ? result : Long.compareUnsigned(left.getLeastSignificantBits(), right.getLeastSignificantBits());
+    }
+
+    // Same rule as VideoMetadataCache: changes made inside a transaction only become visible once it commits
+    private void afterCommit(Runnable change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+}
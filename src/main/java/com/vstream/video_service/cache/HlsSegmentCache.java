@@ -0,0 +1,304 @@
+package com.vstream.video_service.cache;
+
+import jakarta.annotation.PostConstruct;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// In-process cache for HLS playlists and segments, bounded by total bytes and kept in direct buffers
+// so hot files stay off the heap. New entries land in a small LRU window; when they fall out of it they
+// only enter the main LRU if a frequency sketch says they are requested more often than the entry they
+// would push out (W-TinyLFU). A scan over long-tail segments therefore cannot flush the hot set.
+// A file is only read into memory once the sketch has seen it requested before, and by one request at a
+// time; everything else is served from storage. Lookups go through a concurrent map, the policy state is
+// only locked to change it, and a hit that finds the lock busy skips recording its access rather than wait,
+// just as a miss that finds it busy is served from storage without being considered for loading.
+@Slf4j
+@Component
+public class HlsSegmentCache {
+
+    // Requests, including the current one, the sketch must have counted before a file is loaded
+    private static final int MIN_LOAD_FREQUENCY = 2;
+
+    @Value("${hls.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hls.cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${hls.cache.max-entry-bytes:8388608}")
+    private long maxEntryBytes;
+
+    // Share of the capacity given to the admission window
+    @Value("${hls.cache.window-percent:1}")
+    private int windowPercent;
+
+    private final ConcurrentHashMap<String, CachedFile> entries = new ConcurrentHashMap<>();
+    private final Set<String> loading = ConcurrentHashMap.newKeySet();
+    private final AtomicLong loadingBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // Everything below is guarded by policyLock
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final LinkedHashMap<String, CachedFile> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, CachedFile> main = new LinkedHashMap<>(16, 0.75f, true);
+    private FrequencySketch sketch;
+    private long windowMaxBytes;
+    private long mainMaxBytes;
+    private long windowBytes;
+    private long mainBytes;
+    private long evictions;
+    private long rejections;
+    private long expirations;
+    // Bumped by every invalidatePrefix; a load that overlapped one may hold bytes of the invalidated files.
+    // Written under policyLock, read without it when a load starts.
+    private volatile long invalidations;
+
+    @PostConstruct
+    void init() {
+        // The window must fit at least one maximum sized entry, otherwise large segments never get a chance
+        windowMaxBytes = Math.min(maxBytes / 2, Math.max(maxBytes * windowPercent / 100, maxEntryBytes));
+        mainMaxBytes = maxBytes - windowMaxBytes;
+        // Size the sketch for roughly the number of average sized segments the cache can hold
+        sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxBytes / (512 * 1024))));
+        log.info("HLS segment cache {} with {} bytes ({} window, {} main)", enabled ? "enabled" : "disabled",
+                maxBytes, windowMaxBytes, mainMaxBytes);
+    }
+
+    public boolean accepts(long size) {
+        return enabled && size <= maxEntryBytes;
+    }
+
+    // Records the access even on a miss so the sketch learns which files are popular
+    public CachedFile get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        CachedFile cachedFile = entries.get(key);
+        if (cachedFile != null && cachedFile.isExpired()) {
+            policyLock.lock();
+            try {
+                if (entries.get(key) == cachedFile) {
+                    remove(key);
+                    expirations++;
+                }
+            } finally {
+                policyLock.unlock();
+            }
+            cachedFile = null;
+        }
+        if (cachedFile == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        // Frequency and recency only need to be roughly right, a busy lock is not worth waiting for
+        if (policyLock.tryLock()) {
+            try {
+                sketch.increment(key);
+                if (cachedFile != null && window.get(key) == null) {
+                    main.get(key);
+                }
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return cachedFile;
+    }
+
+    // Whether a missed file is worth reading into memory: small enough, and requested before. A one-off request,
+    // typical for long-tail segments, is served from storage without allocating anything.
+    public boolean admits(String key, long size) {
+        if (!accepts(size) || !policyLock.tryLock()) {
+            // Like get(), a busy lock is not worth waiting for; this request is served from storage instead
+            return false;
+        }
+        try {
+            return sketch.frequency(key) >= MIN_LOAD_FREQUENCY;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    // Reads the object into a direct buffer and offers it to the cache. The returned entry can be used to
+    // answer the current request even if admission later rejects it. Returns null, and the caller serves the
+    // file from storage, if another request is already loading it, if loads in flight already hold as many
+    // bytes as the window, or if the object ended before size bytes, i.e. it was replaced while it was read.
+    // An entry whose load overlapped an invalidation is returned but not cached.
+    public CachedFile load(String key, InputStreamSupplier inputStreamSupplier, long size, long lastModified,
+                           long ttlMillis) throws IOException {
+        if (!loading.add(key)) {
+            return null;
+        }
+        long loadedAtInvalidation = invalidations;
+        try {
+            if (loadingBytes.addAndGet(size) > windowMaxBytes) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+            try (ReadableByteChannel channel = Channels.newChannel(inputStreamSupplier.open())) {
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        return null;
+                    }
+                }
+            }
+            buffer.flip();
+            long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0;
+            CachedFile cachedFile = new CachedFile(key, buffer.asReadOnlyBuffer(), lastModified, expiresAt);
+            put(cachedFile, loadedAtInvalidation);
+            return cachedFile;
+        } finally {
+            loadingBytes.addAndGet(-size);
+            loading.remove(key);
+        }
+    }
+
+    @FunctionalInterface
+    public interface InputStreamSupplier {
+        InputStream open() throws IOException;
+    }
+
+    private void put(CachedFile cachedFile, long loadedAtInvalidation) {
+        policyLock.lock();
+        try {
+            if (loadedAtInvalidation != invalidations) {
+                return;
+            }
+            remove(cachedFile.getKey());
+            window.put(cachedFile.getKey(), cachedFile);
+            entries.put(cachedFile.getKey(), cachedFile);
+            windowBytes += cachedFile.size();
+            while (windowBytes > windowMaxBytes) {
+                Iterator<CachedFile> iterator = window.values().iterator();
+                CachedFile candidate = iterator.next();
+                iterator.remove();
+                windowBytes -= candidate.size();
+                admitToMain(candidate);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private void admitToMain(CachedFile candidate) {
+        if (candidate.size() > mainMaxBytes) {
+            rejections++;
+            entries.remove(candidate.getKey());
+            return;
+        }
+        int candidateFrequency = sketch.frequency(candidate.getKey());
+        while (mainBytes + candidate.size() > mainMaxBytes) {
+            Iterator<CachedFile> iterator = main.values().iterator();
+            CachedFile victim = iterator.next();
+            if (candidateFrequency <= sketch.frequency(victim.getKey())) {
+                // The entry already in main is at least as popular, drop the newcomer instead
+                rejections++;
+                entries.remove(candidate.getKey());
+                return;
+            }
+            iterator.remove();
+            entries.remove(victim.getKey());
+            mainBytes -= victim.size();
+            evictions++;
+        }
+        main.put(candidate.getKey(), candidate);
+        mainBytes += candidate.size();
+    }
+
+    private void remove(String key) {
+        entries.remove(key);
+        CachedFile removed = window.remove(key);
+        if (removed != null) {
+            windowBytes -= removed.size();
+        }
+        removed = main.remove(key);
+        if (removed != null) {
+            mainBytes -= removed.size();
+        }
+    }
+
+    // Drops every entry under a key prefix, used when a video is deleted or re-transcoded
+    public void invalidatePrefix(String keyPrefix) {
+        String prefix = keyPrefix + "/";
+        policyLock.lock();
+        try {
+            invalidations++;
+            windowBytes -= removeByPrefix(window, prefix);
+            mainBytes -= removeByPrefix(main, prefix);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private long removeByPrefix(Map<String, CachedFile> policyEntries, String prefix) {
+        long removedBytes = 0;
+        Iterator<CachedFile> iterator = policyEntries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedFile cachedFile = iterator.next();
+            if (cachedFile.getKey().startsWith(prefix)) {
+                iterator.remove();
+                entries.remove(cachedFile.getKey());
+                removedBytes += cachedFile.size();
+            }
+        }
+        return removedBytes;
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        policyLock.lock();
+        try {
+            stats.put("evictions", evictions);
+            stats.put("admissionRejections", rejections);
+            stats.put("expirations", expirations);
+            stats.put("entries", (long) (window.size() + main.size()));
+            stats.put("bytes", windowBytes + mainBytes);
+        } finally {
+            policyLock.unlock();
+        }
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    @Getter
+    public static class CachedFile {
+        private final String key;
+        private final ByteBuffer data;
+        private final long lastModified;
+        private final long expiresAt;
+
+        CachedFile(String key, ByteBuffer data, long lastModified, long expiresAt) {
+            this.key = key;
+            this.data = data;
+            this.lastModified = lastModified;
+            this.expiresAt = expiresAt;
+        }
+
+        public long size() {
+            return data.capacity();
+        }
+
+        boolean isExpired() {
+            return expiresAt > 0 && System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
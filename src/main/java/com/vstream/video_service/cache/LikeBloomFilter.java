@@ -0,0 +1,136 @@
+package com.vstream.video_service.cache;
+
+import com.vstream.video_service.model.VideoLike;
+import com.vstream.video_service.repository.VideoLikeRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+// Bloom filter over (user, video) likes. A negative answer means the user has definitely not liked the
+// video, so has-liked and unlike can skip the database for the common case. Removing a like cannot clear
+// bits, so unliked pairs remain "maybe" until the next restart. The filter only knows the likes written through
+// this instance, so with more than one node it would answer "definitely not" for likes made elsewhere and the
+// user could neither see nor remove them. It is therefore off by default; only enable it on a single node.
+@Slf4j
+@Component
+public class LikeBloomFilter {
+
+    private static final double LN2_SQUARED = Math.log(2) * Math.log(2);
+
+    @Autowired
+    private VideoLikeRepository videoLikeRepository;
+
+    @Value("${likes.bloom-filter.enabled:false}")
+    private boolean enabled;
+
+    @Value("${likes.bloom-filter.expected-likes:1000000}")
+    private long expectedLikes;
+
+    @Value("${likes.bloom-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // The array and its geometry are published together, so a reader never sees an array with another array's
+    // bit or hash count
+    private volatile Bits bits;
+    // Until the existing likes are loaded every answer has to be "maybe"
+    private volatile boolean ready;
+
+    private record Bits(AtomicLongArray words, long bitCount, int hashCount) {
+    }
+
+    // Allocated before the server accepts requests, so no like is written while there is nowhere to add it: a like
+    // committed before load() opens its snapshot is in the snapshot, and any later one was added to the array
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        long capacity = Math.max(expectedLikes, videoLikeRepository.count() * 2);
+        long bitCount = Math.max(64, (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / LN2_SQUARED));
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+        bits = new Bits(new AtomicLongArray((int) ((bitCount + 63) / 64)), bitCount, hashCount);
+    }
+
+    @Transactional(readOnly = true)
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Bits loading = bits;
+        if (loading == null) {
+            return;
+        }
+        long existingLikes = 0;
+        try (Stream<VideoLike.VideoLikeId> likeIds = videoLikeRepository.streamAllIds()) {
+            for (VideoLike.VideoLikeId likeId : (Iterable<VideoLike.VideoLikeId>) likeIds::iterator) {
+                add(loading, likeId.getUserId(), likeId.getVideoId());
+                existingLikes++;
+            }
+        }
+        ready = true;
+        log.info("Like filter loaded with {} like(s), {} bits and {} hashes", existingLikes, loading.bitCount(),
+                loading.hashCount());
+    }
+
+    public void add(UUID userId, UUID videoId) {
+        Bits current = bits;
+        if (current != null) {
+            add(current, userId, videoId);
+        }
+    }
+
+    private static void add(Bits bits, UUID userId, UUID videoId) {
+        AtomicLongArray words = bits.words();
+        long hash1 = hash(userId, videoId, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(userId, videoId, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < bits.hashCount(); i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, bits.bitCount());
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(index);
+            } while ((word & mask) == 0 && !words.compareAndSet(index, word, word | mask));
+        }
+    }
+
+    public boolean mightContain(UUID userId, UUID videoId) {
+        if (!ready) {
+            return true;
+        }
+        Bits current = bits;
+        long hash1 = hash(userId, videoId, 0x9E3779B97F4A7C15L);
+        long hash2 = hash(userId, videoId, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < current.hashCount(); i++) {
+            long bit = Math.floorMod(hash1 + i * hash2, current.bitCount());
+            if ((current.words().get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(UUID userId, UUID videoId, long seed) {
+        long h = seed;
+        h = mix(h ^ userId.getMostSignificantBits());
+        h = mix(h ^ userId.getLeastSignificantBits());
+        h = mix(h ^ videoId.getMostSignificantBits());
+        return mix(h ^ videoId.getLeastSignificantBits());
+    }
+
+    // MurmurHash3 64-bit finaliser
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+}
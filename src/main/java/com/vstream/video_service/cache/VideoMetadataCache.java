@@ -0,0 +1,74 @@
+package com.vstream.video_service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Invalidation and stats for the single-video metadata cache filled by VideoMetadataService.getVideoMetadataDTO,
+// and for the HLS location cache next to it (getHlsLocation), which is keyed and invalidated the same way.
+// Evictions inside a transaction wait for the commit, otherwise a concurrent read could cache the old row again.
+@Slf4j
+@Component
+public class VideoMetadataCache {
+
+    public static final String CACHE_NAME = "videoMetadata";
+    public static final String HLS_LOCATION_CACHE_NAME = "hlsLocations";
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    public void evict(UUID videoId) {
+        evictAll(List.of(videoId));
+    }
+
+    public void evictAll(Collection<UUID> videoIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(videoIds);
+                }
+            });
+        } else {
+            evictNow(videoIds);
+        }
+    }
+
+    private void evictNow(Collection<UUID> videoIds) {
+        for (String cacheName : List.of(CACHE_NAME, HLS_LOCATION_CACHE_NAME)) {
+            Cache cache = cacheManager.getCache(cacheName);
+            if (cache == null) {
+                continue;
+            }
+            for (UUID videoId : videoIds) {
+                cache.evict(videoId);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        stats.put("cacheManager", cacheManager.getClass().getSimpleName());
+        if (cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeineCache) {
+            com.github.benmanes.caffeine.cache.stats.CacheStats cacheStats = caffeineCache.stats();
+            stats.put("size", caffeineCache.estimatedSize());
+            stats.put("hits", cacheStats.hitCount());
+            stats.put("misses", cacheStats.missCount());
+            stats.put("hitRate", cacheStats.hitRate());
+            stats.put("evictions", cacheStats.evictionCount());
+            stats.put("averageLoadMillis", cacheStats.averageLoadPenalty() / 1_000_000.0);
+        }
+        return stats;
+    }
+}
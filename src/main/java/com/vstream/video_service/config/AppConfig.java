@@ -1,13 +1,15 @@
 package com.vstream.video_service.config;
 
-import org.modelmapper.ModelMapper;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class AppConfig {
+    // Spring Data repositories are timed by Actuator already, this covers @Timed on plain beans
     @Bean
-    ModelMapper modelMapper() {
-        return new ModelMapper();
+    TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
     }
 }
@@ -1,7 +0,0 @@
-package com.vstream.video_service.constant;
-
-public class AppConstants {
-
-    public static final String videoStorageDir = "/home/surajp2909/Videos/vstream/video_storage";
-    public static final String thumbnailStorageDir = "/home/surajp2909/Videos/vstream/thumbnail_storage";
-}
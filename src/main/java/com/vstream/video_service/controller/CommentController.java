@@ -1,23 +1,32 @@
 package com.vstream.video_service.controller;
 
+import com.vstream.video_service.cache.CommentFirstPageCache;
 import com.vstream.video_service.dto.CommentDTO;
+import com.vstream.video_service.dto.CommentPageDTO;
 import com.vstream.video_service.service.CommentService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/comments")
 @RequiredArgsConstructor
 @Slf4j
-@CrossOrigin(origins = "http://localhost:3000")
+@CrossOrigin(origins = "http://localhost:3000", exposedHeaders = CommentController.NEXT_CURSOR_HEADER)
 public class CommentController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final CommentService commentService;
+    private final CommentFirstPageCache commentFirstPageCache;
 
     @PostMapping
     public ResponseEntity<CommentDTO> addComment(@RequestBody CommentDTO commentDTO) {
@@ -26,25 +35,94 @@ public class CommentController {
             CommentDTO savedComment = commentService.addComment(commentDTO);
             log.info("Comment added successfully with ID: {}", savedComment.getCommentId());
             return ResponseEntity.ok(savedComment);
+        } catch (NoSuchElementException e) {
+            log.warn("Cannot add comment: {}", e.getMessage());
+            return ResponseEntity.notFound().build();
         } catch (Exception e) {
             log.error("Error adding comment: {}", commentDTO, e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    // Bulk import; all comments are stored or none are. Replies may point at top-level comments in the same batch.
+    @PostMapping("/batch")
+    public ResponseEntity<List<CommentDTO>> addComments(@RequestBody List<CommentDTO> commentDTOs) {
+        log.info("Received request to add {} comments", commentDTOs.size());
+        try {
+            List<CommentDTO> savedComments = commentService.addComments(commentDTOs);
+            log.info("Added {} comments", savedComments.size());
+            return ResponseEntity.ok(savedComments);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected comment batch: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (NoSuchElementException e) {
+            log.warn("Cannot add comment batch: {}", e.getMessage());
+            return ResponseEntity.notFound().build();
+        } catch (DuplicateKeyException e) {
+            log.warn("Comment batch reuses an existing comment ID");
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (Exception e) {
+            log.error("Error adding comment batch", e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    // order is newest (default) or oldest; the next page token comes back in the X-Next-Cursor header
     @GetMapping("/video/{videoId}")
-    public ResponseEntity<List<CommentDTO>> getCommentsByVideo(@PathVariable UUID videoId) {
+    public ResponseEntity<List<CommentDTO>> getCommentsByVideo(
+            @PathVariable UUID videoId,
+            @RequestParam(defaultValue = "newest") String order,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
         log.info("Fetching comments for video ID: {}", videoId);
+        if (!"newest".equals(order) && !"oldest".equals(order)) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            List<CommentDTO> comments = commentService.getCommentsByVideoId(videoId);
-            log.info("Fetched {} comments for video ID: {}", comments.size(), videoId);
-            return ResponseEntity.ok(comments);
+            CommentPageDTO commentPage = commentService.getCommentsByVideoId(videoId, "oldest".equals(order), cursor, limit);
+            log.info("Fetched {} comments for video ID: {}", commentPage.getComments().size(), videoId);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (commentPage.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, commentPage.getNextCursor());
+            }
+            return response.body(commentPage.getComments());
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected comment listing for video ID: {}: {}", videoId, e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error fetching comments for video ID: {}", videoId, e);
             return ResponseEntity.internalServerError().build();
         }
     }
 
+    // Replies of a top-level comment, oldest first; paged like the video listing
+    @GetMapping("/{commentId}/replies")
+    public ResponseEntity<List<CommentDTO>> getReplies(
+            @PathVariable UUID commentId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        log.info("Fetching replies for comment ID: {}", commentId);
+        try {
+            CommentPageDTO replyPage = commentService.getReplies(commentId, cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (replyPage.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, replyPage.getNextCursor());
+            }
+            return response.body(replyPage.getComments());
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected reply listing for comment ID: {}: {}", commentId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error fetching replies for comment ID: {}", commentId, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+
+    @GetMapping("/first-page-cache/stats")
+    public ResponseEntity<Map<String, Long>> getFirstPageCacheStats() {
+        return ResponseEntity.ok(commentFirstPageCache.getStats());
+    }
+
     @PutMapping("/{commentId}")
     public ResponseEntity<CommentDTO> updateComment(
             @PathVariable UUID commentId,
@@ -0,0 +1,51 @@
+package com.vstream.video_service.controller;
+
+import com.vstream.video_service.service.LiveEventHub;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.UUID;
+
+// Server-Sent Events streams that replace polling: comments, like/view counts and transcode status of one
+// video, or processing status of everything an uploader has in flight. Clients load the current state over
+// REST once, then apply events; a client that falls behind is disconnected and should reload the state when
+// its EventSource reconnects.
+@RestController
+@RequestMapping("/events")
+@Slf4j
+@CrossOrigin(origins = {"http://10.42.0.225:8001/", "http://localhost:3000"})
+public class LiveEventController {
+
+    @Autowired
+    private LiveEventHub liveEventHub;
+
+    @GetMapping(value = "/videos/{videoId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamVideoEvents(@PathVariable UUID videoId) {
+        return subscribe(LiveEventHub.videoTopic(videoId));
+    }
+
+    @GetMapping(value = "/uploaders/{uploaderId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamUploaderEvents(@PathVariable String uploaderId) {
+        return subscribe(LiveEventHub.uploaderTopic(uploaderId));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Long>> getStats() {
+        return ResponseEntity.ok(liveEventHub.getStats());
+    }
+
+    private ResponseEntity<SseEmitter> subscribe(String topic) {
+        SseEmitter emitter = liveEventHub.subscribe(topic);
+        if (emitter == null) {
+            log.warn("Rejected event stream for {}: subscriber limit reached", topic);
+            return ResponseEntity.status(503).build();
+        }
+        // Proxies such as nginx would otherwise buffer the stream
+        return ResponseEntity.ok().header("X-Accel-Buffering", "no").body(emitter);
+    }
+}
@@ -1,53 +1,107 @@
 package com.vstream.video_service.controller;
 
 import com.vstream.video_service.dto.VideoMetadataDTO;
-import com.vstream.video_service.model.VideoMetadata;
+import com.vstream.video_service.service.FileStreamingService;
+import com.vstream.video_service.service.ThumbnailService;
 import com.vstream.video_service.service.VideoMetadataService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.io.IOException;
-import java.util.Optional;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
-import static com.vstream.video_service.constant.AppConstants.thumbnailStorageDir;
-
+@Slf4j
 @Controller
 public class ThumbnailController {
 
     @Autowired
     private VideoMetadataService videoMetadataService;
 
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private FileStreamingService fileStreamingService;
+
+    // Short, without ?v= the URL stays the same when a thumbnail is replaced; after that caches revalidate with
+    // the ETag
+    @Value("${thumbnails.max-age-seconds:60}")
+    private long thumbnailMaxAgeSeconds;
+
+    // With ?v= the URL names one image, so it never has to be revalidated
+    @Value("${thumbnails.versioned-max-age-seconds:31536000}")
+    private long versionedMaxAgeSeconds;
 
+    // ?w= picks the closest stored width and Accept decides between WebP and JPEG, with ETag/304 support.
+    // ?v= is the thumbnailVersion from the video's metadata; an outdated one is redirected to the current image.
     @GetMapping("/thumbnails/{videoId}")
-    public ResponseEntity<Resource> serveThumbnail(@PathVariable UUID videoId) throws IOException {
-        Optional<VideoMetadata> videoMetadata = videoMetadataService.getVideoMetadataById(videoId.toString());
-        // Build the path to the thumbnail file
-        Path filePath = Paths.get(thumbnailStorageDir).resolve(videoMetadata.get().getThumbnailUrl()).normalize();
-
-        // Create a resource from the file path
-        Resource resource = new UrlResource(filePath.toUri());
-
-        if (resource.exists() || resource.isReadable()) {
-            // Return the image file as a response with correct content type
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .contentType(MediaType.IMAGE_PNG) // Adjust the content type based on your image type (JPEG, PNG, etc.)
-                    .body(resource);
-        } else {
-            // Return 404 if the file does not exist or cannot be read
-            return ResponseEntity.notFound().build();
+    public void serveThumbnail(@PathVariable UUID videoId,
+                               @RequestParam(name = "w", required = false) Integer width,
+                               @RequestParam(name = "v", required = false) String version,
+                               HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        // Cached, so a feed page of thumbnails does not cost one database lookup each
+        VideoMetadataDTO videoMetadata = videoMetadataService.getVideoMetadataDTO(videoId);
+        if (videoMetadata == null || videoMetadata.getThumbnailUrl() == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String currentVersion = ThumbnailService.version(videoMetadata.getThumbnailUrl());
+        if (version != null && !version.equals(currentVersion)) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL,
+                    CacheControl.maxAge(thumbnailMaxAgeSeconds, TimeUnit.SECONDS).cachePublic().getHeaderValue());
+            response.sendRedirect(ServletUriComponentsBuilder.fromRequest(request)
+                    .replaceQueryParam("v", currentVersion != null ? List.of(currentVersion) : List.of())
+                    .build().toUriString());
+            return;
+        }
+
+        ThumbnailService.Variant variant = thumbnailService.resolve(videoMetadata.getThumbnailUrl(), width,
+                acceptsWebp(request.getHeader(HttpHeaders.ACCEPT)));
+        // The same URL returns WebP or JPEG depending on Accept, shared caches must key on it
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        // Never let a browser second-guess the image type, whatever bytes were uploaded
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        CacheControl cacheControl = version != null
+                ? CacheControl.maxAge(versionedMaxAgeSeconds, TimeUnit.SECONDS).cachePublic().immutable()
+                : CacheControl.maxAge(thumbnailMaxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+        try {
+            fileStreamingService.serve(variant.key(), variant.mediaType(), cacheControl, request, response);
+        } catch (IOException e) {
+            log.debug("Error streaming thumbnail {}: {}", variant.key(), e.getMessage());
         }
     }
-}
 
+    // Only an explicit image/webp counts, browsers without WebP support still send */*
+    private boolean acceptsWebp(String acceptHeader) {
+        if (acceptHeader == null) {
+            return false;
+        }
+        try {
+            for (MediaType mediaType : MediaType.parseMediaTypes(acceptHeader)) {
+                if ("image".equals(mediaType.getType()) && "webp".equals(mediaType.getSubtype())
+                        && mediaType.getQualityValue() > 0) {
+                    return true;
+                }
+            }
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        return false;
+    }
+}
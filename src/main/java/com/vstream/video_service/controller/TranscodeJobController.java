@@ -0,0 +1,46 @@
+package com.vstream.video_service.controller;
+
+import com.vstream.video_service.dto.TranscodeJobDTO;
+import com.vstream.video_service.service.TranscodeJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/transcode-jobs")
+@Slf4j
+@CrossOrigin(origins = {"http://10.42.0.225:8001/", "http://localhost:3000"})
+public class TranscodeJobController {
+
+    @Autowired
+    private TranscodeJobService transcodeJobService;
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Long>> getQueueStats() {
+        try {
+            return ResponseEntity.ok(transcodeJobService.getQueueStats());
+        } catch (Exception e) {
+            log.error("Error fetching transcode queue stats: {}", e.getMessage());
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
+    @GetMapping("/video/{videoId}")
+    public ResponseEntity<List<TranscodeJobDTO>> getJobsForVideo(@PathVariable UUID videoId) {
+        try {
+            List<TranscodeJobDTO> jobs = transcodeJobService.getJobsForVideo(videoId);
+            if (jobs.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(jobs);
+        } catch (Exception e) {
+            log.error("Error fetching transcode jobs for video ID: {}", videoId, e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.vstream.video_service.controller;
+
+import com.vstream.video_service.dto.CreateUploadSessionDTO;
+import com.vstream.video_service.dto.UploadSessionDTO;
+import com.vstream.video_service.model.VideoMetadata;
+import com.vstream.video_service.service.ChunkedUploadService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.UUID;
+
+// Resumable upload: create a session, PATCH the file in order using Upload-Offset, then finalize.
+// After a dropped connection the client asks for the session and continues from the returned offset.
+@RestController
+@RequestMapping("/videos/uploads")
+@Slf4j
+@CrossOrigin(origins = {"http://10.42.0.225:8001/", "http://localhost:3000"}, exposedHeaders = UploadSessionController.UPLOAD_OFFSET_HEADER)
+public class UploadSessionController {
+
+    public static final String UPLOAD_OFFSET_HEADER = "Upload-Offset";
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @PostMapping
+    public ResponseEntity<UploadSessionDTO> createSession(@RequestBody CreateUploadSessionDTO createUploadSessionDTO) {
+        try {
+            log.info("Received upload session request for video: {}", createUploadSessionDTO.getTitle());
+            UploadSessionDTO uploadSessionDTO = chunkedUploadService.createSession(createUploadSessionDTO);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(uploadSessionDTO.getOffset()))
+                    .body(uploadSessionDTO);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected upload session request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("UploadSessionController::createSession {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionDTO> getSession(@PathVariable UUID sessionId) {
+        return chunkedUploadService.getSession(sessionId)
+                .map(session -> ResponseEntity.ok()
+                        .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getOffset()))
+                        .body(session))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PatchMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionDTO> uploadChunk(
+            @PathVariable UUID sessionId,
+            @RequestHeader(UPLOAD_OFFSET_HEADER) long offset,
+            HttpServletRequest request) {
+        try {
+            return chunkedUploadService
+                    .appendChunk(sessionId, offset, request.getInputStream(), request.getContentLengthLong())
+                    .map(session -> ResponseEntity.ok()
+                            .header(UPLOAD_OFFSET_HEADER, String.valueOf(session.getOffset()))
+                            .body(session))
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (ChunkedUploadService.OffsetMismatchException e) {
+            log.warn("Offset mismatch for upload session {}: got {}, expected {}", sessionId, offset, e.getExpectedOffset());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(UPLOAD_OFFSET_HEADER, String.valueOf(e.getExpectedOffset()))
+                    .build();
+        } catch (IllegalStateException e) {
+            log.warn("Rejected chunk for upload session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected chunk for upload session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error writing chunk for upload session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
+    @PostMapping("/{sessionId}/finalize")
+    public ResponseEntity<VideoMetadata> finalizeSession(
+            @PathVariable UUID sessionId,
+            @RequestParam MultipartFile thumbnailFile) {
+        try {
+            log.info("Received finalize request for upload session: {}", sessionId);
+            return chunkedUploadService.finalizeSession(sessionId, thumbnailFile)
+                    .map(ResponseEntity::ok)
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (IllegalStateException e) {
+            log.warn("Cannot finalize upload session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected thumbnail for upload session {}: {}", sessionId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("UploadSessionController::finalizeSession {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+}
@@ -1,75 +1,200 @@
 package com.vstream.video_service.controller;
 
-import com.vstream.video_service.constant.AppConstants;
+import com.vstream.video_service.cache.HlsSegmentCache;
+import com.vstream.video_service.cache.VideoMetadataCache;
 import com.vstream.video_service.dto.UpdateVideoDTO;
 import com.vstream.video_service.dto.UploadVideoDTO;
+import com.vstream.video_service.dto.VideoLikeDTO;
 import com.vstream.video_service.dto.VideoMetadataDTO;
+import com.vstream.video_service.dto.VideoPageDTO;
+import com.vstream.video_service.dto.ViewsLikesHistogramDTO;
+import com.vstream.video_service.dto.ViewsLikesPointDTO;
+import com.vstream.video_service.metrics.ServiceMetrics;
 import com.vstream.video_service.model.VideoMetadata;
+import com.vstream.video_service.service.FileStreamingService;
 import com.vstream.video_service.service.VideoLikeService;
 import com.vstream.video_service.service.VideoMetadataService;
-import jakarta.transaction.Transactional;
+import com.vstream.video_service.service.VideoUtilityService;
+import com.vstream.video_service.service.ViewsLikesHistogramService;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/videos")
 @Slf4j
-@CrossOrigin(origins = {"http://10.42.0.225:8001/", "http://localhost:3000"})
+@CrossOrigin(origins = {"http://10.42.0.225:8001/", "http://localhost:3000"}, exposedHeaders = VideoMetadataController.NEXT_CURSOR_HEADER)
 public class VideoMetadataController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private VideoMetadataService videoMetadataService;
 
     @Autowired
     private VideoLikeService videoLikeService;
 
-    private final String hlsBaseDir = "/home/surajp2909/Videos/vstream"; // Base directory for HLS files
+    private static final MediaType HLS_PLAYLIST_TYPE = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+    private static final MediaType HLS_SEGMENT_TYPE = MediaType.parseMediaType("video/MP2T");
+    private static final MediaType WEBVTT_TYPE = MediaType.parseMediaType("text/vtt");
+
+    @Autowired
+    private FileStreamingService fileStreamingService;
+
+    @Autowired
+    private HlsSegmentCache hlsSegmentCache;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Autowired
+    private VideoMetadataCache videoMetadataCache;
+
+    @Autowired
+    private ViewsLikesHistogramService viewsLikesHistogramService;
+
+    @Value("${hls.playlist-max-age-seconds:10}")
+    private long playlistMaxAgeSeconds;
 
     @GetMapping("/hls/{uploaderId}/{videoId}/{fileName}")
-    public ResponseEntity<Resource> streamHLSFile(
+    public void streamHLSFile(
+            @PathVariable String uploaderId,
+            @PathVariable String videoId,
+            @PathVariable String fileName,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        if (!isSafePathSegment(uploaderId, videoId, fileName)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        String hlsPrefix = hlsPrefix(uploaderId, videoId);
+        if (hlsPrefix == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        String key = StorageKeys.child(hlsPrefix, fileName);
+        // Players that still ask for the top level index.m3u8 get the adaptive master playlist; the
+        // rendition URIs inside it are relative, so they resolve against the same directory.
+        if ("index.m3u8".equals(fileName) && !storageBackend.exists(key)) {
+            key = StorageKeys.child(hlsPrefix, VideoUtilityService.MASTER_PLAYLIST);
+        }
+        streamHLSPath(key, fileName, request, response);
+    }
+
+    @GetMapping("/hls/{uploaderId}/{videoId}/{rendition}/{fileName}")
+    public void streamHLSRenditionFile(
             @PathVariable String uploaderId,
             @PathVariable String videoId,
-            @PathVariable String fileName) {
+            @PathVariable String rendition,
+            @PathVariable String fileName,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        if (!isSafePathSegment(uploaderId, videoId, rendition, fileName)) {
+            response.sendError(HttpStatus.BAD_REQUEST.value());
+            return;
+        }
+        String hlsPrefix = hlsPrefix(uploaderId, videoId);
+        if (hlsPrefix == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+            return;
+        }
+        streamHLSPath(StorageKeys.child(hlsPrefix, rendition, fileName), fileName, request, response);
+    }
+
+    // Playback URLs stay /hls/<uploaderId>/<videoId>/...; the files live under the video's content prefix,
+    // or under the URL's own path for uploads from before content addressing. Null for unknown videos.
+    private String hlsPrefix(String uploaderId, String videoId) {
+        UUID id;
         try {
-            // Build the file path
-            Path filePath = Paths.get(AppConstants.videoStorageDir, uploaderId, videoId, fileName);
-            log.info("Attempting to stream HLS file from path: {}", filePath);
-
-            // Load the file as a resource
-            Resource resource = new UrlResource(filePath.toUri());
-            if (resource.exists() && resource.isReadable()) {
-                // Set content type based on file type
-                log.info("Successfully loaded HLS file: {}", fileName);
-
-                String contentType = fileName.endsWith(".m3u8") ? "application/vnd.apple.mpegurl" : "video/MP2T";
-                return ResponseEntity.ok()
-                        .contentType(MediaType.parseMediaType(contentType))
-                        .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"")
-                        .body(resource);
+            id = UUID.fromString(videoId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        VideoMetadataService.HlsLocation hlsLocation = videoMetadataService.getHlsLocation(id);
+        if (hlsLocation == null || !hlsLocation.uploaderId().equals(uploaderId)) {
+            return null;
+        }
+        return hlsLocation.prefix();
+    }
+
+    @GetMapping("/hls-cache-stats")
+    public ResponseEntity<Map<String, Long>> getHlsCacheStats() {
+        return ResponseEntity.ok(hlsSegmentCache.getStats());
+    }
+
+    // Package-private for the HLS path benchmark
+    static boolean isSafePathSegment(String... pathSegments) {
+        for (String pathSegment : pathSegments) {
+            if (pathSegment.isEmpty() || pathSegment.equals("..") || pathSegment.contains("/")
+                    || pathSegment.contains("\\")) {
+                log.warn("Rejected HLS path segment: {}", pathSegment);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Segments never change once written, so they are cached for a year; playlists get a short TTL
+    private void streamHLSPath(String key, String fileName, HttpServletRequest request,
+                               HttpServletResponse response) throws IOException {
+        log.debug("Streaming HLS file: {}", key);
+        long startNanos = System.nanoTime();
+        MediaType contentType;
+        CacheControl cacheControl;
+        // Playlists stay in the hot cache only as long as clients may cache them
+        long cacheTtlMillis = 0;
+        if (fileName.endsWith(".m3u8") || fileName.endsWith(".vtt")) {
+            // The trickplay track is written after its sprites, treat it like a playlist
+            contentType = fileName.endsWith(".vtt") ? WEBVTT_TYPE : HLS_PLAYLIST_TYPE;
+            cacheControl = CacheControl.maxAge(playlistMaxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+            cacheTtlMillis = TimeUnit.SECONDS.toMillis(playlistMaxAgeSeconds);
+        } else {
+            if (fileName.endsWith(".ts")) {
+                contentType = HLS_SEGMENT_TYPE;
+            } else if (fileName.endsWith(".jpg")) {
+                contentType = MediaType.IMAGE_JPEG;
             } else {
-                log.error("File not found or unreadable: {}", filePath);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+                contentType = MediaType.APPLICATION_OCTET_STREAM;
             }
-        } catch (Exception e) {
-//            e.printStackTrace();
-            log.error("Error streaming HLS file: {}", e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+            cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+        }
+        long bytesSent = 0;
+        try {
+            bytesSent = fileStreamingService.serve(key, contentType, cacheControl, true, cacheTtlMillis,
+                    request, response);
+        } catch (IOException e) {
+            // Usually the player dropped the connection mid-segment
+            log.debug("Error streaming HLS file {}: {}", key, e.getMessage());
+            if (!response.isCommitted()) {
+                response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            }
+        } finally {
+            // With sendfile the body goes out after this returns, so the timing covers lookup and headers only
+            serviceMetrics.recordHlsRequest(contentType.toString(), bytesSent, System.nanoTime() - startNanos);
         }
     }
 
@@ -77,15 +202,23 @@ public class VideoMetadataController {
     public ResponseEntity<VideoMetadata> uploadVideo(
             @ModelAttribute UploadVideoDTO uploadVideoDTO
     ) {
+        long startNanos = System.nanoTime();
+        long uploadBytes = uploadVideoDTO.getVideoFile() != null ? uploadVideoDTO.getVideoFile().getSize() : 0;
         try {
             log.info("Received upload request for video: {}", uploadVideoDTO.getTitle());
             VideoMetadata savedMetadata = videoMetadataService.uploadVideo(uploadVideoDTO);
             log.info("Successfully uploaded video metadata with ID: {}", savedMetadata.getVideoId());
 
+            serviceMetrics.recordUpload(uploadBytes, System.nanoTime() - startNanos, true);
             return ResponseEntity.ok(savedMetadata);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected upload of {}: {}", uploadVideoDTO.getTitle(), e.getMessage());
+            serviceMetrics.recordUpload(uploadBytes, System.nanoTime() - startNanos, false);
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             e.printStackTrace();
             log.error("VideoMetadataController::uploadVideo {}", e.getMessage());
+            serviceMetrics.recordUpload(uploadBytes, System.nanoTime() - startNanos, false);
             return ResponseEntity.status(500).body(null);
         }
     }
@@ -101,6 +234,9 @@ public class VideoMetadataController {
             log.info("Successfully updated video metadata with ID: {}", updatedMetadata.getVideoId());
 
             return ResponseEntity.ok(updatedMetadata);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected update of video {}: {}", videoId, e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             e.printStackTrace();
             log.error("VideoMetadataController::updateVideoDetails {}", e.getMessage());
@@ -112,45 +248,48 @@ public class VideoMetadataController {
     public ResponseEntity<VideoMetadataDTO> getVideoMetadata(@PathVariable String videoId) {
         log.info("Fetching metadata for video with ID: {}", videoId);
 
-        return videoMetadataService
-                .getVideoMetadataById(videoId)
-                .map(metadata -> {
-                    // Log success and map VideoMetadata to VideoMetadataDTO
-                    log.info("Successfully retrieved metadata for video ID: {}", videoId);
-
-                    // Mapping VideoMetadata to VideoMetadataDTO
-                    VideoMetadataDTO videoMetadataDTO = new VideoMetadataDTO();
-                    videoMetadataDTO.setVideoId(metadata.getVideoId().toString());
-                    videoMetadataDTO.setTitle(metadata.getTitle());
-                    videoMetadataDTO.setUploaderId(metadata.getUploaderId());
-                    videoMetadataDTO.setDescription(metadata.getDescription());
-                    videoMetadataDTO.setThumbnailUrl(metadata.getThumbnailUrl());
-                    videoMetadataDTO.setDuration(metadata.getDuration());
-                    videoMetadataDTO.setFileSize(metadata.getFileSize());
-                    videoMetadataDTO.setUploadDate(metadata.getUploadDate());
-                    videoMetadataDTO.setVideoUrl(metadata.getVideoUrl());
-                    videoMetadataDTO.setLikeCount(metadata.getLikeCount());
-                    videoMetadataDTO.setViewCount(metadata.getViewCount());
-
-                    return ResponseEntity.ok(videoMetadataDTO);
-                })
-                .orElseGet(() -> {
-                    log.error("No metadata found for video ID: {}", videoId);
-                    return ResponseEntity.notFound().build();
-                });
+        UUID id;
+        try {
+            id = UUID.fromString(videoId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        VideoMetadataDTO videoMetadataDTO = videoMetadataService.getVideoMetadataDTO(id);
+        if (videoMetadataDTO == null) {
+            log.error("No metadata found for video ID: {}", videoId);
+            return ResponseEntity.notFound().build();
+        }
+        log.info("Successfully retrieved metadata for video ID: {}", videoId);
+        // Include views that are still waiting for the next batched flush
+        return ResponseEntity.ok(videoMetadataService.withPendingViews(videoMetadataDTO));
+    }
+
+    @GetMapping("/metadata-cache-stats")
+    public ResponseEntity<Map<String, Object>> getMetadataCacheStats() {
+        return ResponseEntity.ok(videoMetadataCache.getStats());
     }
 
+    // Pages newest first; when more videos exist the token for the next page is in the X-Next-Cursor header
     @GetMapping
     public ResponseEntity<List<VideoMetadataDTO>> getAllVideos(
             @RequestParam Optional<String> userId,
-            @RequestParam Optional<Boolean> uploadInProgress) {
+            @RequestParam Optional<Boolean> uploadInProgress,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
 
         // Logging input parameters
         log.info("Fetching video metadata. User ID: {}, Upload in progress: {}",
                 userId.orElse("Not provided"),
                 uploadInProgress.orElse(null));
 
-        List<VideoMetadataDTO> videos = videoMetadataService.getAllVideos(userId, uploadInProgress);
+        VideoPageDTO videoPage;
+        try {
+            videoPage = videoMetadataService.getAllVideos(userId, uploadInProgress, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            log.warn("Rejected video listing request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        List<VideoMetadataDTO> videos = videoPage.getVideos();
 
         // Logging the result
         if (videos.isEmpty()) {
@@ -164,58 +303,67 @@ public class VideoMetadataController {
                 videos.size(),
                 userId.orElse("Not provided"),
                 uploadInProgress.orElse(null));
-        return ResponseEntity.ok(videos);  // Return the filtered list of videos
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (videoPage.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, videoPage.getNextCursor());
+        }
+        return response.body(videos);  // Return the filtered page of videos
     }
 
-    // API to update view count
+    // API to update view count, accepted immediately and flushed to the database in batches
     @PutMapping("/{videoId}/views")
-    public ResponseEntity<VideoMetadataDTO> updateViewCount(@PathVariable String videoId) {
+    public ResponseEntity<Void> updateViewCount(@PathVariable String videoId) {
         try {
-            // Call the service method to update the view count
-            VideoMetadataDTO updatedMetadataDTO = videoMetadataService.incrementViewCount(videoId);
-            if (updatedMetadataDTO == null) {
-                log.error("Video not found with ID: {}", videoId);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-            }
-
-            return ResponseEntity.ok(updatedMetadataDTO);
+            videoMetadataService.incrementViewCount(videoId);
+            return ResponseEntity.accepted().build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid video ID for view count: {}", videoId);
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             log.error("Error updating view count for video ID: {}", videoId, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
-    // API to update like count
-    @Transactional
+    // API to like a video, repeating the request does not count twice
     @PutMapping("/{videoId}/likes")
-    public ResponseEntity<?> updateLikeCount(@PathVariable String videoId,
-                                                            @RequestParam String userId) {
+    public ResponseEntity<VideoLikeDTO> likeVideo(@PathVariable String videoId, @RequestParam String userId) {
         try {
-            // Check if the user has already liked the video
-
-
-
-            if (videoLikeService.checkIfUserVideoMappingExist(userId, videoId)) {
-                log.error("User {} has already liked video with ID: {}", userId, videoId);
-                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                        .body("User can only like the video once.");  // User can only like the video once
-            }
-
-            // Proceed with the like operation, increment the like count
-            VideoMetadataDTO updatedMetadataDTO = videoMetadataService.incrementLikeCount(videoId);
-
-            if (updatedMetadataDTO == null) {
-                log.error("Video not found with ID: {}", videoId);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
-            }
-
-            // Save the like record to prevent duplicate likes
-            videoLikeService.likeVideo(UUID.fromString(userId), UUID.fromString(videoId));
+            return ResponseEntity.ok(videoLikeService.likeVideo(UUID.fromString(userId), UUID.fromString(videoId)));
+        } catch (NoSuchElementException e) {
+            log.error("Video not found with ID: {}", videoId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid like request for video ID: {} by user: {}", videoId, userId);
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error liking video ID: {}", videoId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
 
-            return ResponseEntity.ok(updatedMetadataDTO);
+    @DeleteMapping("/{videoId}/likes")
+    public ResponseEntity<VideoLikeDTO> unlikeVideo(@PathVariable String videoId, @RequestParam String userId) {
+        try {
+            return ResponseEntity.ok(videoLikeService.unlikeVideo(UUID.fromString(userId), UUID.fromString(videoId)));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid unlike request for video ID: {} by user: {}", videoId, userId);
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Error unliking video ID: {}", videoId, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
+        }
+    }
 
+    @GetMapping("/{videoId}/likes")
+    public ResponseEntity<Map<String, Boolean>> hasLiked(@PathVariable String videoId, @RequestParam String userId) {
+        try {
+            boolean liked = videoLikeService.hasLiked(UUID.fromString(userId), UUID.fromString(videoId));
+            return ResponseEntity.ok(Map.of("liked", liked));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
-            log.error("Error updating like count for video ID: {}", videoId, e);
+            log.error("Error checking like for video ID: {}", videoId, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
@@ -258,11 +406,28 @@ public class VideoMetadataController {
         }
     }
 
+    // mode=points returns one entry per video; mode=histogram returns a fixed-size log-scaled 2D histogram
     @GetMapping("/views-vs-likes")
-    public ResponseEntity<List<Map<String, Object>>> getViewsVsLikes() {
+    public ResponseEntity<?> getViewsVsLikes(
+            @RequestParam(defaultValue = "points") String mode,
+            @RequestParam(defaultValue = "32") int bins,
+            @RequestParam(required = false) String uploaderId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
         try {
-            List<Map<String, Object>> viewsVsLikes = videoMetadataService.getViewsVsLikes();
+            if ("histogram".equals(mode)) {
+                ViewsLikesHistogramDTO histogram = viewsLikesHistogramService.getHistogram(bins, uploaderId,
+                        from != null ? from.atStartOfDay() : null,
+                        to != null ? to.plusDays(1).atStartOfDay() : null);
+                return ResponseEntity.ok(histogram);
+            }
+            if (!"points".equals(mode)) {
+                return ResponseEntity.badRequest().body("Unknown mode: " + mode);
+            }
+            List<ViewsLikesPointDTO> viewsVsLikes = videoMetadataService.getViewsVsLikes();
             return ResponseEntity.ok(viewsVsLikes);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
             log.error("Error fetching views vs likes: {}", e.getMessage());
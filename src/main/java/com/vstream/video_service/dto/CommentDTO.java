@@ -16,4 +16,6 @@ public class CommentDTO {
     private String content;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private UUID parentCommentId;
+    private Long replyCount = 0L;
 }
@@ -0,0 +1,14 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class CommentPageDTO {
+    private List<CommentDTO> comments;
+    // Null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,13 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CreateUploadSessionDTO {
+    private String title;
+    private String uploaderId;
+    private String description; // Optional
+    private Long totalSize; // Size of the whole video file in bytes
+}
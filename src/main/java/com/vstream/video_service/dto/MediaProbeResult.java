@@ -0,0 +1,18 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class MediaProbeResult {
+    private Long durationMs;
+    private String videoCodec; // null when the file has no video stream
+    private String audioCodec; // null when the file has no audio stream
+    private Integer width;
+    private Integer height;
+    private String pixelFormat;
+    private Long bitRate; // Overall bitrate in bits per second
+    private Double frameRate;
+    private Long keyframeIntervalMs; // Longest distance between keyframes at the start of the file
+}
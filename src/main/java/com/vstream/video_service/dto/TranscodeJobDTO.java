@@ -0,0 +1,22 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+public class TranscodeJobDTO {
+    private String jobId;
+    private String videoId;
+    private String status;
+    private Integer priority;
+    private Integer attempts;
+    private Integer maxAttempts;
+    private LocalDateTime nextAttemptAt;
+    private String lastError;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,14 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class UploadSessionDTO {
+    private String sessionId;
+    private String videoId;
+    private Long totalSize;
+    private Long offset;
+    private String status;
+}
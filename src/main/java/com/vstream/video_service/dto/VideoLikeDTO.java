@@ -0,0 +1,14 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class VideoLikeDTO {
+    private String videoId;
+    private String userId;
+    private boolean liked;
+    // False when the request was a repeat, e.g. a double click, and the like count did not move
+    private boolean changed;
+}
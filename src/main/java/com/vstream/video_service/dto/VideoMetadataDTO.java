@@ -1,13 +1,20 @@
 package com.vstream.video_service.dto;
 
+import com.vstream.video_service.model.TranscodeMode;
+import com.vstream.video_service.service.ThumbnailService;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Getter
 @Setter
-public class VideoMetadataDTO {
+@NoArgsConstructor
+// Serializable so the metadata cache can live in Redis
+public class VideoMetadataDTO implements Serializable {
     private String videoId;
     private String title;
     private String uploaderId;
@@ -19,4 +26,63 @@ public class VideoMetadataDTO {
     private String videoUrl;
     private Long likeCount = 0L;
     private Long viewCount = 0L;
+    private Long commentCount = 0L;
+    private Long durationMs;
+    private Integer width;
+    private Integer height;
+    private String videoCodec;
+    private String audioCodec;
+    private String transcodeMode;
+
+    // Used by the JPQL constructor expression in VideoMetadataRepository, keep the order in step with it
+    public VideoMetadataDTO(UUID videoId, String title, String uploaderId, String description, String thumbnailUrl,
+                            String duration, Long fileSize, LocalDateTime uploadDate, String videoUrl,
+                            Long likeCount, Long viewCount, Long commentCount, Long durationMs,
+                            Integer width, Integer height, String videoCodec, String audioCodec,
+                            TranscodeMode transcodeMode) {
+        this.videoId = String.valueOf(videoId);
+        this.title = title;
+        this.uploaderId = uploaderId;
+        this.description = description;
+        this.thumbnailUrl = thumbnailUrl;
+        this.duration = duration;
+        this.fileSize = fileSize;
+        this.uploadDate = uploadDate;
+        this.videoUrl = videoUrl;
+        this.likeCount = likeCount;
+        this.viewCount = viewCount;
+        this.commentCount = commentCount;
+        this.durationMs = durationMs;
+        this.width = width;
+        this.height = height;
+        this.videoCodec = videoCodec;
+        this.audioCodec = audioCodec;
+        this.transcodeMode = transcodeMode != null ? transcodeMode.name() : null;
+    }
+
+    // Sent as ?v= with /thumbnails/{videoId}, which makes the response cacheable for good
+    public String getThumbnailVersion() {
+        return thumbnailUrl != null ? ThumbnailService.version(thumbnailUrl) : null;
+    }
+
+    public VideoMetadataDTO(VideoMetadataDTO other) {
+        this.videoId = other.videoId;
+        this.title = other.title;
+        this.uploaderId = other.uploaderId;
+        this.description = other.description;
+        this.thumbnailUrl = other.thumbnailUrl;
+        this.duration = other.duration;
+        this.fileSize = other.fileSize;
+        this.uploadDate = other.uploadDate;
+        this.videoUrl = other.videoUrl;
+        this.likeCount = other.likeCount;
+        this.viewCount = other.viewCount;
+        this.commentCount = other.commentCount;
+        this.durationMs = other.durationMs;
+        this.width = other.width;
+        this.height = other.height;
+        this.videoCodec = other.videoCodec;
+        this.audioCodec = other.audioCodec;
+        this.transcodeMode = other.transcodeMode;
+    }
 }
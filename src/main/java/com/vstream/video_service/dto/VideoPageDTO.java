@@ -0,0 +1,14 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class VideoPageDTO {
+    private List<VideoMetadataDTO> videos;
+    // Null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.vstream.video_service.dto;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+// Log-scaled 2D histogram. Bin i on an axis covers [edges[i], edges[i + 1]); only non-empty cells are
+// listed, each as [viewBin, likeBin, videoCount].
+@Getter
+@Setter
+public class ViewsLikesHistogramDTO {
+    private long totalVideos;
+    private long[] viewEdges;
+    private long[] likeEdges;
+    private List<long[]> cells;
+}
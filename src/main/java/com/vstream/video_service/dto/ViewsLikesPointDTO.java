@@ -0,0 +1,5 @@
+package com.vstream.video_service.dto;
+
+// One point of the views-vs-likes chart, selected straight from two columns
+public record ViewsLikesPointDTO(Long views, Long likes) {
+}
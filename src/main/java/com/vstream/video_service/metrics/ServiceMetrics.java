@@ -0,0 +1,177 @@
+package com.vstream.video_service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Application meters, exposed with everything Actuator records at /actuator/prometheus. Latencies are
+// published as histograms so percentiles can be aggregated across instances. Tags only carry small fixed
+// sets of values (outcome, command, content type), never ids. Tagged meters are built and registered once per
+// tag combination and then looked up, since these are recorded on every request, segment and ffmpeg run.
+@Component
+public class ServiceMetrics {
+
+    private final MeterRegistry meterRegistry;
+    // Keyed by meter name followed by its tag values
+    private final Map<List<String>, Meter> meters = new ConcurrentHashMap<>();
+    private final Counter viewsRecorded;
+    private final Counter viewsFlushed;
+    private final Counter viewFlushFailures;
+
+    @Autowired
+    public ServiceMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.viewsRecorded = Counter.builder("vstream.views.recorded")
+                .description("View pings accepted")
+                .register(meterRegistry);
+        this.viewsFlushed = Counter.builder("vstream.views.flushed")
+                .description("Views written to the database by the batched flush")
+                .register(meterRegistry);
+        this.viewFlushFailures = Counter.builder("vstream.views.flush.failures")
+                .register(meterRegistry);
+    }
+
+    // Sampled on every scrape; queued comes from the database, running from the worker pool
+    public void registerTranscodeQueue(Supplier<Number> queuedJobs, Supplier<Number> runningJobs) {
+        Gauge.builder("vstream.transcode.jobs", queuedJobs)
+                .tag("state", "queued")
+                .register(meterRegistry);
+        Gauge.builder("vstream.transcode.jobs", runningJobs)
+                .tag("state", "running")
+                .register(meterRegistry);
+    }
+
+    public void recordUpload(long bytes, long durationNanos, boolean success) {
+        String outcome = success ? "success" : "failure";
+        meter(() -> DistributionSummary.builder("vstream.upload.bytes")
+                .baseUnit("bytes")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry), "vstream.upload.bytes", outcome)
+                .record(bytes);
+        meter(() -> Timer.builder("vstream.upload.duration")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry), "vstream.upload.duration", outcome)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Whole transcode job as seen by the worker, from claim to the final status
+    public void recordTranscodeJob(String outcome, long durationNanos) {
+        meter(() -> Timer.builder("vstream.transcode.job.duration")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry), "vstream.transcode.job.duration", outcome)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // One ffmpeg process; cpu is the process' user + system time and may be zero where the OS hides it
+    public void recordFfmpegRun(String command, long wallNanos, Duration cpu) {
+        meter(() -> Timer.builder("vstream.ffmpeg.wall")
+                .tag("command", command)
+                .publishPercentileHistogram()
+                .register(meterRegistry), "vstream.ffmpeg.wall", command)
+                .record(wallNanos, TimeUnit.NANOSECONDS);
+        meter(() -> Timer.builder("vstream.ffmpeg.cpu")
+                .tag("command", command)
+                .register(meterRegistry), "vstream.ffmpeg.cpu", command)
+                .record(cpu);
+    }
+
+    public void recordFfmpegExit(String command, int exitCode) {
+        String exit = String.valueOf(exitCode);
+        meter(() -> Counter.builder("vstream.ffmpeg.exits")
+                .tag("command", command)
+                .tag("exit.code", exit)
+                .register(meterRegistry), "vstream.ffmpeg.exits", command, exit)
+                .increment();
+    }
+
+    public void recordHlsRequest(String contentType, long bytes, long durationNanos) {
+        meter(() -> Timer.builder("vstream.hls.requests")
+                .tag("type", contentType)
+                .publishPercentileHistogram()
+                .register(meterRegistry), "vstream.hls.requests", contentType)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        meter(() -> Counter.builder("vstream.hls.bytes")
+                .baseUnit("bytes")
+                .tag("type", contentType)
+                .register(meterRegistry), "vstream.hls.bytes", contentType)
+                .increment(bytes);
+    }
+
+    public void recordView() {
+        viewsRecorded.increment();
+    }
+
+    public void recordViewFlush(long views, boolean success) {
+        if (success) {
+            viewsFlushed.increment(views);
+        } else {
+            viewFlushFailures.increment();
+        }
+    }
+
+    // outcome is new (transcoded), reused (existing HLS output) or waiting (on another upload's transcode)
+    public void recordUploadContent(String outcome) {
+        meter(() -> Counter.builder("vstream.upload.content")
+                .tag("outcome", outcome)
+                .register(meterRegistry), "vstream.upload.content", outcome)
+                .increment();
+    }
+
+    // action is like or unlike; changed is false for a repeated like or an unlike of nothing
+    public void recordLikeWrite(String action, boolean changed) {
+        String changedTag = String.valueOf(changed);
+        meter(() -> Counter.builder("vstream.likes.writes")
+                .tag("action", action)
+                .tag("changed", changedTag)
+                .register(meterRegistry), "vstream.likes.writes", action, changedTag)
+                .increment();
+    }
+
+    public void registerEventSubscribers(Supplier<Number> subscribers) {
+        Gauge.builder("vstream.events.subscribers", subscribers)
+                .register(meterRegistry);
+    }
+
+    // reason is overflow (buffer full) or stalled (a send blocked past events.send-timeout-ms)
+    public void recordEventSubscriberDropped(String reason) {
+        meter(() -> Counter.builder("vstream.events.subscribers.dropped")
+                .tag("reason", reason)
+                .register(meterRegistry), "vstream.events.subscribers.dropped", reason)
+                .increment();
+    }
+
+    // Deleted videos waiting for the reaper, sampled from the database on every scrape
+    public void registerTombstones(Supplier<Number> tombstones) {
+        Gauge.builder("vstream.reaper.tombstones", tombstones)
+                .register(meterRegistry);
+    }
+
+    // outcome is reaped, postponed (transcode still running), failed (retried later) or orphan (sweep)
+    public void recordReap(String outcome) {
+        meter(() -> Counter.builder("vstream.reaper.deletions")
+                .tag("outcome", outcome)
+                .register(meterRegistry), "vstream.reaper.deletions", outcome)
+                .increment();
+    }
+
+    // The meter registered for this name and these tag values, registering it on first use
+    @SuppressWarnings("unchecked")
+    private <M extends Meter> M meter(Supplier<M> register, String... nameAndTagValues) {
+        return (M) meters.computeIfAbsent(List.of(nameAndTagValues), key -> register.get());
+    }
+}
@@ -34,4 +34,12 @@ public class Comment {
 
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
+
+    // Null for top-level comments; replies always point at a top-level comment
+    @Column(name = "parent_comment_id", updatable = false)
+    private UUID parentCommentId;
+
+    // Maintained in SQL by CommentRepository.addReplyCount
+    @Column(name = "reply_count", nullable = false, updatable = false)
+    private Long replyCount = 0L;
 }
@@ -0,0 +1,31 @@
+package com.vstream.video_service.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// One stored upload, keyed by the SHA-256 of its bytes; see ContentStoreService for the file layout
+@Entity
+@Table(name = "content_objects")
+@Getter
+@Setter
+@NoArgsConstructor
+public class ContentObject {
+
+    @Id
+    @Column(name = "content_hash", nullable = false, updatable = false, length = 64)
+    private String contentHash;
+
+    @Column(name = "size_bytes", nullable = false, updatable = false)
+    private Long sizeBytes;
+
+    // Number of videos pointing at this content, only changed with SQL increments
+    @Column(name = "ref_count", nullable = false, updatable = false)
+    private Long refCount = 0L;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
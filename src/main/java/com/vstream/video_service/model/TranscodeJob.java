@@ -0,0 +1,68 @@
+package com.vstream.video_service.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "transcode_jobs")
+@Getter
+@Setter
+@NoArgsConstructor
+public class TranscodeJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @Column(name = "job_id", nullable = false, unique = true, updatable = false)
+    private UUID jobId;
+
+    @Column(name = "video_id", nullable = false, updatable = false)
+    private UUID videoId;
+
+    @Column(name = "uploader_id", nullable = false, updatable = false)
+    private String uploaderId;
+
+    // Source file relative to the video root, see StorageKeys.video
+    @Column(name = "source_path", nullable = false, updatable = false)
+    private String sourcePath;
+
+    // Lower runs first, see TranscodeJobService#priorityFor
+    @Column(name = "priority", nullable = false)
+    private Integer priority;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private TranscodeJobStatus status = TranscodeJobStatus.QUEUED;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "max_attempts", nullable = false)
+    private Integer maxAttempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    // Instance running the job and until when it holds it, only set while RUNNING, see TranscodeJobService
+    @Column(name = "worker_id", length = 64)
+    private String workerId;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+}
@@ -0,0 +1,8 @@
+package com.vstream.video_service.model;
+
+public enum TranscodeJobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED
+}
@@ -0,0 +1,6 @@
+package com.vstream.video_service.model;
+
+public enum TranscodeMode {
+    COPY,   // Remuxed into HLS without re-encoding
+    ENCODE  // Re-encoded into the full rendition ladder
+}
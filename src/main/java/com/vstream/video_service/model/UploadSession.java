@@ -0,0 +1,49 @@
+package com.vstream.video_service.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "upload_sessions")
+@Getter
+@Setter
+@NoArgsConstructor
+public class UploadSession {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @Column(name = "session_id", nullable = false, unique = true, updatable = false)
+    private UUID sessionId;
+
+    @Column(name = "video_id", nullable = false, updatable = false)
+    private UUID videoId;
+
+    @Column(name = "uploader_id", nullable = false, updatable = false)
+    private String uploaderId;
+
+    // Path of the partial file relative to storage.spool-dir
+    @Column(name = "video_url", nullable = false, updatable = false)
+    private String videoUrl;
+
+    @Column(name = "total_size", nullable = false, updatable = false)
+    private Long totalSize;
+
+    // Number of contiguous bytes persisted so far, i.e. the offset the next chunk must start at
+    @Column(name = "bytes_received", nullable = false)
+    private Long bytesReceived = 0L;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private UploadSessionStatus status = UploadSessionStatus.ACTIVE;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,8 @@
+package com.vstream.video_service.model;
+
+public enum UploadSessionStatus {
+    ACTIVE,
+    COMPLETED,
+    // No chunk arrived for uploads.sessions.expire-after-hours; the video is deleted and the reaper cleans up
+    EXPIRED
+}
@@ -6,12 +6,17 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
 
+// Deleted videos stay in the table as tombstones until VideoReaper removes them (see VideoTombstoneRepository).
+// The entity never loads them, and the tombstone columns are not mapped, so saving a row that was loaded
+// before it was deleted cannot bring it back.
 @Entity
 @Table(name = "video_metadata")
+@SQLRestriction("deleted_at IS NULL")
 @Getter
 @Setter
 @NoArgsConstructor
@@ -39,7 +44,7 @@ public class VideoMetadata {
     @Column(name = "file_size")
     private Long fileSize;
 
-    @Column(name = "upload_date")
+    @Column(name = "upload_date", nullable = false)
     private LocalDateTime uploadDate;
 
     @Column(name = "video_url")
@@ -48,9 +53,52 @@ public class VideoMetadata {
     @Column(name = "upload_in_progress", nullable = false)
     private Boolean uploadInProgress = false;
 
-    @Column(name = "like_count", nullable = false)
+    // Maintained with SQL increments by the like endpoints, never by saving the entity
+    @Column(name = "like_count", nullable = false, updatable = false)
     private Long likeCount = 0L;
 
-    @Column(name = "view_count", nullable = false)
+    // Only ever changed by VideoCounterRepository, so saving a stale entity cannot undo flushed views
+    @Column(name = "view_count", nullable = false, updatable = false)
     private Long viewCount = 0L;
+
+    // Maintained with SQL increments by CommentService in the same transaction as the comment
+    @Column(name = "comment_count", nullable = false, updatable = false)
+    private Long commentCount = 0L;
+
+    // Stream details from MediaProbeService, filled in once per upload
+    @Column(name = "duration_ms")
+    private Long durationMs;
+
+    @Column(name = "video_codec")
+    private String videoCodec;
+
+    @Column(name = "audio_codec")
+    private String audioCodec;
+
+    @Column(name = "width")
+    private Integer width;
+
+    @Column(name = "height")
+    private Integer height;
+
+    @Column(name = "bit_rate")
+    private Long bitRate;
+
+    @Column(name = "frame_rate")
+    private Double frameRate;
+
+    @Column(name = "keyframe_interval_ms")
+    private Long keyframeIntervalMs;
+
+    @Column(name = "pixel_format")
+    private String pixelFormat;
+
+    // How the HLS output was produced, null until transcoding finishes
+    @Enumerated(EnumType.STRING)
+    @Column(name = "transcode_mode")
+    private TranscodeMode transcodeMode;
+
+    // SHA-256 of the uploaded file, see ContentStoreService; null for videos stored before content addressing
+    @Column(name = "content_hash", length = 64, updatable = false)
+    private String contentHash;
 }
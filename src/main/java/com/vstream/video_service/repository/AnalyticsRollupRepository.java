@@ -0,0 +1,65 @@
+package com.vstream.video_service.repository;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Pre-aggregated dashboard counters, kept up to date in the same transaction as the change they count
+@Repository
+@Timed(value = "vstream.jdbc.queries", histogram = true)
+public class AnalyticsRollupRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public void addUploads(Map<String, String> periodKeys, long delta) {
+        List<Object[]> batchArgs = new ArrayList<>(periodKeys.size());
+        for (Map.Entry<String, String> periodKey : periodKeys.entrySet()) {
+            batchArgs.add(new Object[]{periodKey.getKey(), periodKey.getValue(), delta});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO video_upload_rollups (period_type, period_key, upload_count) VALUES (?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE upload_count = upload_count + VALUES(upload_count)", batchArgs);
+    }
+
+    public void addUploaderVideos(String uploaderId, long delta) {
+        jdbcTemplate.update("INSERT INTO uploader_video_counts (uploader_id, video_count) VALUES (?, ?) "
+                + "ON DUPLICATE KEY UPDATE video_count = video_count + VALUES(video_count)", uploaderId, delta);
+    }
+
+    // Rows are written in the map's iteration order; pass a sorted map so concurrent flushes lock them in one order
+    public void addLikeBucketVideos(Map<String, Long> deltas) {
+        List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+        for (Map.Entry<String, Long> delta : deltas.entrySet()) {
+            batchArgs.add(new Object[]{delta.getKey(), delta.getValue()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO like_count_buckets (bucket, video_count) VALUES (?, ?) "
+                + "ON DUPLICATE KEY UPDATE video_count = video_count + VALUES(video_count)", batchArgs);
+    }
+
+    public Map<String, Long> findUploadCounts(String periodType) {
+        return queryForCounts("SELECT period_key, upload_count FROM video_upload_rollups "
+                + "WHERE period_type = ? AND upload_count > 0", periodType);
+    }
+
+    public Map<String, Long> findUploaderVideoCounts() {
+        return queryForCounts("SELECT uploader_id, video_count FROM uploader_video_counts WHERE video_count > 0");
+    }
+
+    public Map<String, Long> findLikeBucketCounts() {
+        return queryForCounts("SELECT bucket, video_count FROM like_count_buckets WHERE video_count > 0");
+    }
+
+    private Map<String, Long> queryForCounts(String sql, Object... args) {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query(sql, resultSet -> {
+            counts.put(resultSet.getString(1), resultSet.getLong(2));
+        }, args);
+        return counts;
+    }
+}
@@ -0,0 +1,99 @@
+package com.vstream.video_service.repository;
+
+import com.vstream.video_service.model.Comment;
+import com.vstream.video_service.util.UuidUtils;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Comment writes through JDBC batches. With rewriteBatchedStatements on the connection URL the driver sends
+// each batch as one multi-row statement, so importing a thousand comments is a handful of round trips.
+@Repository
+@Timed(value = "vstream.jdbc.queries", histogram = true)
+public class CommentBatchRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Ids, timestamps and reply counts are taken from the comments as given
+    public void insertAll(List<Comment> comments) {
+        List<Object[]> batchArgs = new ArrayList<>(comments.size());
+        for (Comment comment : comments) {
+            batchArgs.add(new Object[]{
+                    UuidUtils.toBytes(comment.getCommentId()),
+                    UuidUtils.toBytes(comment.getVideoId()),
+                    UuidUtils.toBytes(comment.getUserId()),
+                    comment.getContent(),
+                    comment.getCreatedAt(),
+                    comment.getUpdatedAt(),
+                    comment.getParentCommentId() != null ? UuidUtils.toBytes(comment.getParentCommentId()) : null,
+                    comment.getReplyCount()});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO comments (comment_id, video_id, user_id, content, created_at, updated_at, "
+                + "parent_comment_id, reply_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?)", batchArgs);
+    }
+
+    public void addCommentCounts(Map<UUID, Long> deltas) {
+        List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+        for (Map.Entry<UUID, Long> delta : deltas.entrySet()) {
+            batchArgs.add(new Object[]{delta.getValue(), UuidUtils.toBytes(delta.getKey())});
+        }
+        jdbcTemplate.batchUpdate("UPDATE video_metadata SET comment_count = comment_count + ? WHERE video_id = ?",
+                batchArgs);
+    }
+
+    public void addReplyCounts(Map<UUID, Long> deltas) {
+        List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+        for (Map.Entry<UUID, Long> delta : deltas.entrySet()) {
+            batchArgs.add(new Object[]{delta.getValue(), UuidUtils.toBytes(delta.getKey())});
+        }
+        jdbcTemplate.batchUpdate("UPDATE comments SET reply_count = reply_count + ? WHERE comment_id = ?", batchArgs);
+    }
+
+    // Tombstoned videos do not count, their comments are about to be removed
+    public Set<UUID> findExistingVideoIds(Collection<UUID> videoIds) {
+        if (videoIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<UUID> existing = new HashSet<>();
+        jdbcTemplate.query("SELECT video_id FROM video_metadata WHERE deleted_at IS NULL AND video_id IN ("
+                        + placeholders(videoIds.size()) + ")",
+                resultSet -> {
+                    existing.add(UuidUtils.fromBytes(resultSet.getBytes(1)));
+                }, toBytes(videoIds));
+        return existing;
+    }
+
+    // Video of each given comment that is a top-level comment, i.e. one that can take replies
+    public Map<UUID, UUID> findTopLevelCommentVideos(Collection<UUID> commentIds) {
+        if (commentIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<UUID, UUID> videos = new HashMap<>();
+        jdbcTemplate.query("SELECT comment_id, video_id FROM comments WHERE parent_comment_id IS NULL AND comment_id IN ("
+                        + placeholders(commentIds.size()) + ")",
+                resultSet -> {
+                    videos.put(UuidUtils.fromBytes(resultSet.getBytes(1)), UuidUtils.fromBytes(resultSet.getBytes(2)));
+                }, toBytes(commentIds));
+        return videos;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static Object[] toBytes(Collection<UUID> ids) {
+        return ids.stream().map(UuidUtils::toBytes).toArray();
+    }
+}
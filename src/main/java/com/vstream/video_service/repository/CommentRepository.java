@@ -1,13 +1,53 @@
 package com.vstream.video_service.repository;
 
 import com.vstream.video_service.model.Comment;
-import com.vstream.video_service.model.VideoMetadata;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 import java.util.UUID;
 
 public interface CommentRepository extends JpaRepository<Comment, UUID> {
     List<Comment> findByVideoId(UUID videoId);
+
+    // Keyset pages of top-level comments over idx_comments_video_parent_created, starting right after the cursor
+    @Query("select c from Comment c where c.videoId = :videoId and c.parentCommentId is null " +
+            "and (c.createdAt < :afterDate or (c.createdAt = :afterDate and c.commentId < :afterId)) " +
+            "order by c.createdAt desc, c.commentId desc")
+    List<Comment> findPageNewestFirst(@Param("videoId") UUID videoId,
+                                      @Param("afterDate") LocalDateTime afterDate,
+                                      @Param("afterId") UUID afterId,
+                                      Pageable pageable);
+
+    @Query("select c from Comment c where c.videoId = :videoId and c.parentCommentId is null " +
+            "and (c.createdAt > :afterDate or (c.createdAt = :afterDate and c.commentId > :afterId)) " +
+            "order by c.createdAt asc, c.commentId asc")
+    List<Comment> findPageOldestFirst(@Param("videoId") UUID videoId,
+                                      @Param("afterDate") LocalDateTime afterDate,
+                                      @Param("afterId") UUID afterId,
+                                      Pageable pageable);
+
+    // Replies read in conversation order over idx_comments_parent_created
+    @Query("select c from Comment c where c.parentCommentId = :parentCommentId " +
+            "and (c.createdAt > :afterDate or (c.createdAt = :afterDate and c.commentId > :afterId)) " +
+            "order by c.createdAt asc, c.commentId asc")
+    List<Comment> findRepliesOldestFirst(@Param("parentCommentId") UUID parentCommentId,
+                                         @Param("afterDate") LocalDateTime afterDate,
+                                         @Param("afterId") UUID afterId,
+                                         Pageable pageable);
+
+    // Only top-level comments of the given video can take replies; returns 0 otherwise
+    @Modifying
+    @Query("update Comment c set c.replyCount = c.replyCount + :delta where c.commentId = :commentId " +
+            "and c.videoId = :videoId and c.parentCommentId is null")
+    int addReplyCount(@Param("commentId") UUID commentId, @Param("videoId") UUID videoId,
+                      @Param("delta") long delta);
+
+    @Modifying
+    @Query("delete from Comment c where c.parentCommentId = :parentCommentId")
+    int deleteReplies(@Param("parentCommentId") UUID parentCommentId);
 }
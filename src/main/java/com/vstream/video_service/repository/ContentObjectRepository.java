@@ -0,0 +1,38 @@
+package com.vstream.video_service.repository;
+
+import com.vstream.video_service.model.ContentObject;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ContentObjectRepository extends JpaRepository<ContentObject, String> {
+
+    // Creates the row with one reference, or adds one to an existing row: 1 when inserted, 2 when updated. Takes the
+    // exclusive row lock straight away, where INSERT IGNORE and a later UPDATE would take a shared lock first and
+    // deadlock two concurrent claims of the same hash upgrading it. Waits for a concurrent insert to commit.
+    @Modifying
+    @Query(value = "INSERT INTO content_objects (content_hash, size_bytes, ref_count, created_at) " +
+            "VALUES (:contentHash, :sizeBytes, 1, :createdAt) ON DUPLICATE KEY UPDATE ref_count = ref_count + 1",
+            nativeQuery = true)
+    int addReference(@Param("contentHash") String contentHash, @Param("sizeBytes") long sizeBytes,
+                     @Param("createdAt") LocalDateTime createdAt);
+
+    // Locking read of the reference count, null without a row. Holds the row, or the gap where it would be, until
+    // commit, which serializes claims, releases and transcode completion of one hash.
+    @Query(value = "SELECT ref_count FROM content_objects WHERE content_hash = :contentHash FOR UPDATE",
+            nativeQuery = true)
+    Long lockRefCount(@Param("contentHash") String contentHash);
+
+    @Modifying
+    @Query("update ContentObject c set c.refCount = c.refCount + :delta where c.contentHash = :contentHash")
+    int addRefCount(@Param("contentHash") String contentHash, @Param("delta") long delta);
+
+    @Modifying
+    @Query("delete from ContentObject c where c.contentHash = :contentHash and c.refCount <= 0")
+    int deleteUnreferenced(@Param("contentHash") String contentHash);
+}
@@ -0,0 +1,85 @@
+package com.vstream.video_service.repository;
+
+import com.vstream.video_service.model.TranscodeJob;
+import com.vstream.video_service.model.TranscodeJobStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface TranscodeJobRepository extends JpaRepository<TranscodeJob, UUID> {
+
+    // Jobs that are due, highest priority class first and oldest first within a class
+    @Query("select j from TranscodeJob j where j.status = com.vstream.video_service.model.TranscodeJobStatus.QUEUED " +
+            "and j.nextAttemptAt <= :now order by j.priority asc, j.createdAt asc")
+    List<TranscodeJob> findDueJobs(@Param("now") LocalDateTime now, Pageable pageable);
+
+    // Atomically moves a job from QUEUED to RUNNING under this worker's lease; returns 0 if another poller got there
+    // first
+    @Transactional
+    @Modifying
+    @Query("update TranscodeJob j set j.status = com.vstream.video_service.model.TranscodeJobStatus.RUNNING, " +
+            "j.startedAt = :now, j.attempts = j.attempts + 1, " +
+            "j.workerId = :workerId, j.leaseExpiresAt = :leaseExpiresAt " +
+            "where j.jobId = :jobId and j.status = com.vstream.video_service.model.TranscodeJobStatus.QUEUED")
+    int claim(@Param("jobId") UUID jobId, @Param("now") LocalDateTime now, @Param("workerId") String workerId,
+              @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("update TranscodeJob j set j.leaseExpiresAt = :leaseExpiresAt where j.workerId = :workerId " +
+            "and j.status = com.vstream.video_service.model.TranscodeJobStatus.RUNNING")
+    int renewLeases(@Param("workerId") String workerId, @Param("leaseExpiresAt") LocalDateTime leaseExpiresAt);
+
+    // RUNNING jobs whose worker stopped renewing their lease, i.e. an instance that crashed or was killed
+    @Transactional
+    @Modifying
+    @Query("update TranscodeJob j set j.status = com.vstream.video_service.model.TranscodeJobStatus.QUEUED, " +
+            "j.nextAttemptAt = :now, j.workerId = null, j.leaseExpiresAt = null " +
+            "where j.status = com.vstream.video_service.model.TranscodeJobStatus.RUNNING " +
+            "and (j.leaseExpiresAt is null or j.leaseExpiresAt < :now)")
+    int requeueExpired(@Param("now") LocalDateTime now);
+
+    // Final state of a job this worker ran; returns 0 if its lease lapsed meanwhile and the job was requeued, so the
+    // row may already belong to another worker
+    @Transactional
+    @Modifying
+    @Query("update TranscodeJob j set j.status = :status, j.lastError = :lastError, " +
+            "j.nextAttemptAt = :nextAttemptAt, j.finishedAt = :finishedAt, j.workerId = null, j.leaseExpiresAt = null " +
+            "where j.jobId = :jobId and j.workerId = :workerId " +
+            "and j.status = com.vstream.video_service.model.TranscodeJobStatus.RUNNING")
+    int finish(@Param("jobId") UUID jobId, @Param("workerId") String workerId,
+               @Param("status") TranscodeJobStatus status, @Param("lastError") String lastError,
+               @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("finishedAt") LocalDateTime finishedAt);
+
+    // Used on shutdown for the jobs this instance interrupted
+    @Transactional
+    @Modifying
+    @Query("update TranscodeJob j set j.status = com.vstream.video_service.model.TranscodeJobStatus.QUEUED, " +
+            "j.nextAttemptAt = :now, j.workerId = null, j.leaseExpiresAt = null " +
+            "where j.workerId = :workerId and j.status = com.vstream.video_service.model.TranscodeJobStatus.RUNNING")
+    int requeueOwned(@Param("workerId") String workerId, @Param("now") LocalDateTime now);
+
+    // Used when a video is deleted; a RUNNING job finishes first and the reaper waits for it
+    @Modifying
+    @Query("update TranscodeJob j set j.status = com.vstream.video_service.model.TranscodeJobStatus.FAILED, " +
+            "j.lastError = 'Video deleted', j.finishedAt = :now " +
+            "where j.videoId = :videoId and j.status = com.vstream.video_service.model.TranscodeJobStatus.QUEUED")
+    int cancelQueued(@Param("videoId") UUID videoId, @Param("now") LocalDateTime now);
+
+    long countByStatus(TranscodeJobStatus status);
+
+    List<TranscodeJob> findByVideoIdOrderByCreatedAtDesc(UUID videoId);
+
+    // Jobs for any video with this content that are still queued or running. A locking read, so under the
+    // content_objects row lock it sees jobs committed by whoever held the lock before, not the transaction's snapshot.
+    @Query(value = "SELECT COUNT(*) FROM transcode_jobs j JOIN video_metadata v ON v.video_id = j.video_id " +
+            "WHERE v.content_hash = :contentHash AND j.status IN ('QUEUED', 'RUNNING') FOR SHARE", nativeQuery = true)
+    long countPendingForContent(@Param("contentHash") String contentHash);
+}
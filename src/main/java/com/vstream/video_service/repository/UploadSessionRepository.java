@@ -0,0 +1,27 @@
+package com.vstream.video_service.repository;
+
+import com.vstream.video_service.model.UploadSession;
+import com.vstream.video_service.model.UploadSessionStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+
+    List<UploadSession> findByStatusAndUpdatedAtBefore(UploadSessionStatus status, LocalDateTime cutoff,
+                                                       Pageable pageable);
+
+    // Returns 0 if the session received a chunk or was finalized since it was found
+    @Modifying
+    @Query("update UploadSession s set s.status = com.vstream.video_service.model.UploadSessionStatus.EXPIRED, " +
+            "s.updatedAt = :now where s.sessionId = :sessionId " +
+            "and s.status = com.vstream.video_service.model.UploadSessionStatus.ACTIVE and s.updatedAt < :cutoff")
+    int expire(@Param("sessionId") UUID sessionId, @Param("cutoff") LocalDateTime cutoff,
+               @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,29 @@
+package com.vstream.video_service.repository;
+
+import com.vstream.video_service.util.UuidUtils;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Counter updates done in SQL so concurrent increments never read-modify-write the entity
+@Repository
+@Timed(value = "vstream.jdbc.queries", histogram = true)
+public class VideoCounterRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public void addViewCounts(Map<UUID, Long> deltas) {
+        List<Object[]> batchArgs = new ArrayList<>(deltas.size());
+        for (Map.Entry<UUID, Long> delta : deltas.entrySet()) {
+            batchArgs.add(new Object[]{delta.getValue(), UuidUtils.toBytes(delta.getKey())});
+        }
+        jdbcTemplate.batchUpdate("UPDATE video_metadata SET view_count = view_count + ? WHERE video_id = ?", batchArgs);
+    }
+}
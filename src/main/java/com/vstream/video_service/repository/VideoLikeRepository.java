@@ -1,12 +1,19 @@
 package com.vstream.video_service.repository;
 
 import com.vstream.video_service.model.VideoLike;
-import com.vstream.video_service.model.VideoMetadata;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 @Repository
 public interface VideoLikeRepository extends JpaRepository<VideoLike, VideoLike.VideoLikeId> {
@@ -15,4 +22,19 @@ public interface VideoLikeRepository extends JpaRepository<VideoLike, VideoLike.
 
     // You can also add a method to check if a user has already liked a video
     Optional<VideoLike> findById(VideoLike.VideoLikeId videoLikeId);
+
+    // Idempotent like: returns 0 instead of failing when the row already exists.
+    // Ids are passed as binary(16) bytes, see UuidUtils.
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO video_likes (user_id, video_id) VALUES (:userId, :videoId)", nativeQuery = true)
+    int insertIgnore(@Param("userId") byte[] userId, @Param("videoId") byte[] videoId);
+
+    @Modifying
+    @Query(value = "DELETE FROM video_likes WHERE user_id = :userId AND video_id = :videoId", nativeQuery = true)
+    int deleteByIds(@Param("userId") byte[] userId, @Param("videoId") byte[] videoId);
+
+    // MySQL only streams rows when the fetch size is Integer.MIN_VALUE
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("select l.videoLikeId from VideoLike l")
+    Stream<VideoLike.VideoLikeId> streamAllIds();
 }
@@ -1,21 +1,101 @@
 package com.vstream.video_service.repository;
 
+import com.vstream.video_service.dto.VideoMetadataDTO;
+import com.vstream.video_service.dto.ViewsLikesPointDTO;
+import com.vstream.video_service.model.TranscodeMode;
 import com.vstream.video_service.model.VideoMetadata;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface VideoMetadataRepository extends JpaRepository<VideoMetadata, UUID> {
+
+    // Read model for the API: selects the columns VideoMetadataDTO needs and builds it directly, so read
+    // paths never put entities in the persistence context
+    String DTO_SELECT = "select new com.vstream.video_service.dto.VideoMetadataDTO(v.videoId, v.title, v.uploaderId, " +
+            "v.description, v.thumbnailUrl, v.duration, v.fileSize, v.uploadDate, v.videoUrl, v.likeCount, " +
+            "v.viewCount, v.commentCount, v.durationMs, v.width, v.height, v.videoCodec, v.audioCodec, " +
+            "v.transcodeMode) from VideoMetadata v ";
+
     Optional<VideoMetadata> findByVideoId(UUID videoId);
 
-    // Custom query to filter videos by userId and uploadInProgress
-    List<VideoMetadata> findByUploaderIdAndUploadInProgress(String uploaderId, Boolean uploadInProgress);
+    @Query(DTO_SELECT + "where v.videoId = :videoId")
+    Optional<VideoMetadataDTO> findDTOByVideoId(@Param("videoId") UUID videoId);
+
+    // Uploads whose file is on disk but that were never handed to the transcode queue. A duplicate upload
+    // waiting on another video's job for the same content is not stuck while that job is still pending.
+    @Query("select v from VideoMetadata v where v.uploadInProgress = true and v.videoUrl is not null " +
+            "and not exists (select j from TranscodeJob j where j.videoId = v.videoId) " +
+            "and (v.contentHash is null or not exists (select j from TranscodeJob j, VideoMetadata w " +
+            "where w.contentHash = v.contentHash and j.videoId = w.videoId " +
+            "and j.status in (com.vstream.video_service.model.TranscodeJobStatus.QUEUED, " +
+            "com.vstream.video_service.model.TranscodeJobStatus.RUNNING)))")
+    List<VideoMetadata> findStuckWithoutTranscodeJob();
+
+    // A finished video with the given content, whose HLS output a duplicate upload can reuse. A locking read like
+    // TranscodeJobRepository.countPendingForContent.
+    @Query(value = "SELECT * FROM video_metadata WHERE content_hash = :contentHash AND upload_in_progress = false " +
+            "AND deleted_at IS NULL LIMIT 1 FOR SHARE", nativeQuery = true)
+    Optional<VideoMetadata> findFinishedByContentHash(@Param("contentHash") String contentHash);
+
+    // Duplicate uploads waiting for the content's transcode to finish
+    List<VideoMetadata> findByContentHashAndUploadInProgressTrue(String contentHash);
+
+    long countByTranscodeMode(TranscodeMode transcodeMode);
+
+    // Turns the row into a tombstone; returns 0 if it already is one. The id is passed as binary(16) bytes,
+    // see UuidUtils.
+    @Modifying
+    @Query(value = "UPDATE video_metadata SET deleted_at = :now, reap_after = :now " +
+            "WHERE video_id = :videoId AND deleted_at IS NULL", nativeQuery = true)
+    int tombstone(@Param("videoId") byte[] videoId, @Param("now") LocalDateTime now);
+
+    // Atomic in SQL, so concurrent likes cannot overwrite each other; returns 0 if the video does not exist
+    @Modifying
+    @Query("update VideoMetadata v set v.likeCount = v.likeCount + :delta where v.videoId = :videoId")
+    int addLikeCount(@Param("videoId") UUID videoId, @Param("delta") long delta);
+
+    // Returns 0 if the video does not exist
+    @Modifying
+    @Query("update VideoMetadata v set v.commentCount = v.commentCount + :delta where v.videoId = :videoId")
+    int addCommentCount(@Param("videoId") UUID videoId, @Param("delta") long delta);
+
+    @Query("select v.likeCount from VideoMetadata v where v.videoId = :videoId")
+    Long findLikeCount(@Param("videoId") UUID videoId);
+
+    // Two columns per video instead of whole entities
+    @Query("select new com.vstream.video_service.dto.ViewsLikesPointDTO(v.viewCount, v.likeCount) from VideoMetadata v")
+    List<ViewsLikesPointDTO> findViewsAndLikes();
+
+    // Keyset pages, newest first. Each matches one of the listing indexes, so a page is a range scan
+    // starting right after the cursor no matter how deep the client has scrolled.
+    @Query(DTO_SELECT + "where v.uploaderId = :uploaderId and v.uploadInProgress = :uploadInProgress " +
+            "and (v.uploadDate < :afterDate or (v.uploadDate = :afterDate and v.videoId < :afterId)) " +
+            "order by v.uploadDate desc, v.videoId desc")
+    List<VideoMetadataDTO> findPageByUploaderIdAndUploadInProgress(@Param("uploaderId") String uploaderId,
+                                                                   @Param("uploadInProgress") Boolean uploadInProgress,
+                                                                   @Param("afterDate") LocalDateTime afterDate,
+                                                                   @Param("afterId") UUID afterId,
+                                                                   Pageable pageable);
 
-    // Custom query to fetch all videos if no filter is provided
-    List<VideoMetadata> findByUploadInProgress(Boolean uploadInProgress);
+    @Query(DTO_SELECT + "where v.uploadInProgress = :uploadInProgress " +
+            "and (v.uploadDate < :afterDate or (v.uploadDate = :afterDate and v.videoId < :afterId)) " +
+            "order by v.uploadDate desc, v.videoId desc")
+    List<VideoMetadataDTO> findPageByUploadInProgress(@Param("uploadInProgress") Boolean uploadInProgress,
+                                                      @Param("afterDate") LocalDateTime afterDate,
+                                                      @Param("afterId") UUID afterId,
+                                                      Pageable pageable);
 
-    // Method to fetch all videos
-    List<VideoMetadata> findAll();
+    @Query(DTO_SELECT + "where v.uploadDate < :afterDate or (v.uploadDate = :afterDate and v.videoId < :afterId) " +
+            "order by v.uploadDate desc, v.videoId desc")
+    List<VideoMetadataDTO> findPage(@Param("afterDate") LocalDateTime afterDate,
+                                    @Param("afterId") UUID afterId,
+                                    Pageable pageable);
 }
@@ -0,0 +1,57 @@
+package com.vstream.video_service.repository;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Read-only scans over per-video counters that stream rows instead of building entities
+@Repository
+@Timed(value = "vstream.jdbc.queries", histogram = true)
+public class VideoStatsRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public interface ViewsLikesConsumer {
+        void accept(long views, long likes);
+    }
+
+    // All filters are optional; from is inclusive and to is exclusive
+    public void forEachViewsAndLikes(String uploaderId, LocalDateTime from, LocalDateTime to,
+                                     ViewsLikesConsumer consumer) {
+        StringBuilder sql = new StringBuilder("SELECT view_count, like_count FROM video_metadata WHERE deleted_at IS NULL");
+        List<Object> args = new ArrayList<>();
+        if (uploaderId != null) {
+            sql.append(" AND uploader_id = ?");
+            args.add(uploaderId);
+        }
+        if (from != null) {
+            sql.append(" AND upload_date >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            sql.append(" AND upload_date < ?");
+            args.add(to);
+        }
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // MySQL only streams rows when the fetch size is Integer.MIN_VALUE
+            statement.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < args.size(); i++) {
+                statement.setObject(i + 1, args.get(i));
+            }
+            return statement;
+        }, resultSet -> {
+            consumer.accept(resultSet.getLong(1), resultSet.getLong(2));
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.vstream.video_service.repository;
+
+import com.vstream.video_service.util.UuidUtils;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Everything VideoReaper needs in SQL: tombstoned video_metadata rows, which the entity never loads, the
+// per-video rows in other tables that go with them, and the lookups the orphan sweep compares storage with.
+// Lookups here deliberately include tombstones, their files are the reaper's to remove.
+@Repository
+@Timed(value = "vstream.jdbc.queries", histogram = true)
+public class VideoTombstoneRepository {
+
+    // Tables holding rows per video, all indexed on video_id
+    public static final List<String> DEPENDENT_TABLES = List.of("comments", "video_likes", "transcode_jobs",
+            "upload_sessions");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public record Tombstone(UUID videoId, String uploaderId, String videoUrl, String contentHash,
+                            String thumbnailUrl, int attempts) {
+    }
+
+    // Oldest due first over idx_video_metadata_reap_after, which only holds tombstones
+    public List<Tombstone> findDue(LocalDateTime now, int limit) {
+        return jdbcTemplate.query("SELECT video_id, uploader_id, video_url, content_hash, thumbnail_url, reap_attempts "
+                        + "FROM video_metadata WHERE reap_after <= ? ORDER BY reap_after LIMIT ?",
+                (resultSet, rowNum) -> new Tombstone(UuidUtils.fromBytes(resultSet.getBytes(1)),
+                        resultSet.getString(2), resultSet.getString(3), resultSet.getString(4),
+                        resultSet.getString(5), resultSet.getInt(6)),
+                now, limit);
+    }
+
+    public long countTombstones() {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM video_metadata WHERE reap_after IS NOT NULL",
+                Long.class);
+        return count != null ? count : 0;
+    }
+
+    public void postpone(UUID videoId, int attempts, LocalDateTime reapAfter) {
+        jdbcTemplate.update("UPDATE video_metadata SET reap_attempts = ?, reap_after = ? "
+                + "WHERE video_id = ? AND deleted_at IS NOT NULL", attempts, reapAfter, UuidUtils.toBytes(videoId));
+    }
+
+    public boolean hasRunningTranscode(UUID videoId) {
+        Integer running = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM transcode_jobs "
+                + "WHERE video_id = ? AND status = 'RUNNING'", Integer.class, UuidUtils.toBytes(videoId));
+        return running != null && running > 0;
+    }
+
+    // Partial files of chunked uploads that were never finalized (active or expired), relative to the spool directory
+    public List<String> findUnfinishedUploadFiles(UUID videoId) {
+        return jdbcTemplate.queryForList("SELECT video_url FROM upload_sessions WHERE video_id = ? "
+                + "AND status <> 'COMPLETED'", String.class, UuidUtils.toBytes(videoId));
+    }
+
+    // One bounded statement per call, so removing a video with many comments never holds a long transaction
+    public int deleteDependents(String table, UUID videoId, int limit) {
+        if (!DEPENDENT_TABLES.contains(table)) {
+            throw new IllegalArgumentException("Not a per-video table: " + table);
+        }
+        return jdbcTemplate.update("DELETE FROM " + table + " WHERE video_id = ? LIMIT ?",
+                UuidUtils.toBytes(videoId), limit);
+    }
+
+    // Locks the row until the caller commits; returns 0 if it is gone or no longer a tombstone
+    public int deleteTombstone(UUID videoId) {
+        return jdbcTemplate.update("DELETE FROM video_metadata WHERE video_id = ? AND deleted_at IS NOT NULL",
+                UuidUtils.toBytes(videoId));
+    }
+
+    public Set<UUID> findVideoIdsByUploader(String uploaderId) {
+        Set<UUID> videoIds = new HashSet<>();
+        jdbcTemplate.query("SELECT video_id FROM video_metadata WHERE uploader_id = ?",
+                resultSet -> {
+                    videoIds.add(UuidUtils.fromBytes(resultSet.getBytes(1)));
+                }, uploaderId);
+        return videoIds;
+    }
+
+    // Hashes starting with the given hex digits, a range scan on the primary key
+    public Set<String> findContentHashes(String hashPrefix) {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT content_hash FROM content_objects "
+                + "WHERE content_hash LIKE ?", String.class, escapeLike(hashPrefix) + "%"));
+    }
+
+    public Set<String> findThumbnailUrls(String urlPrefix) {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT DISTINCT thumbnail_url FROM video_metadata "
+                + "WHERE thumbnail_url LIKE ?", String.class, escapeLike(urlPrefix) + "%"));
+    }
+
+    // Whether any other row, live or tombstoned, still points at the stored thumbnail
+    public boolean isThumbnailReferenced(String thumbnailUrl, UUID exceptVideoId) {
+        Integer referenced = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM video_metadata "
+                + "WHERE thumbnail_url = ? AND video_id <> ?)", Integer.class, thumbnailUrl,
+                UuidUtils.toBytes(exceptVideoId));
+        return referenced != null && referenced > 0;
+    }
+
+    // Same for anything in a content-addressed thumbnail directory, which rows may name differently (original.jpg
+    // and original.jpeg from before the name was fixed) but which only ever holds one image
+    public boolean isThumbnailDirectoryReferenced(String directory, UUID exceptVideoId) {
+        Integer referenced = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM video_metadata "
+                + "WHERE thumbnail_url LIKE ? AND video_id <> ?)", Integer.class, escapeLike(directory + "/") + "%",
+                UuidUtils.toBytes(exceptVideoId));
+        return referenced != null && referenced > 0;
+    }
+
+    // Uploader ids may contain _ or %
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,144 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.repository.AnalyticsRollupRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.IsoFields;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps the dashboard rollup tables in step with finalized uploads, deletes and likes. Callers run these inside
+// their own transaction so a rollup never counts a change that was rolled back. The like buckets are a handful
+// of rows every like on every video could touch, so their changes are summed in memory once the transaction
+// commits and written in one batch per interval, in bucket order, like the view counts.
+@Slf4j
+@Service
+public class AnalyticsRollupService {
+
+    public static final List<String> PERIODS = List.of("day", "week", "month");
+
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    @Autowired
+    private AnalyticsRollupRepository analyticsRollupRepository;
+
+    private final ConcurrentHashMap<String, Long> pendingLikeBuckets = new ConcurrentHashMap<>();
+
+    public void recordUpload(String uploaderId, LocalDateTime uploadDate) {
+        applyVideoDelta(uploaderId, uploadDate, 0L, 1);
+    }
+
+    public void recordDelete(String uploaderId, LocalDateTime uploadDate, long likeCount) {
+        applyVideoDelta(uploaderId, uploadDate, likeCount, -1);
+    }
+
+    // Only moves a video between buckets when the like crossed a bucket boundary
+    public void recordLikeCountChange(long previousLikeCount, long likeCount) {
+        String previousBucket = getLikeCountRange(previousLikeCount);
+        String bucket = getLikeCountRange(likeCount);
+        if (!previousBucket.equals(bucket)) {
+            addLikeBucketVideos(previousBucket, -1);
+            addLikeBucketVideos(bucket, 1);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${analytics.like-buckets.flush-interval-ms:1000}")
+    public void flushLikeBuckets() {
+        // Sorted, so flushes on different instances take the row locks in the same order
+        Map<String, Long> deltas = new TreeMap<>();
+        for (String bucket : pendingLikeBuckets.keySet()) {
+            Long delta = pendingLikeBuckets.remove(bucket);
+            if (delta != null && delta != 0) {
+                deltas.put(bucket, delta);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            analyticsRollupRepository.addLikeBucketVideos(deltas);
+        } catch (Exception e) {
+            // Put the changes back so the next flush retries them
+            log.error("Failed to flush like count buckets: {}", e.getMessage());
+            deltas.forEach((bucket, delta) -> pendingLikeBuckets.merge(bucket, delta, Long::sum));
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flushLikeBuckets();
+    }
+
+    private void addLikeBucketVideos(String bucket, long delta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pendingLikeBuckets.merge(bucket, delta, Long::sum);
+                }
+            });
+        } else {
+            pendingLikeBuckets.merge(bucket, delta, Long::sum);
+        }
+    }
+
+    private void applyVideoDelta(String uploaderId, LocalDateTime uploadDate, long likeCount, long delta) {
+        if (uploadDate != null) {
+            Map<String, String> periodKeys = new LinkedHashMap<>();
+            for (String period : PERIODS) {
+                periodKeys.put(period, getPeriodKey(uploadDate.toLocalDate(), period));
+            }
+            analyticsRollupRepository.addUploads(periodKeys, delta);
+        }
+        analyticsRollupRepository.addUploaderVideos(uploaderId, delta);
+        addLikeBucketVideos(getLikeCountRange(likeCount), delta);
+    }
+
+    public Map<String, Long> getUploadTrends(String period) {
+        if (!PERIODS.contains(period)) {
+            throw new IllegalArgumentException("Invalid period: " + period);
+        }
+        return analyticsRollupRepository.findUploadCounts(period);
+    }
+
+    public Map<String, Long> getUploadCountByUser() {
+        return analyticsRollupRepository.findUploaderVideoCounts();
+    }
+
+    public Map<String, Long> getLikeCountDistribution() {
+        return analyticsRollupRepository.findLikeBucketCounts();
+    }
+
+    // The changelog backfill builds the same keys in SQL, keep the two in step
+    static String getPeriodKey(LocalDate uploadDate, String period) {
+        switch (period) {
+            case "day":
+                return uploadDate.format(DAY_FORMATTER);
+            case "week":
+                return uploadDate.getYear() + "-W" + uploadDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+            case "month":
+                return uploadDate.getYear() + "-" + uploadDate.getMonthValue();
+            default:
+                throw new IllegalArgumentException("Invalid period: " + period);
+        }
+    }
+
+    static String getLikeCountRange(long likeCount) {
+        if (likeCount <= 10) return "0-10";
+        if (likeCount <= 50) return "11-50";
+        if (likeCount <= 100) return "51-100";
+        return "100+";
+    }
+}
@@ -0,0 +1,365 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.dto.CreateUploadSessionDTO;
+import com.vstream.video_service.dto.UploadSessionDTO;
+import com.vstream.video_service.model.UploadSession;
+import com.vstream.video_service.model.UploadSessionStatus;
+import com.vstream.video_service.model.VideoMetadata;
+import com.vstream.video_service.repository.UploadSessionRepository;
+import com.vstream.video_service.repository.VideoMetadataRepository;
+import com.vstream.video_service.storage.SpoolDirectory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Service
+public class ChunkedUploadService {
+
+    // Upper bound for a single transferFrom call; the channel copies through a small native buffer either way
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int EXPIRE_BATCH_SIZE = 500;
+
+    @Autowired
+    private UploadSessionRepository uploadSessionRepository;
+
+    @Autowired
+    private VideoMetadataRepository videoMetadataRepository;
+
+    @Autowired
+    private VideoMetadataService videoMetadataService;
+
+    @Autowired
+    private ContentStoreService contentStoreService;
+
+    // Partial files live in the spool until finalize hands them to the content store, so with several
+    // instances the PATCH requests of a session have to reach the same one (or the spool has to be shared)
+    @Autowired
+    private SpoolDirectory spoolDirectory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${uploads.sessions.expire-after-hours:24}")
+    private long expireAfterHours;
+
+    // Sessions with a PATCH currently streaming, being finalized or being expired, so none of these overlap
+    private final Set<UUID> activeWrites = ConcurrentHashMap.newKeySet();
+
+    // Running SHA-256 of each session's file, fed by the chunks as they are written. It is only kept while it
+    // has seen exactly the bytes before the session offset; if it is lost (restart, failed write) the file is
+    // hashed once at finalize instead.
+    private final Map<UUID, SessionDigest> sessionDigests = new ConcurrentHashMap<>();
+
+    @Transactional
+    public UploadSessionDTO createSession(CreateUploadSessionDTO createUploadSessionDTO) throws IOException {
+        if (createUploadSessionDTO.getTotalSize() == null || createUploadSessionDTO.getTotalSize() <= 0) {
+            throw new IllegalArgumentException("totalSize must be a positive number of bytes.");
+        }
+        log.info("Creating upload session for uploader ID: {}", createUploadSessionDTO.getUploaderId());
+
+        VideoMetadata videoMetadata = new VideoMetadata();
+        videoMetadata.setUploaderId(createUploadSessionDTO.getUploaderId());
+        videoMetadata.setTitle(createUploadSessionDTO.getTitle());
+        videoMetadata.setDescription(createUploadSessionDTO.getDescription());
+        videoMetadata.setUploadDate(LocalDateTime.now());
+        videoMetadata.setUploadInProgress(true);
+        VideoMetadata savedMetadata = videoMetadataRepository.save(videoMetadata);
+
+        String relativeVideoPath = "uploads/" + savedMetadata.getUploaderId() + "/" + savedMetadata.getVideoId() + ".part";
+        Path videoFilePath = spoolDirectory.resolve(relativeVideoPath);
+        Files.createDirectories(videoFilePath.getParent());
+        Files.deleteIfExists(videoFilePath);
+        Files.createFile(videoFilePath);
+
+        LocalDateTime now = LocalDateTime.now();
+        UploadSession uploadSession = new UploadSession();
+        uploadSession.setVideoId(savedMetadata.getVideoId());
+        uploadSession.setUploaderId(savedMetadata.getUploaderId());
+        uploadSession.setVideoUrl(relativeVideoPath);
+        uploadSession.setTotalSize(createUploadSessionDTO.getTotalSize());
+        uploadSession.setCreatedAt(now);
+        uploadSession.setUpdatedAt(now);
+        UploadSession savedSession = uploadSessionRepository.save(uploadSession);
+        log.info("Upload session {} created for video ID: {}", savedSession.getSessionId(), savedSession.getVideoId());
+
+        return convertToDTO(savedSession);
+    }
+
+    public Optional<UploadSessionDTO> getSession(UUID sessionId) {
+        return uploadSessionRepository.findById(sessionId).map(this::convertToDTO);
+    }
+
+    // Streams the request body straight into the target file at the given offset. Whatever landed on disk
+    // is recorded even if the connection drops, so the client can resume from the returned offset.
+    public Optional<UploadSessionDTO> appendChunk(UUID sessionId, long offset, InputStream body, long contentLength)
+            throws IOException {
+        if (!activeWrites.add(sessionId)) {
+            throw new IllegalStateException("Another chunk is already being written for session " + sessionId);
+        }
+
+        UploadSession uploadSession;
+        try {
+            // Read under the lock, so a session finalized or expired meanwhile is seen as such
+            Optional<UploadSession> uploadSessionOpt = uploadSessionRepository.findById(sessionId);
+            if (uploadSessionOpt.isEmpty()) {
+                return Optional.empty();
+            }
+            uploadSession = uploadSessionOpt.get();
+            if (uploadSession.getStatus() != UploadSessionStatus.ACTIVE) {
+                throw new IllegalStateException("Upload session " + sessionId + " is already "
+                        + uploadSession.getStatus());
+            }
+
+            Path videoFilePath = spoolDirectory.resolve(uploadSession.getVideoUrl());
+            try (FileChannel fileChannel = FileChannel.open(videoFilePath,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // The offset is persisted after the bytes are written, so the file can only be ahead of it.
+                // If it is behind (e.g. the file was truncated) fall back to what is actually on disk.
+                long persisted = Math.min(uploadSession.getBytesReceived(), fileChannel.size());
+                if (offset != persisted) {
+                    throw new OffsetMismatchException(persisted);
+                }
+
+                long remaining = uploadSession.getTotalSize() - offset;
+                if (contentLength > remaining) {
+                    throw new IllegalArgumentException("Chunk of " + contentLength + " bytes exceeds the "
+                            + remaining + " bytes left in the upload.");
+                }
+                long limit = offset + (contentLength >= 0 ? contentLength : remaining);
+
+                SessionDigest sessionDigest = sessionDigestAt(sessionId, offset);
+                long position = offset;
+                ReadableByteChannel bodyChannel = Channels.newChannel(body);
+                try (ReadableByteChannel source = sessionDigest != null
+                        ? new DigestingChannel(bodyChannel, sessionDigest) : bodyChannel) {
+                    while (position < limit) {
+                        long transferred = fileChannel.transferFrom(source, position,
+                                Math.min(limit - position, TRANSFER_CHUNK_SIZE));
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        position += transferred;
+                    }
+                } finally {
+                    if (sessionDigest != null && sessionDigest.position != position) {
+                        // Read but not written, the digest no longer matches the file
+                        sessionDigests.remove(sessionId);
+                    }
+                    uploadSession.setBytesReceived(position);
+                    uploadSession.setUpdatedAt(LocalDateTime.now());
+                    uploadSessionRepository.save(uploadSession);
+                    log.debug("Session {} now at offset {} of {}", sessionId, position, uploadSession.getTotalSize());
+                }
+            }
+        } finally {
+            activeWrites.remove(sessionId);
+        }
+
+        return Optional.of(convertToDTO(uploadSession));
+    }
+
+    @Transactional
+    public Optional<VideoMetadata> finalizeSession(UUID sessionId, MultipartFile thumbnailFile) throws Exception {
+        if (!activeWrites.add(sessionId)) {
+            throw new IllegalStateException("A chunk is still being written for session " + sessionId);
+        }
+        releaseAfterCompletion(sessionId);
+
+        Optional<UploadSession> uploadSessionOpt = uploadSessionRepository.findById(sessionId);
+        if (uploadSessionOpt.isEmpty()) {
+            return Optional.empty();
+        }
+        UploadSession uploadSession = uploadSessionOpt.get();
+        if (uploadSession.getStatus() != UploadSessionStatus.ACTIVE) {
+            throw new IllegalStateException("Upload session " + sessionId + " is already " + uploadSession.getStatus());
+        }
+        if (!uploadSession.getBytesReceived().equals(uploadSession.getTotalSize())) {
+            throw new IllegalStateException("Upload session " + sessionId + " has received "
+                    + uploadSession.getBytesReceived() + " of " + uploadSession.getTotalSize() + " bytes.");
+        }
+
+        VideoMetadata videoMetadata = videoMetadataRepository.findByVideoId(uploadSession.getVideoId())
+                .orElseThrow(() -> new IllegalStateException("Video " + uploadSession.getVideoId()
+                        + " for upload session " + sessionId + " no longer exists."));
+
+        uploadSession.setStatus(UploadSessionStatus.COMPLETED);
+        uploadSession.setUpdatedAt(LocalDateTime.now());
+        uploadSessionRepository.save(uploadSession);
+        log.info("Upload session {} complete, finalizing video ID: {}", sessionId, uploadSession.getVideoId());
+
+        Path videoFilePath = spoolDirectory.resolve(uploadSession.getVideoUrl());
+        SessionDigest sessionDigest = sessionDigests.remove(sessionId);
+        ContentStoreService.StagedContent stagedContent = sessionDigest != null
+                && sessionDigest.position == uploadSession.getTotalSize()
+                ? new ContentStoreService.StagedContent(videoFilePath,
+                        HexFormat.of().formatHex(sessionDigest.digest.digest()), uploadSession.getTotalSize())
+                : contentStoreService.hashExisting(videoFilePath);
+        return Optional.of(videoMetadataService.completeUpload(videoMetadata, stagedContent,
+                thumbnailFile, uploadSession.getTotalSize()));
+    }
+
+    // Sessions nobody has written to for expire-after-hours. Their placeholder video is deleted like any other
+    // video, and the reaper then removes the partial file and the session row. One batch per run.
+    @Scheduled(initialDelayString = "${uploads.sessions.cleanup-interval-ms:3600000}",
+            fixedDelayString = "${uploads.sessions.cleanup-interval-ms:3600000}")
+    public void expireAbandonedSessions() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minusHours(expireAfterHours);
+        List<UploadSession> abandoned = uploadSessionRepository.findByStatusAndUpdatedAtBefore(
+                UploadSessionStatus.ACTIVE, cutoff, PageRequest.of(0, EXPIRE_BATCH_SIZE));
+        int expired = 0;
+        for (UploadSession uploadSession : abandoned) {
+            UUID sessionId = uploadSession.getSessionId();
+            if (!activeWrites.add(sessionId)) {
+                // A chunk is arriving right now
+                continue;
+            }
+            try {
+                Boolean expiredNow = new TransactionTemplate(transactionManager).execute(status -> {
+                    if (uploadSessionRepository.expire(sessionId, cutoff, now) == 0) {
+                        return false;
+                    }
+                    videoMetadataService.deleteVideo(uploadSession.getVideoId().toString());
+                    return true;
+                });
+                if (Boolean.TRUE.equals(expiredNow)) {
+                    sessionDigests.remove(sessionId);
+                    expired++;
+                }
+            } catch (Exception e) {
+                log.warn("Could not expire upload session {}: {}", sessionId, e.getMessage());
+            } finally {
+                activeWrites.remove(sessionId);
+            }
+        }
+        if (expired > 0) {
+            log.info("Expired {} upload session(s) idle since before {}", expired, cutoff);
+        }
+    }
+
+    // Held until the transaction ends, so no chunk can start before the new status is committed
+    private void releaseAfterCompletion(UUID sessionId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                activeWrites.remove(sessionId);
+            }
+        });
+    }
+
+    // The digest to continue at offset, a fresh one for the first chunk, or null if it cannot be continued
+    private SessionDigest sessionDigestAt(UUID sessionId, long offset) {
+        if (offset == 0) {
+            try {
+                SessionDigest sessionDigest = new SessionDigest(MessageDigest.getInstance("SHA-256"));
+                sessionDigests.put(sessionId, sessionDigest);
+                return sessionDigest;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        SessionDigest sessionDigest = sessionDigests.get(sessionId);
+        if (sessionDigest != null && sessionDigest.position != offset) {
+            sessionDigests.remove(sessionId);
+            return null;
+        }
+        return sessionDigest;
+    }
+
+    private static final class SessionDigest {
+        private final MessageDigest digest;
+        private long position;
+
+        private SessionDigest(MessageDigest digest) {
+            this.digest = digest;
+        }
+    }
+
+    // Hashes the request body as transferFrom pulls it through, so the chunk is not read back from disk
+    private static final class DigestingChannel implements ReadableByteChannel {
+        private final ReadableByteChannel source;
+        private final SessionDigest sessionDigest;
+
+        private DigestingChannel(ReadableByteChannel source, SessionDigest sessionDigest) {
+            this.source = source;
+            this.sessionDigest = sessionDigest;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            int start = buffer.position();
+            int read = source.read(buffer);
+            if (read > 0) {
+                ByteBuffer readBytes = buffer.duplicate();
+                readBytes.position(start).limit(start + read);
+                sessionDigest.digest.update(readBytes);
+                sessionDigest.position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return source.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    private UploadSessionDTO convertToDTO(UploadSession uploadSession) {
+        UploadSessionDTO uploadSessionDTO = new UploadSessionDTO();
+        uploadSessionDTO.setSessionId(String.valueOf(uploadSession.getSessionId()));
+        uploadSessionDTO.setVideoId(String.valueOf(uploadSession.getVideoId()));
+        uploadSessionDTO.setTotalSize(uploadSession.getTotalSize());
+        uploadSessionDTO.setOffset(uploadSession.getBytesReceived());
+        uploadSessionDTO.setStatus(uploadSession.getStatus().name());
+        return uploadSessionDTO;
+    }
+
+    // Raised when a chunk does not start where the previous one ended; carries the offset to resume from
+    public static class OffsetMismatchException extends IllegalStateException {
+        private final long expectedOffset;
+
+        public OffsetMismatchException(long expectedOffset) {
+            super("Chunk must start at offset " + expectedOffset);
+            this.expectedOffset = expectedOffset;
+        }
+
+        public long getExpectedOffset() {
+            return expectedOffset;
+        }
+    }
+}
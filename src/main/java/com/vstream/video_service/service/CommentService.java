@@ -1,53 +1,282 @@
 package com.vstream.video_service.service;
 
+import com.vstream.video_service.cache.CommentFirstPageCache;
+import com.vstream.video_service.cache.VideoMetadataCache;
 import com.vstream.video_service.dto.CommentDTO;
+import com.vstream.video_service.dto.CommentPageDTO;
 import com.vstream.video_service.model.Comment;
+import com.vstream.video_service.repository.CommentBatchRepository;
 import com.vstream.video_service.repository.CommentRepository;
+import com.vstream.video_service.repository.VideoMetadataRepository;
+import com.vstream.video_service.util.CursorToken;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
+// Comments are one level deep: a reply points at a top-level comment, which keeps a reply_count. Counters on
+// video_metadata and on the parent are changed in SQL in the same transaction as the comment itself. The newest
+// top-level comments of hot videos are served from CommentFirstPageCache, which every write patches in place.
 @Service
 @RequiredArgsConstructor
 public class CommentService {
 
     private final CommentRepository commentRepository;
+    private final CommentBatchRepository commentBatchRepository;
+    private final VideoMetadataRepository videoMetadataRepository;
+    private final VideoMetadataCache videoMetadataCache;
+    private final CommentFirstPageCache commentFirstPageCache;
+    private final LiveEventHub liveEventHub;
 
+    @Value("${comments.page-size.default:20}")
+    private int defaultPageSize;
+
+    @Value("${comments.page-size.max:100}")
+    private int maxPageSize;
+
+    @Value("${comments.batch.max-size:1000}")
+    private int maxBatchSize;
+
+    // Throws NoSuchElementException if the video, or the parent comment on that video, does not exist
+    @Transactional
     public CommentDTO addComment(CommentDTO commentDTO) {
-        Comment comment = new Comment();
-        comment.setVideoId(commentDTO.getVideoId());
-        comment.setUserId(commentDTO.getUserId());
-        comment.setContent(commentDTO.getContent());
-        comment.setCreatedAt(LocalDateTime.now());
-        comment.setUpdatedAt(LocalDateTime.now());
-        Comment savedComment = commentRepository.save(comment);
+        if (videoMetadataRepository.addCommentCount(commentDTO.getVideoId(), 1) == 0) {
+            throw new NoSuchElementException("Video with ID " + commentDTO.getVideoId() + " not found");
+        }
+        UUID parentCommentId = commentDTO.getParentCommentId();
+        if (parentCommentId != null
+                && commentRepository.addReplyCount(parentCommentId, commentDTO.getVideoId(), 1) == 0) {
+            throw new NoSuchElementException("Comment with ID " + parentCommentId + " not found on video "
+                    + commentDTO.getVideoId());
+        }
+        Comment comment = newComment(commentDTO, UUID.randomUUID(), currentTime());
+        commentBatchRepository.insertAll(List.of(comment));
 
-        return mapToDTO(savedComment);
+        CommentDTO savedComment = mapToDTO(comment);
+        videoMetadataCache.evict(comment.getVideoId());
+        if (parentCommentId == null) {
+            commentFirstPageCache.commentAdded(savedComment);
+        } else {
+            commentFirstPageCache.replyCountChanged(comment.getVideoId(), parentCommentId, 1);
+        }
+        liveEventHub.publish(LiveEventHub.videoTopic(comment.getVideoId()), "comment.added", savedComment);
+        return savedComment;
     }
 
-    public List<CommentDTO> getCommentsByVideoId(UUID videoId) {
-        return commentRepository.findByVideoId(videoId)
-                .stream()
-                .map(this::mapToDTO)
-                .collect(Collectors.toList());
+    // Import/sync path: every comment is validated first, then all rows and counters are written in a few
+    // JDBC batches. Comments may carry their own ids and timestamps, and replies may point at top-level
+    // comments earlier in the same batch. Throws IllegalArgumentException for an invalid batch and
+    // NoSuchElementException for an unknown video or parent.
+    @Transactional
+    public List<CommentDTO> addComments(List<CommentDTO> commentDTOs) {
+        if (commentDTOs.isEmpty() || commentDTOs.size() > maxBatchSize) {
+            throw new IllegalArgumentException("A batch must hold between 1 and " + maxBatchSize + " comments");
+        }
+        LocalDateTime now = currentTime();
+        List<Comment> comments = new ArrayList<>(commentDTOs.size());
+        Map<UUID, Comment> topLevelComments = new HashMap<>();
+        for (CommentDTO commentDTO : commentDTOs) {
+            if (commentDTO.getVideoId() == null || commentDTO.getUserId() == null || commentDTO.getContent() == null) {
+                throw new IllegalArgumentException("Every comment needs a videoId, userId and content");
+            }
+            UUID commentId = commentDTO.getCommentId() != null ? commentDTO.getCommentId() : UUID.randomUUID();
+            LocalDateTime createdAt = commentDTO.getCreatedAt() != null
+                    ? commentDTO.getCreatedAt().truncatedTo(ChronoUnit.SECONDS) : now;
+            Comment comment = newComment(commentDTO, commentId, createdAt);
+            if (commentDTO.getUpdatedAt() != null) {
+                comment.setUpdatedAt(commentDTO.getUpdatedAt().truncatedTo(ChronoUnit.SECONDS));
+            }
+            comments.add(comment);
+            if (comment.getParentCommentId() == null && topLevelComments.put(commentId, comment) != null) {
+                throw new IllegalArgumentException("Comment ID " + commentId + " appears twice in the batch");
+            }
+        }
+
+        Set<UUID> videoIds = comments.stream().map(Comment::getVideoId).collect(Collectors.toSet());
+        Set<UUID> existingVideoIds = commentBatchRepository.findExistingVideoIds(videoIds);
+        if (existingVideoIds.size() != videoIds.size()) {
+            videoIds.removeAll(existingVideoIds);
+            throw new NoSuchElementException("Videos not found: " + videoIds);
+        }
+
+        Set<UUID> storedParentIds = comments.stream()
+                .map(Comment::getParentCommentId)
+                .filter(parentId -> parentId != null && !topLevelComments.containsKey(parentId))
+                .collect(Collectors.toSet());
+        Map<UUID, UUID> storedParentVideos = commentBatchRepository.findTopLevelCommentVideos(storedParentIds);
+        Map<UUID, Long> commentCounts = new HashMap<>();
+        Map<UUID, Long> storedReplyCounts = new HashMap<>();
+        for (Comment comment : comments) {
+            commentCounts.merge(comment.getVideoId(), 1L, Long::sum);
+            UUID parentId = comment.getParentCommentId();
+            if (parentId == null) {
+                continue;
+            }
+            Comment batchParent = topLevelComments.get(parentId);
+            UUID parentVideoId = batchParent != null ? batchParent.getVideoId() : storedParentVideos.get(parentId);
+            if (!comment.getVideoId().equals(parentVideoId)) {
+                throw new NoSuchElementException("Comment with ID " + parentId + " not found on video "
+                        + comment.getVideoId());
+            }
+            if (batchParent != null) {
+                batchParent.setReplyCount(batchParent.getReplyCount() + 1);
+            } else {
+                storedReplyCounts.merge(parentId, 1L, Long::sum);
+            }
+        }
+
+        // Parents before replies so the rows read in a sensible order if the batch is cut short
+        comments.sort(Comparator.comparing(comment -> comment.getParentCommentId() != null));
+        commentBatchRepository.insertAll(comments);
+        commentBatchRepository.addCommentCounts(commentCounts);
+        commentBatchRepository.addReplyCounts(storedReplyCounts);
+
+        // A bulk import reshuffles whole pages, reload them rather than patching
+        videoMetadataCache.evictAll(commentCounts.keySet());
+        commentFirstPageCache.evictAll(commentCounts.keySet());
+        commentCounts.forEach((videoId, count) -> liveEventHub.publish(LiveEventHub.videoTopic(videoId),
+                "comments.imported", Map.of("videoId", videoId, "count", count)));
+        return comments.stream().map(this::mapToDTO).collect(Collectors.toList());
+    }
+
+    // Keyset pagination over top-level comments, newest first unless oldestFirst is set; one extra row tells
+    // whether another page exists. The default first page usually comes from memory.
+    @Transactional(readOnly = true)
+    public CommentPageDTO getCommentsByVideoId(UUID videoId, boolean oldestFirst, String cursor, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        if (!oldestFirst && cursor == null && commentFirstPageCache.isEnabled()
+                && pageSize <= commentFirstPageCache.getPageSize()) {
+            return getFirstPage(videoId, pageSize);
+        }
+
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+        List<Comment> comments;
+        if (oldestFirst) {
+            CursorToken after = CursorToken.decode(cursor, CursorToken.ASCENDING_START);
+            comments = commentRepository.findPageOldestFirst(videoId, after.timestamp(), after.id(), pageable);
+        } else {
+            CursorToken after = CursorToken.decode(cursor, CursorToken.DESCENDING_START);
+            comments = commentRepository.findPageNewestFirst(videoId, after.timestamp(), after.id(), pageable);
+        }
+        return toPage(comments, pageSize);
+    }
+
+    // Replies of one thread, oldest first
+    @Transactional(readOnly = true)
+    public CommentPageDTO getReplies(UUID parentCommentId, String cursor, Integer limit) {
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        CursorToken after = CursorToken.decode(cursor, CursorToken.ASCENDING_START);
+        List<Comment> replies = commentRepository.findRepliesOldestFirst(parentCommentId, after.timestamp(),
+                after.id(), PageRequest.of(0, pageSize + 1));
+        return toPage(replies, pageSize);
     }
 
     public CommentDTO updateComment(UUID commentId, String content) {
         Comment comment = commentRepository.findById(commentId)
                 .orElseThrow(() -> new RuntimeException("Comment not found"));
         comment.setContent(content);
-        comment.setUpdatedAt(LocalDateTime.now());
+        comment.setUpdatedAt(currentTime());
         Comment updatedComment = commentRepository.save(comment);
 
-        return mapToDTO(updatedComment);
+        CommentDTO updatedDTO = mapToDTO(updatedComment);
+        if (updatedComment.getParentCommentId() == null) {
+            commentFirstPageCache.commentUpdated(updatedDTO);
+        }
+        liveEventHub.publish(LiveEventHub.videoTopic(updatedDTO.getVideoId()), "comment.updated", updatedDTO);
+        return updatedDTO;
     }
 
+    // Deleting a top-level comment deletes its whole thread
+    @Transactional
     public void deleteComment(UUID commentId) {
-        commentRepository.deleteById(commentId);
+        commentRepository.findById(commentId).ifPresent(comment -> {
+            commentRepository.delete(comment);
+            UUID videoId = comment.getVideoId();
+            long deleted = 1;
+            if (comment.getParentCommentId() == null) {
+                deleted += commentRepository.deleteReplies(commentId);
+                commentFirstPageCache.commentDeleted(videoId, commentId);
+            } else if (commentRepository.addReplyCount(comment.getParentCommentId(), videoId, -1) == 1) {
+                commentFirstPageCache.replyCountChanged(videoId, comment.getParentCommentId(), -1);
+            }
+            videoMetadataRepository.addCommentCount(videoId, -deleted);
+            videoMetadataCache.evict(videoId);
+            liveEventHub.publish(LiveEventHub.videoTopic(videoId), "comment.deleted", mapToDTO(comment));
+        });
+    }
+
+    private CommentPageDTO getFirstPage(UUID videoId, int pageSize) {
+        CommentFirstPageCache.CachedPage cachedPage = commentFirstPageCache.get(videoId, pageSize);
+        if (cachedPage == null) {
+            long version = commentFirstPageCache.version(videoId);
+            int cachedSize = commentFirstPageCache.getPageSize();
+            List<Comment> comments = commentRepository.findPageNewestFirst(videoId,
+                    CursorToken.DESCENDING_START.timestamp(), CursorToken.DESCENDING_START.id(),
+                    PageRequest.of(0, cachedSize + 1));
+            boolean hasMore = comments.size() > cachedSize;
+            List<CommentDTO> commentDTOs = comments.stream()
+                    .limit(cachedSize)
+                    .map(this::mapToDTO)
+                    .collect(Collectors.toList());
+            commentFirstPageCache.put(videoId, commentDTOs, hasMore, version);
+            cachedPage = commentDTOs.size() > pageSize
+                    ? new CommentFirstPageCache.CachedPage(commentDTOs.subList(0, pageSize), true)
+                    : new CommentFirstPageCache.CachedPage(commentDTOs, hasMore);
+        }
+
+        CommentPageDTO commentPageDTO = new CommentPageDTO();
+        List<CommentDTO> comments = cachedPage.comments();
+        if (cachedPage.hasMore() && !comments.isEmpty()) {
+            CommentDTO last = comments.get(comments.size() - 1);
+            commentPageDTO.setNextCursor(new CursorToken(last.getCreatedAt(), last.getCommentId()).encode());
+        }
+        commentPageDTO.setComments(comments);
+        return commentPageDTO;
+    }
+
+    private CommentPageDTO toPage(List<Comment> comments, int pageSize) {
+        CommentPageDTO commentPageDTO = new CommentPageDTO();
+        if (comments.size() > pageSize) {
+            comments = comments.subList(0, pageSize);
+            Comment last = comments.get(pageSize - 1);
+            commentPageDTO.setNextCursor(new CursorToken(last.getCreatedAt(), last.getCommentId()).encode());
+        }
+        commentPageDTO.setComments(comments.stream()
+                .map(this::mapToDTO)
+                .collect(Collectors.toList()));
+        return commentPageDTO;
+    }
+
+    private Comment newComment(CommentDTO commentDTO, UUID commentId, LocalDateTime createdAt) {
+        Comment comment = new Comment();
+        comment.setCommentId(commentId);
+        comment.setVideoId(commentDTO.getVideoId());
+        comment.setUserId(commentDTO.getUserId());
+        comment.setContent(commentDTO.getContent());
+        comment.setParentCommentId(commentDTO.getParentCommentId());
+        comment.setCreatedAt(createdAt);
+        comment.setUpdatedAt(createdAt);
+        return comment;
+    }
+
+    // comments.created_at has no fractional seconds; truncating here keeps cached rows and cursors equal to
+    // what MySQL stores (it would round otherwise)
+    private static LocalDateTime currentTime() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
     }
 
     private CommentDTO mapToDTO(Comment comment) {
@@ -58,7 +287,8 @@ public class CommentService {
         dto.setContent(comment.getContent());
         dto.setCreatedAt(comment.getCreatedAt());
         dto.setUpdatedAt(comment.getUpdatedAt());
+        dto.setParentCommentId(comment.getParentCommentId());
+        dto.setReplyCount(comment.getReplyCount());
         return dto;
     }
 }
-
@@ -0,0 +1,183 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.repository.ContentObjectRepository;
+import com.vstream.video_service.storage.SpoolDirectory;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+// Content-addressed storage for uploaded videos. Each distinct file is kept once under
+// content/<first two hex digits>/<sha256>/ as source.mp4 plus the hls/ prefix the transcoder fills, and
+// content_objects counts the videos using it. Playback URLs stay per video; the HLS endpoints look up the
+// content's prefix (see StorageKeys.hls), so a duplicate upload needs nothing stored at all.
+// Storage is not transactional: objects are only deleted once the transaction dropping the last reference has
+// committed, in a transaction of their own that checks under the row lock that nobody claimed the content since.
+@Slf4j
+@Service
+public class ContentStoreService {
+
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+
+    @Autowired
+    private ContentObjectRepository contentObjectRepository;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private SpoolDirectory spoolDirectory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // A hashed file that has not been claimed yet
+    public record StagedContent(Path file, String contentHash, long size) {
+    }
+
+    // duplicate is true when the content was already stored and the staged copy was discarded
+    public record ContentRef(String contentHash, String sourcePath, boolean duplicate) {
+    }
+
+    // Streams an upload into the spool, hashing the bytes on the way so the file is read once
+    public StagedContent stage(InputStream inputStream) throws Exception {
+        Path stagedFile = spoolDirectory.newFile(".part");
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        long size;
+        try (InputStream digestInputStream = new DigestInputStream(inputStream, digest)) {
+            size = Files.copy(digestInputStream, stagedFile);
+        } catch (Exception e) {
+            Files.deleteIfExists(stagedFile);
+            throw e;
+        }
+        return new StagedContent(stagedFile, HexFormat.of().formatHex(digest.digest()), size);
+    }
+
+    // For a file that is already on disk without a hash, e.g. a chunked upload resumed after a restart
+    public StagedContent hashExisting(Path file) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (fileChannel.read(buffer) > 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return new StagedContent(file, HexFormat.of().formatHex(digest.digest()), Files.size(file));
+    }
+
+    // Takes a reference on the content, moving the staged file into place if it is new and dropping it if not.
+    // The row stays locked until the caller commits, so a concurrent claim, release or transcode completion of
+    // the same hash waits, and the caller decides whether to transcode under that lock.
+    @Transactional
+    public ContentRef claim(StagedContent staged) throws IOException {
+        String contentHash = staged.contentHash();
+        boolean inserted = contentObjectRepository.addReference(contentHash, staged.size(), LocalDateTime.now()) == 1;
+
+        String sourcePath = StorageKeys.contentSource(contentHash);
+        // Decided by the object rather than the insert, so a row whose object went missing is repaired
+        boolean duplicate = !inserted && storageBackend.exists(StorageKeys.video(sourcePath));
+        if (duplicate) {
+            // Kept until the commit, a chunked upload whose finalize rolls back still needs its file
+            afterCommit(() -> Files.deleteIfExists(staged.file()));
+            log.info("Upload matches stored content {}, reusing it", contentHash);
+        } else {
+            // The source has to be in place before the row and the transcode job commit, so the move cannot wait
+            // for the commit; a rollback removes it again unless a concurrent claim has taken the content since
+            storageBackend.putFile(StorageKeys.video(sourcePath), staged.file());
+            if (inserted) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == STATUS_ROLLED_BACK) {
+                            purgeIfUnreferenced(contentHash);
+                        }
+                    }
+                });
+            }
+        }
+        return new ContentRef(contentHash, sourcePath, duplicate);
+    }
+
+    // Serializes the caller's transaction with claims and releases of the content, see lockRefCount
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void lock(String contentHash) {
+        contentObjectRepository.lockRefCount(contentHash);
+    }
+
+    // Drops a reference; the last one removes the row, and the stored objects once that has committed
+    @Transactional
+    public void release(String contentHash) {
+        contentObjectRepository.addRefCount(contentHash, -1);
+        if (contentObjectRepository.deleteUnreferenced(contentHash) == 1) {
+            afterCommit(() -> purgeIfUnreferenced(contentHash));
+        }
+    }
+
+    // Deletes the stored objects of content nobody references. Runs in its own transaction holding the row lock, or
+    // the gap lock where the row would be, so a claim of the same hash waits and then stores its own copy. A failure
+    // leaves the objects to the reaper's orphan sweep.
+    private void purgeIfUnreferenced(String contentHash) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Long refCount = contentObjectRepository.lockRefCount(contentHash);
+                if (refCount != null && refCount > 0) {
+                    log.info("Stored content {} was claimed again, keeping it", contentHash);
+                    return;
+                }
+                try {
+                    storageBackend.deletePrefix(StorageKeys.video(StorageKeys.contentDirectory(contentHash)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                contentObjectRepository.deleteUnreferenced(contentHash);
+                log.info("Deleted stored content {} with its last reference", contentHash);
+            });
+        } catch (RuntimeException e) {
+            log.warn("Could not delete stored content {}, leaving it to the orphan sweep: {}", contentHash,
+                    e.getMessage());
+        }
+    }
+
+    private void afterCommit(StorageAction action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (IOException e) {
+                    log.warn("Storage cleanup after commit failed: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface StorageAction {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,175 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.cache.HlsSegmentCache;
+import com.vstream.video_service.storage.StorageBackend;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.List;
+
+// Writes a stored object to the response with ETag/Last-Modified validation and single byte-range support.
+// When the backend keeps the object as a local file the body goes out through sendfile on Tomcat, so file
+// bytes never pass through the Java heap; otherwise only the requested range is read from the backend.
+// Callers can opt into the hot file cache, in which case small objects requested repeatedly are answered from
+// memory.
+@Slf4j
+@Service
+public class FileStreamingService {
+
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private HlsSegmentCache hlsSegmentCache;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    public long serve(String key, MediaType contentType, CacheControl cacheControl,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        return serve(key, contentType, cacheControl, false, 0, request, response);
+    }
+
+    // cacheTtlMillis of 0 keeps a cached copy until it is evicted. Returns the number of body bytes sent,
+    // or handed to sendfile, which is 0 for errors, 304s and HEAD requests.
+    public long serve(String key, MediaType contentType, CacheControl cacheControl, boolean cacheable,
+                      long cacheTtlMillis, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        HlsSegmentCache.CachedFile cachedFile = cacheable ? hlsSegmentCache.get(key) : null;
+        long length;
+        long lastModified;
+        if (cachedFile != null) {
+            length = cachedFile.size();
+            lastModified = cachedFile.getLastModified();
+        } else {
+            StorageBackend.StoredObject storedObject = storageBackend.stat(key);
+            if (storedObject == null) {
+                log.debug("Object not found: {}", key);
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return 0;
+            }
+            length = storedObject.size();
+            lastModified = storedObject.lastModified();
+        }
+        String eTag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) {
+            // 304 with ETag and Last-Modified already set
+            return 0;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeStillValid(request, eTag, lastModified)) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Multi-range requests are answered with the whole file, which RFC 9110 allows
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(length);
+                    end = ranges.get(0).getRangeEnd(length);
+                } catch (IllegalArgumentException e) {
+                    start = length;
+                }
+                // HttpRange does not check the first byte against the length, so bytes=20- on 10 bytes ends here
+                if (start > end) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return 0;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(count);
+        if (HttpMethod.HEAD.matches(request.getMethod()) || count == 0) {
+            return 0;
+        }
+
+        // Only read the object into memory once we know the whole body is going out and the cache would keep it;
+        // range requests and files not seen before go out from storage, through sendfile where possible
+        if (cachedFile == null && cacheable && count == length && hlsSegmentCache.admits(key, length)) {
+            cachedFile = hlsSegmentCache.load(key, () -> storageBackend.openRange(key, 0, length), length,
+                    lastModified, cacheTtlMillis);
+        }
+        if (cachedFile != null) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            ByteBuffer body = cachedFile.getData().slice((int) start, (int) count);
+            while (body.hasRemaining()) {
+                target.write(body);
+            }
+            return count;
+        }
+
+        Path filePath = storageBackend.localPath(key);
+        if (filePath == null) {
+            // Remote object: a ranged GET, so a seek into a large source does not download the part before it
+            try (InputStream inputStream = storageBackend.openRange(key, start, count)) {
+                return inputStream.transferTo(response.getOutputStream());
+            }
+        }
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            // Tomcat streams the file with sendfile once the request returns
+            request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            return count;
+        }
+
+        try (FileChannel fileChannel = FileChannel.open(filePath)) {
+            WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long transferred = fileChannel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+            return count - remaining;
+        }
+    }
+
+    // If-Range: only honour the range if the client's validator still matches the file
+    private boolean isRangeStillValid(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(eTag);
+        }
+        long ifRangeDate = request.getDateHeader(HttpHeaders.IF_RANGE);
+        return ifRangeDate != -1 && lastModified / 1000 <= ifRangeDate / 1000;
+    }
+}
@@ -0,0 +1,319 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.metrics.ServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process fan-out of live events to Server-Sent Events subscribers, one topic per video and one per uploader.
+// Publishing only appends to each subscriber's bounded buffer; a dispatch thread drains it onto the connection, so
+// a slow client never blocks the request that produced the event. A subscriber whose buffer overflows, or whose
+// connection blocks a send for longer than events.send-timeout-ms, is disconnected; EventSource reconnects and the
+// client refetches over REST what it missed. A blocked send still holds its dispatch thread until the container's
+// write timeout, so the platform thread pool gets a replacement thread for each one until it returns.
+// Subscribers are local to this instance, events published on another instance do not reach them.
+@Slf4j
+@Service
+public class LiveEventHub {
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${events.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${events.subscriber-buffer:64}")
+    private int subscriberBuffer;
+
+    // Clients (EventSource) reconnect on their own once a stream times out
+    @Value("${events.emitter-timeout-ms:1800000}")
+    private long emitterTimeoutMs;
+
+    @Value("${events.dispatch-threads:4}")
+    private int dispatchThreads;
+
+    @Value("${events.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    private final Map<String, Set<Subscriber>> topics = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final AtomicLong eventIds = new AtomicLong();
+    private Executor dispatcher;
+    // Only set in platform thread mode, where stalled sends are compensated for
+    private ThreadPoolExecutor dispatchPool;
+
+    // Subscriber.sendStartedNanos when no send is in progress, and once the watchdog has given up on the send
+    private static final long IDLE = Long.MIN_VALUE;
+    private static final long STALLED = Long.MIN_VALUE + 1;
+
+    private record LiveEvent(long id, String name, Object data) {
+    }
+
+    @PostConstruct
+    void init() {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            dispatcher = new VirtualThreadTaskExecutor("sse-dispatch-");
+        } else {
+            dispatchPool = new ThreadPoolExecutor(dispatchThreads, dispatchThreads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new CustomizableThreadFactory("sse-dispatch-"));
+            dispatcher = dispatchPool;
+        }
+        serviceMetrics.registerEventSubscribers(subscriberCount::get);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (dispatcher instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+        topics.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.emitter.complete()));
+    }
+
+    public static String videoTopic(UUID videoId) {
+        return "video:" + videoId;
+    }
+
+    public static String uploaderTopic(String uploaderId) {
+        return "uploader:" + uploaderId;
+    }
+
+    // Returns null when this instance already holds max-subscribers streams
+    public SseEmitter subscribe(String topic) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(topic, emitter);
+        // Added inside compute so a concurrent unsubscribe cannot drop the topic between lookup and add
+        topics.compute(topic, (key, subscribers) -> {
+            Set<Subscriber> topicSubscribers = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            topicSubscribers.add(subscriber);
+            return topicSubscribers;
+        });
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> {
+            unsubscribe(subscriber);
+            emitter.complete();
+        });
+        emitter.onError(error -> unsubscribe(subscriber));
+        return emitter;
+    }
+
+    public boolean hasSubscribers(String topic) {
+        return topics.containsKey(topic);
+    }
+
+    // Inside a transaction the event is held back until the commit, like the cache updates
+    public void publish(String topic, String name, Object data) {
+        if (!hasSubscribers(topic)) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publishNow(topic, name, data);
+                }
+            });
+        } else {
+            publishNow(topic, name, data);
+        }
+    }
+
+    // Keeps idle streams open through proxies that close silent connections
+    @Scheduled(fixedDelayString = "${events.heartbeat-ms:15000}")
+    public void sendHeartbeats() {
+        topics.values().forEach(subscribers -> subscribers.forEach(subscriber -> {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        }));
+    }
+
+    // A send that has not returned within the timeout means the client stopped reading; drop the subscriber and
+    // let the pool run one more thread while the send is stuck, so other subscribers keep getting events
+    @Scheduled(fixedDelayString = "${events.send-timeout-ms:5000}")
+    public void dropStalledSubscribers() {
+        long now = System.nanoTime();
+        topics.values().forEach(subscribers -> subscribers.forEach(subscriber -> {
+            long started = subscriber.sendStartedNanos.get();
+            if (started == IDLE || started == STALLED || now - started < TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs)) {
+                return;
+            }
+            if (subscriber.sendStartedNanos.compareAndSet(started, STALLED)) {
+                log.debug("Dropping event subscriber on {}: send blocked for over {} ms", subscriber.topic, sendTimeoutMs);
+                serviceMetrics.recordEventSubscriberDropped("stalled");
+                unsubscribe(subscriber);
+                resizeDispatchPool(1);
+            }
+        }));
+    }
+
+    public Map<String, Long> getStats() {
+        return Map.of("subscribers", (long) subscriberCount.get(), "topics", (long) topics.size());
+    }
+
+    private void publishNow(String topic, String name, Object data) {
+        Set<Subscriber> subscribers = topics.get(topic);
+        if (subscribers == null) {
+            return;
+        }
+        LiveEvent event = new LiveEvent(eventIds.incrementAndGet(), name, data);
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.offer(event)) {
+                // The drain completes the emitter, it may be inside a send that would block this thread
+                log.debug("Dropping event subscriber on {}: {} events behind", topic, subscriberBuffer);
+                serviceMetrics.recordEventSubscriberDropped("overflow");
+                unsubscribe(subscriber);
+            }
+            schedule(subscriber);
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                dispatcher.execute(() -> drain(subscriber));
+            } catch (RuntimeException e) {
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    // At most one drain runs per subscriber, so its events go out in order
+    private void drain(Subscriber subscriber) {
+        try {
+            LiveEvent event;
+            boolean sent = false;
+            while (!subscriber.closed.get() && (event = subscriber.poll()) != null) {
+                send(subscriber, SseEmitter.event()
+                        .id(String.valueOf(event.id()))
+                        .name(event.name())
+                        .data(event.data(), MediaType.APPLICATION_JSON));
+                sent = true;
+            }
+            if (subscriber.closed.get()) {
+                // Dropped for falling behind, or already completed by the client going away
+                subscriber.emitter.complete();
+                return;
+            }
+            if (subscriber.heartbeatDue && !sent) {
+                send(subscriber, SseEmitter.event().comment("heartbeat"));
+            }
+            subscriber.heartbeatDue = false;
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; completing the emitter runs the completion callback that unsubscribes it
+            log.debug("Dropping event subscriber on {}: {}", subscriber.topic, e.getMessage());
+            subscriber.emitter.completeWithError(e);
+            unsubscribe(subscriber);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // An event offered after the last poll but before draining was reset would otherwise wait for the next one
+        if (subscriber.hasPending()) {
+            schedule(subscriber);
+        }
+    }
+
+    private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+        subscriber.sendStartedNanos.set(System.nanoTime());
+        try {
+            subscriber.emitter.send(event);
+        } finally {
+            if (subscriber.sendStartedNanos.getAndSet(IDLE) == STALLED) {
+                resizeDispatchPool(-1);
+            }
+        }
+    }
+
+    private void resizeDispatchPool(int delta) {
+        if (dispatchPool == null) {
+            return;
+        }
+        synchronized (dispatchPool) {
+            // Maximum first when growing and core first when shrinking, core may never exceed maximum
+            int size = dispatchPool.getCorePoolSize() + delta;
+            if (delta > 0) {
+                dispatchPool.setMaximumPoolSize(size);
+                dispatchPool.setCorePoolSize(size);
+            } else {
+                dispatchPool.setCorePoolSize(size);
+                dispatchPool.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return;
+        }
+        subscriberCount.decrementAndGet();
+        topics.computeIfPresent(subscriber.topic, (topic, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private final class Subscriber {
+        private final String topic;
+        private final SseEmitter emitter;
+        private final ArrayDeque<LiveEvent> buffer = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicLong sendStartedNanos = new AtomicLong(IDLE);
+        private volatile boolean heartbeatDue;
+
+        private Subscriber(String topic, SseEmitter emitter) {
+            this.topic = topic;
+            this.emitter = emitter;
+        }
+
+        // Returns false if the buffer is full, the subscriber is then too far behind to catch up
+        private synchronized boolean offer(LiveEvent event) {
+            if (buffer.size() >= subscriberBuffer) {
+                buffer.clear();
+                return false;
+            }
+            buffer.addLast(event);
+            return true;
+        }
+
+        private synchronized LiveEvent poll() {
+            return buffer.pollFirst();
+        }
+
+        private synchronized boolean hasPending() {
+            return !buffer.isEmpty() && !closed.get();
+        }
+    }
+}
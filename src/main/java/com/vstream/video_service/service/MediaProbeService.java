@@ -0,0 +1,148 @@
+package com.vstream.video_service.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vstream.video_service.dto.MediaProbeResult;
+import com.vstream.video_service.model.VideoMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Inspects an uploaded file with a single ffprobe run and returns structured stream information
+@Slf4j
+@Service
+public class MediaProbeService {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Only the first seconds of packets are read to estimate the keyframe interval
+    @Value("${media-probe.keyframe-scan-seconds:30}")
+    private int keyframeScanSeconds;
+
+    public MediaProbeResult probe(Path videoFilePath) throws Exception {
+        String[] command = {
+                "ffprobe", "-v", "error",
+                "-print_format", "json",
+                "-show_format",
+                "-show_streams",
+                "-show_entries", "packet=stream_index,pts_time,flags",
+                "-read_intervals", "%+" + keyframeScanSeconds,
+                videoFilePath.toAbsolutePath().toString()
+        };
+
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        Process process = processBuilder.start();
+        JsonNode root;
+        try (InputStream inputStream = process.getInputStream()) {
+            root = objectMapper.readTree(inputStream);
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0 || root == null || root.isMissingNode()) {
+            throw new Exception("ffprobe failed with exit code " + exitCode + " for file: " + videoFilePath);
+        }
+
+        MediaProbeResult result = new MediaProbeResult();
+        JsonNode format = root.path("format");
+        if (format.hasNonNull("duration")) {
+            result.setDurationMs(Math.round(format.get("duration").asDouble() * 1000));
+        }
+        if (format.hasNonNull("bit_rate")) {
+            result.setBitRate(format.get("bit_rate").asLong());
+        }
+
+        int videoStreamIndex = -1;
+        for (JsonNode stream : root.path("streams")) {
+            String codecType = stream.path("codec_type").asText();
+            if ("video".equals(codecType) && videoStreamIndex < 0
+                    && stream.path("disposition").path("attached_pic").asInt() == 0) {
+                videoStreamIndex = stream.path("index").asInt();
+                result.setVideoCodec(stream.path("codec_name").asText(null));
+                result.setWidth(stream.path("width").asInt());
+                result.setHeight(stream.path("height").asInt());
+                result.setPixelFormat(stream.path("pix_fmt").asText(null));
+                Double frameRate = parseRational(stream.path("avg_frame_rate").asText());
+                result.setFrameRate(frameRate != null ? frameRate : parseRational(stream.path("r_frame_rate").asText()));
+            } else if ("audio".equals(codecType) && result.getAudioCodec() == null) {
+                result.setAudioCodec(stream.path("codec_name").asText(null));
+            }
+        }
+
+        if (videoStreamIndex >= 0) {
+            List<Double> keyframeTimes = new ArrayList<>();
+            for (JsonNode packet : root.path("packets")) {
+                if (packet.path("stream_index").asInt() == videoStreamIndex
+                        && packet.path("flags").asText().startsWith("K")
+                        && packet.hasNonNull("pts_time")) {
+                    keyframeTimes.add(packet.get("pts_time").asDouble());
+                }
+            }
+            result.setKeyframeIntervalMs(longestKeyframeIntervalMs(keyframeTimes));
+        }
+
+        log.info("Probed {}: {} ms, video {} {}x{} @ {} fps, audio {}, keyframe every {} ms", videoFilePath,
+                result.getDurationMs(), result.getVideoCodec(), result.getWidth(), result.getHeight(),
+                result.getFrameRate(), result.getAudioCodec(), result.getKeyframeIntervalMs());
+        return result;
+    }
+
+    public void applyTo(MediaProbeResult result, VideoMetadata videoMetadata) {
+        videoMetadata.setDurationMs(result.getDurationMs());
+        videoMetadata.setDuration(formatDuration(result.getDurationMs()));
+        videoMetadata.setVideoCodec(result.getVideoCodec());
+        videoMetadata.setAudioCodec(result.getAudioCodec());
+        videoMetadata.setWidth(result.getWidth());
+        videoMetadata.setHeight(result.getHeight());
+        videoMetadata.setPixelFormat(result.getPixelFormat());
+        videoMetadata.setBitRate(result.getBitRate());
+        videoMetadata.setFrameRate(result.getFrameRate());
+        videoMetadata.setKeyframeIntervalMs(result.getKeyframeIntervalMs());
+    }
+
+    // Same "HH:MM:SS.cc" shape ffmpeg prints, kept for clients reading the string duration
+    private String formatDuration(Long durationMs) {
+        if (durationMs == null) {
+            return null;
+        }
+        long totalCentis = durationMs / 10;
+        return String.format("%02d:%02d:%02d.%02d", totalCentis / 360000, (totalCentis / 6000) % 60,
+                (totalCentis / 100) % 60, totalCentis % 100);
+    }
+
+    // The longest gap, not the average: a single long GOP is enough to overrun a segment. Null without two keyframes.
+    static Long longestKeyframeIntervalMs(List<Double> keyframeTimes) {
+        if (keyframeTimes.size() < 2) {
+            return null;
+        }
+        List<Double> sorted = new ArrayList<>(keyframeTimes);
+        sorted.sort(Double::compare);
+        double longestGap = 0;
+        for (int i = 1; i < sorted.size(); i++) {
+            longestGap = Math.max(longestGap, sorted.get(i) - sorted.get(i - 1));
+        }
+        return Math.round(longestGap * 1000);
+    }
+
+    // ffprobe reports frame rates as "30000/1001"; "0/0" means unknown
+    private Double parseRational(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String[] parts = value.split("/");
+        try {
+            double numerator = Double.parseDouble(parts[0]);
+            double denominator = parts.length > 1 ? Double.parseDouble(parts[1]) : 1;
+            return denominator == 0 || numerator == 0 ? null : numerator / denominator;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
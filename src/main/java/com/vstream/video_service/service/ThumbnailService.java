@@ -0,0 +1,239 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.storage.SpoolDirectory;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
+
+// Stores uploaded thumbnails under <first two hex digits>/<sha256>/ so identical images share one copy, across
+// uploaders and file names too, and different images can never overwrite each other. Thumbnails stored
+// earlier under uploaderId/<sha256>/ or as <sha256>/original.<ext> keep working, thumbnail_url holds the full
+// relative path either way. The upload is decoded once by ffmpeg and scaled into every width in JPEG and WebP;
+// requests then pick the closest variant instead of the full size original, by name, without asking storage.
+@Slf4j
+@Service
+public class ThumbnailService {
+
+    public static final int[] WIDTHS = {160, 320, 640};
+    private static final String ORIGINAL_NAME = "original";
+    private static final MediaType IMAGE_WEBP = MediaType.parseMediaType("image/webp");
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "webp", "gif");
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private SpoolDirectory spoolDirectory;
+
+    @Value("${thumbnails.ffmpeg-timeout-seconds:30}")
+    private long ffmpegTimeoutSeconds;
+
+    @Value("${thumbnails.webp-enabled:true}")
+    private boolean webpEnabled;
+
+    public record Variant(String key, MediaType mediaType) {
+    }
+
+    // Returns the path of the stored original relative to the thumbnail root. Throws IllegalArgumentException
+    // for anything that is not an image ffmpeg can decode, so only files it could scale are ever stored.
+    public String storeThumbnail(MultipartFile thumbnailFile) throws Exception {
+        String extension = extensionOf(thumbnailFile.getOriginalFilename());
+
+        // Hash while copying so the file is only read once
+        Path tempFile = spoolDirectory.newFile("." + extension);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream inputStream = new DigestInputStream(thumbnailFile.getInputStream(), digest)) {
+                Files.copy(inputStream, tempFile);
+            }
+            String hash = HexFormat.of().formatHex(digest.digest());
+
+            // The name records the variants: "original" has both formats, original.<ext> only JPEG
+            String relativePath = StorageKeys.shard(hash) + "/"
+                    + (webpEnabled ? ORIGINAL_NAME : ORIGINAL_NAME + ".jpg");
+            String originalKey = StorageKeys.thumbnail(relativePath);
+            String directoryKey = parentOf(originalKey);
+            // Variants are made from the local copy, before it is moved into storage
+            String firstVariant = variantName(WIDTHS[0], webpEnabled ? "webp" : "jpg");
+            if (!storageBackend.exists(StorageKeys.child(directoryKey, firstVariant))) {
+                try (StorageBackend.LocalDirectory variants = storageBackend.stageDirectory(directoryKey)) {
+                    createVariants(tempFile, variants.path());
+                    variants.commit();
+                }
+            }
+            if (storageBackend.exists(originalKey)) {
+                log.debug("Thumbnail {} already stored, reusing it", originalKey);
+            } else {
+                storageBackend.putFile(originalKey, tempFile);
+            }
+            return relativePath;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    // Removes the original and, for content-addressed thumbnails, its variants
+    public void deleteThumbnail(String thumbnailUrl) throws Exception {
+        storageBackend.delete(StorageKeys.thumbnail(thumbnailUrl));
+        String imageDirectory = imageDirectory(thumbnailUrl);
+        if (imageDirectory != null) {
+            String directoryKey = StorageKeys.thumbnail(imageDirectory);
+            for (int width : WIDTHS) {
+                storageBackend.delete(StorageKeys.child(directoryKey, variantName(width, "jpg")));
+                storageBackend.delete(StorageKeys.child(directoryKey, variantName(width, "webp")));
+            }
+        }
+    }
+
+    // Smallest variant at least as wide as requested (largest if none is), WebP when the client accepts it.
+    // An upload whose variants fail is rejected, so every content-addressed thumbnail has its JPEG variants and,
+    // when stored as "original", WebP ones too; original.<ext> ones were stored without WebP or before it was
+    // guaranteed. Thumbnails stored before variants
+    // existed fall back to the original, always typed as an image whatever its file name says, so an uploaded
+    // page or script is never served as one.
+    public Variant resolve(String thumbnailUrl, Integer width, boolean acceptsWebp) {
+        String imageDirectory = imageDirectory(thumbnailUrl);
+        if (imageDirectory == null) {
+            return new Variant(StorageKeys.thumbnail(thumbnailUrl), MediaType.IMAGE_PNG);
+        }
+        String directoryKey = StorageKeys.thumbnail(imageDirectory);
+
+        int chosenWidth = WIDTHS[WIDTHS.length - 1];
+        if (width != null) {
+            for (int candidate : WIDTHS) {
+                if (candidate >= width) {
+                    chosenWidth = candidate;
+                    break;
+                }
+            }
+        }
+
+        if (acceptsWebp && webpEnabled && thumbnailUrl.endsWith("/" + ORIGINAL_NAME)) {
+            return new Variant(StorageKeys.child(directoryKey, variantName(chosenWidth, "webp")), IMAGE_WEBP);
+        }
+        return new Variant(StorageKeys.child(directoryKey, variantName(chosenWidth, "jpg")), MediaType.IMAGE_JPEG);
+    }
+
+    private void createVariants(Path originalPath, Path thumbnailDirectory) throws Exception {
+        if (runFfmpeg(buildVariantsCommand(originalPath, thumbnailDirectory, webpEnabled)) != 0) {
+            deleteVariants(thumbnailDirectory);
+            throw new IllegalArgumentException("Thumbnail is not a readable image");
+        }
+    }
+
+    // One decode, split into every width, each width split again into the output formats
+    private List<String> buildVariantsCommand(Path originalPath, Path thumbnailDirectory, boolean withWebp) {
+        StringBuilder filter = new StringBuilder("[0:v]split=" + WIDTHS.length);
+        for (int i = 0; i < WIDTHS.length; i++) {
+            filter.append("[s").append(i).append("]");
+        }
+        for (int i = 0; i < WIDTHS.length; i++) {
+            // Never upscale a thumbnail that is smaller than the variant
+            filter.append(";[s").append(i).append("]scale=w='min(").append(WIDTHS[i]).append(",iw)':h=-2");
+            if (withWebp) {
+                filter.append(",split=2[j").append(i).append("][w").append(i).append("]");
+            } else {
+                filter.append("[j").append(i).append("]");
+            }
+        }
+
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg", "-y", "-v", "error", "-i", originalPath.toString(),
+                "-filter_complex", filter.toString()));
+        for (int i = 0; i < WIDTHS.length; i++) {
+            command.addAll(List.of("-map", "[j" + i + "]", "-frames:v", "1", "-q:v", "4",
+                    thumbnailDirectory.resolve(variantName(WIDTHS[i], "jpg")).toString()));
+            if (withWebp) {
+                command.addAll(List.of("-map", "[w" + i + "]", "-frames:v", "1", "-c:v", "libwebp", "-quality", "80",
+                        thumbnailDirectory.resolve(variantName(WIDTHS[i], "webp")).toString()));
+            }
+        }
+        return command;
+    }
+
+    private int runFfmpeg(List<String> command) throws Exception {
+        log.debug("Executing FFmpeg command: {}", command);
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        try {
+            int exitCode;
+            if (process.waitFor(ffmpegTimeoutSeconds, TimeUnit.SECONDS)) {
+                exitCode = process.exitValue();
+            } else {
+                process.destroyForcibly();
+                exitCode = -1;
+            }
+            serviceMetrics.recordFfmpegExit("thumbnail", exitCode);
+            return exitCode;
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
+
+    private void deleteVariants(Path thumbnailDirectory) throws Exception {
+        for (int width : WIDTHS) {
+            Files.deleteIfExists(thumbnailDirectory.resolve(variantName(width, "jpg")));
+            Files.deleteIfExists(thumbnailDirectory.resolve(variantName(width, "webp")));
+        }
+    }
+
+    // Changes whenever the image does: its sha256. Null for thumbnails stored by uploader id and file name.
+    public static String version(String thumbnailUrl) {
+        String imageDirectory = imageDirectory(thumbnailUrl);
+        return imageDirectory != null ? imageDirectory.substring(imageDirectory.lastIndexOf('/') + 1) : null;
+    }
+
+    // Directory named after the image's sha256 that holds its original and variants, whatever name the original
+    // was stored under. Null for thumbnails stored by uploader id and file name, which share one directory.
+    public static String imageDirectory(String thumbnailUrl) {
+        int slash = thumbnailUrl.lastIndexOf('/');
+        String name = thumbnailUrl.substring(slash + 1);
+        if (slash < 0 || !(name.equals(ORIGINAL_NAME) || name.startsWith(ORIGINAL_NAME + "."))) {
+            return null;
+        }
+        String directory = thumbnailUrl.substring(0, slash);
+        return SHA256_HEX.matcher(directory.substring(directory.lastIndexOf('/') + 1)).matches() ? directory : null;
+    }
+
+    private static String parentOf(String key) {
+        return key.substring(0, key.lastIndexOf('/'));
+    }
+
+    private static String variantName(int width, String extension) {
+        return width + "." + extension;
+    }
+
+    private static String extensionOf(String fileName) {
+        if (fileName != null) {
+            int dot = fileName.lastIndexOf('.');
+            String extension = dot >= 0 ? fileName.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+            if (IMAGE_EXTENSIONS.contains(extension)) {
+                return extension;
+            }
+        }
+        throw new IllegalArgumentException("Thumbnail must be a PNG, JPEG, WebP or GIF image");
+    }
+}
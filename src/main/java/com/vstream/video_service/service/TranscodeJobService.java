@@ -0,0 +1,368 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.dto.TranscodeJobDTO;
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.model.TranscodeJob;
+import com.vstream.video_service.model.TranscodeJobStatus;
+import com.vstream.video_service.model.TranscodeMode;
+import com.vstream.video_service.model.VideoMetadata;
+import com.vstream.video_service.repository.TranscodeJobRepository;
+import com.vstream.video_service.repository.VideoMetadataRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+// Persistent transcode queue. Jobs live in transcode_jobs and are claimed by a poller that never hands
+// out more work than there are free workers and ffmpeg permits, so the in-memory queue stays bounded and nothing
+// is lost on restart. A claimed job is leased to this instance, which renews the lease while it runs; any
+// instance requeues RUNNING jobs whose lease has expired, so a crashed instance's jobs are picked up again
+// without touching the ones other instances are still running.
+@Slf4j
+@Service
+public class TranscodeJobService {
+
+    // Priority classes, lower runs first
+    public static final int PRIORITY_SHORT = 0;
+    public static final int PRIORITY_MEDIUM = 1;
+    public static final int PRIORITY_LONG = 2;
+
+    private static final long MAX_BACKOFF_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long SHUTDOWN_WAIT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    @Autowired
+    private TranscodeJobRepository transcodeJobRepository;
+
+    @Autowired
+    private VideoMetadataRepository videoMetadataRepository;
+
+    @Autowired
+    private VideoUtilityService videoUtilityService;
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Autowired
+    private LiveEventHub liveEventHub;
+
+    @Autowired
+    private Environment environment;
+
+    // 0 means one worker per available core
+    @Value("${transcode.workers:0}")
+    private int configuredWorkers;
+
+    @Value("${transcode.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${transcode.retry-backoff-ms:30000}")
+    private long retryBackoffMs;
+
+    @Value("${transcode.short-clip-seconds:120}")
+    private long shortClipSeconds;
+
+    @Value("${transcode.long-clip-seconds:900}")
+    private long longClipSeconds;
+
+    // How long a RUNNING job stays with this instance without a renewal, renewed every third of that
+    @Value("${transcode.lease-ms:60000}")
+    private long leaseMs;
+
+    // pid@host plus a random suffix, so a restarted instance never mistakes its predecessor's jobs for its own
+    private final String workerId = abbreviate(ManagementFactory.getRuntimeMXBean().getName(), 55)
+            + "/" + UUID.randomUUID().toString().substring(0, 8);
+    private int workers;
+    private Executor executor;
+    private final AtomicInteger activeJobs = new AtomicInteger();
+
+    @PostConstruct
+    void startWorkers() {
+        workers = configuredWorkers > 0 ? configuredWorkers : Runtime.getRuntime().availableProcessors();
+        // Workers mostly wait on ffmpeg, so in virtual thread mode each job gets a fresh virtual thread instead of
+        // a pooled one; activeJobs still caps them at the worker count
+        boolean virtualThreads = Threading.VIRTUAL.isActive(environment);
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor virtualExecutor = new SimpleAsyncTaskExecutor("transcode-worker-");
+            virtualExecutor.setVirtualThreads(true);
+            // Makes the executor track its threads, so close() can interrupt them
+            virtualExecutor.setTaskTerminationTimeout(SHUTDOWN_WAIT_MS);
+            executor = virtualExecutor;
+        } else {
+            executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(workers), new CustomizableThreadFactory("transcode-worker-"));
+        }
+        log.info("Transcode worker pool {} started with {} {} workers", workerId, workers,
+                virtualThreads ? "virtual" : "platform");
+        serviceMetrics.registerTranscodeQueue(() -> transcodeJobRepository.countByStatus(TranscodeJobStatus.QUEUED),
+                activeJobs::get);
+    }
+
+    @PreDestroy
+    void stopWorkers() {
+        // Interrupting the workers kills their ffmpeg processes and leaves their jobs RUNNING
+        if (executor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+            try {
+                executorService.awaitTermination(SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (executor instanceof SimpleAsyncTaskExecutor virtualExecutor) {
+            virtualExecutor.close();
+        }
+        // Handed back right away instead of waiting for the lease to run out
+        try {
+            int requeued = transcodeJobRepository.requeueOwned(workerId, LocalDateTime.now());
+            if (requeued > 0) {
+                log.info("Requeued {} transcode job(s) interrupted by shutdown", requeued);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not requeue interrupted transcode jobs, they are requeued once their lease expires: {}",
+                    e.getMessage());
+        }
+    }
+
+    @Transactional
+    public TranscodeJob enqueue(VideoMetadata videoMetadata, String sourcePath) {
+        LocalDateTime now = LocalDateTime.now();
+        TranscodeJob transcodeJob = new TranscodeJob();
+        transcodeJob.setVideoId(videoMetadata.getVideoId());
+        transcodeJob.setUploaderId(videoMetadata.getUploaderId());
+        transcodeJob.setSourcePath(sourcePath);
+        transcodeJob.setPriority(priorityFor(videoMetadata.getDurationMs()));
+        transcodeJob.setMaxAttempts(maxAttempts);
+        transcodeJob.setNextAttemptAt(now);
+        transcodeJob.setCreatedAt(now);
+        TranscodeJob savedJob = transcodeJobRepository.save(transcodeJob);
+        log.info("Queued transcode job {} for video ID: {} with priority {}",
+                savedJob.getJobId(), savedJob.getVideoId(), savedJob.getPriority());
+        return savedJob;
+    }
+
+    @Transactional
+    public int cancelQueued(UUID videoId) {
+        return transcodeJobRepository.cancelQueued(videoId, LocalDateTime.now());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverJobs() {
+        requeueExpiredJobs();
+
+        // Uploads that were handed to the old in-memory executor and never finished
+        List<VideoMetadata> stuckVideos = videoMetadataRepository.findStuckWithoutTranscodeJob();
+        for (VideoMetadata videoMetadata : stuckVideos) {
+            log.warn("Video ID: {} is stuck in progress without a transcode job, queueing one", videoMetadata.getVideoId());
+            enqueue(videoMetadata, videoMetadata.getVideoUrl());
+        }
+    }
+
+    // Jobs of instances that stopped without handing their jobs back, e.g. killed or crashed
+    @Scheduled(initialDelayString = "${transcode.lease-ms:60000}", fixedDelayString = "${transcode.lease-ms:60000}")
+    public void requeueExpiredJobs() {
+        int requeued = transcodeJobRepository.requeueExpired(LocalDateTime.now());
+        if (requeued > 0) {
+            log.warn("Requeued {} transcode job(s) whose worker stopped renewing the lease", requeued);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "#{${transcode.lease-ms:60000} / 3}")
+    public void renewLeases() {
+        if (activeJobs.get() > 0) {
+            transcodeJobRepository.renewLeases(workerId, LocalDateTime.now().plusNanos(
+                    TimeUnit.MILLISECONDS.toNanos(leaseMs)));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${transcode.poll-interval-ms:2000}")
+    public void dispatchDueJobs() {
+        // A job is only claimed with an ffmpeg permit in hand; otherwise it would sit RUNNING behind the semaphore
+        // while a higher priority job enqueued later waited in the queue
+        int permits = 0;
+        while (permits < workers - activeJobs.get() && videoUtilityService.tryAcquireFfmpegPermit()) {
+            permits++;
+        }
+        if (permits == 0) {
+            return;
+        }
+
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime leaseExpiresAt = now.plusNanos(TimeUnit.MILLISECONDS.toNanos(leaseMs));
+            List<TranscodeJob> dueJobs = transcodeJobRepository.findDueJobs(now, PageRequest.of(0, permits));
+            for (TranscodeJob transcodeJob : dueJobs) {
+                if (transcodeJobRepository.claim(transcodeJob.getJobId(), now, workerId, leaseExpiresAt) == 0) {
+                    continue;
+                }
+                // Mirror what claim() wrote, the job is only written again by finish()
+                transcodeJob.setStatus(TranscodeJobStatus.RUNNING);
+                transcodeJob.setStartedAt(now);
+                transcodeJob.setAttempts(transcodeJob.getAttempts() + 1);
+                transcodeJob.setWorkerId(workerId);
+                transcodeJob.setLeaseExpiresAt(leaseExpiresAt);
+                activeJobs.incrementAndGet();
+                permits--;
+                executor.execute(() -> {
+                    try {
+                        runJob(transcodeJob);
+                    } finally {
+                        activeJobs.decrementAndGet();
+                        videoUtilityService.releaseFfmpegPermit();
+                    }
+                });
+            }
+        } finally {
+            for (; permits > 0; permits--) {
+                videoUtilityService.releaseFfmpegPermit();
+            }
+        }
+    }
+
+    private void runJob(TranscodeJob transcodeJob) {
+        log.info("Starting transcode job {} (attempt {}/{}) for video ID: {}", transcodeJob.getJobId(),
+                transcodeJob.getAttempts(), transcodeJob.getMaxAttempts(), transcodeJob.getVideoId());
+        long startNanos = System.nanoTime();
+        publishStatus(transcodeJob);
+        try {
+            videoUtilityService.createHLSChunks(transcodeJob.getSourcePath(), transcodeJob.getUploaderId(),
+                    transcodeJob.getVideoId());
+            transcodeJob.setStatus(TranscodeJobStatus.SUCCEEDED);
+            transcodeJob.setLastError(null);
+            log.info("Transcode job {} succeeded for video ID: {}", transcodeJob.getJobId(), transcodeJob.getVideoId());
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted() || e instanceof InterruptedException) {
+                // Shutting down: leave the job RUNNING, stopWorkers hands it back
+                log.warn("Transcode job {} interrupted by shutdown", transcodeJob.getJobId());
+                serviceMetrics.recordTranscodeJob("interrupted", System.nanoTime() - startNanos);
+                return;
+            }
+            transcodeJob.setLastError(abbreviate(e.getMessage()));
+            if (transcodeJob.getAttempts() < transcodeJob.getMaxAttempts()) {
+                long backoffMs = Math.min(retryBackoffMs << (transcodeJob.getAttempts() - 1), MAX_BACKOFF_MS);
+                transcodeJob.setStatus(TranscodeJobStatus.QUEUED);
+                transcodeJob.setNextAttemptAt(LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(backoffMs)));
+                log.warn("Transcode job {} failed, retrying in {} ms: {}", transcodeJob.getJobId(), backoffMs, e.getMessage());
+            } else {
+                transcodeJob.setStatus(TranscodeJobStatus.FAILED);
+                log.error("Transcode job {} failed permanently for video ID: {}", transcodeJob.getJobId(),
+                        transcodeJob.getVideoId(), e);
+            }
+        }
+        transcodeJob.setFinishedAt(LocalDateTime.now());
+        // Fenced on this worker still holding the job: if the lease lapsed, e.g. through a long GC pause or a lost
+        // database connection, the job was requeued and possibly claimed again, and that run's row must not be
+        // overwritten
+        if (transcodeJobRepository.finish(transcodeJob.getJobId(), workerId, transcodeJob.getStatus(),
+                transcodeJob.getLastError(), transcodeJob.getNextAttemptAt(), transcodeJob.getFinishedAt()) == 0) {
+            log.warn("Transcode job {} lost its lease before finishing, dropping its {} result",
+                    transcodeJob.getJobId(), transcodeJob.getStatus());
+            serviceMetrics.recordTranscodeJob("superseded", System.nanoTime() - startNanos);
+            return;
+        }
+        transcodeJob.setWorkerId(null);
+        transcodeJob.setLeaseExpiresAt(null);
+        // A job put back in the queue failed this attempt but will be retried
+        String outcome = transcodeJob.getStatus() == TranscodeJobStatus.QUEUED
+                ? "retry" : transcodeJob.getStatus().name().toLowerCase();
+        serviceMetrics.recordTranscodeJob(outcome, System.nanoTime() - startNanos);
+        if (transcodeJob.getStatus() == TranscodeJobStatus.FAILED) {
+            publishStatus(transcodeJob);
+        }
+    }
+
+    // SUCCEEDED is published by VideoUtilityService once the video is marked playable
+    private void publishStatus(TranscodeJob transcodeJob) {
+        Map<String, Object> status = Map.of("videoId", transcodeJob.getVideoId(),
+                "status", transcodeJob.getStatus().name(), "attempt", transcodeJob.getAttempts());
+        liveEventHub.publish(LiveEventHub.videoTopic(transcodeJob.getVideoId()), "transcode", status);
+        liveEventHub.publish(LiveEventHub.uploaderTopic(transcodeJob.getUploaderId()), "transcode", status);
+    }
+
+    // Only meaningful under the content lock, see ContentStoreService.claim
+    public boolean hasPendingJobForContent(String contentHash) {
+        return transcodeJobRepository.countPendingForContent(contentHash) > 0;
+    }
+
+    // Short clips go first so a burst of long uploads cannot starve quick ones
+    public int priorityFor(Long durationMs) {
+        if (durationMs == null) {
+            return PRIORITY_MEDIUM;
+        }
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(durationMs);
+        if (seconds <= shortClipSeconds) return PRIORITY_SHORT;
+        if (seconds <= longClipSeconds) return PRIORITY_MEDIUM;
+        return PRIORITY_LONG;
+    }
+
+    public Map<String, Long> getQueueStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        for (TranscodeJobStatus status : TranscodeJobStatus.values()) {
+            stats.put(status.name().toLowerCase(), transcodeJobRepository.countByStatus(status));
+        }
+        for (TranscodeMode transcodeMode : TranscodeMode.values()) {
+            stats.put("videos" + transcodeMode.name().charAt(0) + transcodeMode.name().substring(1).toLowerCase(),
+                    videoMetadataRepository.countByTranscodeMode(transcodeMode));
+        }
+        stats.put("activeWorkers", (long) activeJobs.get());
+        stats.put("workers", (long) workers);
+        return stats;
+    }
+
+    public List<TranscodeJobDTO> getJobsForVideo(UUID videoId) {
+        return transcodeJobRepository.findByVideoIdOrderByCreatedAtDesc(videoId)
+                .stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    private TranscodeJobDTO convertToDTO(TranscodeJob transcodeJob) {
+        TranscodeJobDTO transcodeJobDTO = new TranscodeJobDTO();
+        transcodeJobDTO.setJobId(String.valueOf(transcodeJob.getJobId()));
+        transcodeJobDTO.setVideoId(String.valueOf(transcodeJob.getVideoId()));
+        transcodeJobDTO.setStatus(transcodeJob.getStatus().name());
+        transcodeJobDTO.setPriority(transcodeJob.getPriority());
+        transcodeJobDTO.setAttempts(transcodeJob.getAttempts());
+        transcodeJobDTO.setMaxAttempts(transcodeJob.getMaxAttempts());
+        transcodeJobDTO.setNextAttemptAt(transcodeJob.getNextAttemptAt());
+        transcodeJobDTO.setLastError(transcodeJob.getLastError());
+        transcodeJobDTO.setCreatedAt(transcodeJob.getCreatedAt());
+        transcodeJobDTO.setStartedAt(transcodeJob.getStartedAt());
+        transcodeJobDTO.setFinishedAt(transcodeJob.getFinishedAt());
+        return transcodeJobDTO;
+    }
+
+    private static String abbreviate(String message) {
+        return abbreviate(message, 1000);
+    }
+
+    private static String abbreviate(String message, int maxLength) {
+        if (message == null || message.length() <= maxLength) {
+            return message;
+        }
+        return message.substring(0, maxLength);
+    }
+}
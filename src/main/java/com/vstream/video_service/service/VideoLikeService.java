@@ -1,52 +1,79 @@
 package com.vstream.video_service.service;
 
+import com.vstream.video_service.cache.LikeBloomFilter;
+import com.vstream.video_service.cache.VideoMetadataCache;
+import com.vstream.video_service.dto.VideoLikeDTO;
+import com.vstream.video_service.metrics.ServiceMetrics;
 import com.vstream.video_service.model.VideoLike;
 import com.vstream.video_service.repository.VideoLikeRepository;
+import com.vstream.video_service.repository.VideoMetadataRepository;
+import com.vstream.video_service.util.UuidUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
+// Likes are an idempotent insert plus an in-SQL like_count change in the same transaction, so a double
+// click cannot count twice and no entity is read back
 @Service
 public class VideoLikeService {
     private final VideoLikeRepository videoLikeRepository;
+    private final VideoMetadataRepository videoMetadataRepository;
+    private final LikeBloomFilter likeBloomFilter;
+    private final AnalyticsRollupService analyticsRollupService;
+    private final VideoMetadataCache videoMetadataCache;
+    private final ServiceMetrics serviceMetrics;
+    private final LiveEventHub liveEventHub;
 
     @Autowired
-    public VideoLikeService(VideoLikeRepository videoLikeRepository) {
+    public VideoLikeService(VideoLikeRepository videoLikeRepository, VideoMetadataRepository videoMetadataRepository,
+                            LikeBloomFilter likeBloomFilter, AnalyticsRollupService analyticsRollupService,
+                            VideoMetadataCache videoMetadataCache, ServiceMetrics serviceMetrics,
+                            LiveEventHub liveEventHub) {
         this.videoLikeRepository = videoLikeRepository;
+        this.videoMetadataRepository = videoMetadataRepository;
+        this.likeBloomFilter = likeBloomFilter;
+        this.analyticsRollupService = analyticsRollupService;
+        this.videoMetadataCache = videoMetadataCache;
+        this.serviceMetrics = serviceMetrics;
+        this.liveEventHub = liveEventHub;
     }
 
-    // Method to like a video
-    public boolean likeVideo(UUID userId, UUID videoId) {
-        // Check if the user has already liked the video
-        VideoLike.VideoLikeId videoLikeId = new VideoLike.VideoLikeId(userId, videoId);
-        Optional<VideoLike> existingLike = videoLikeRepository.findById(videoLikeId);
-        if (existingLike.isPresent()) {
-            // User has already liked the video, so return false
-            return false;
+    // Method to like a video, throws NoSuchElementException if the video does not exist
+    @Transactional
+    public VideoLikeDTO likeVideo(UUID userId, UUID videoId) {
+        boolean inserted = videoLikeRepository.insertIgnore(UuidUtils.toBytes(userId), UuidUtils.toBytes(videoId)) == 1;
+        if (inserted) {
+            if (videoMetadataRepository.addLikeCount(videoId, 1) == 0) {
+                // Rolls back the like row as well
+                throw new NoSuchElementException("Video with ID " + videoId + " not found");
+            }
+            recordLikeCountChange(videoId, 1);
         }
-
-        // Add a new like
-        VideoLike newLike = new VideoLike();
-        newLike.setVideoLikeId(videoLikeId);  // Set the composite primary key
-        videoLikeRepository.save(newLike);
-        return true;
+        likeBloomFilter.add(userId, videoId);
+        serviceMetrics.recordLikeWrite("like", inserted);
+        return toDTO(userId, videoId, true, inserted);
     }
 
     // Method to unlike a video
-    public boolean unlikeVideo(UUID userId, UUID videoId) {
-        // Check if the user has liked the video
-        VideoLike.VideoLikeId videoLikeId = new VideoLike.VideoLikeId(userId, videoId);
-        Optional<VideoLike> existingLike = videoLikeRepository.findById(videoLikeId);
-        if (existingLike.isEmpty()) {
-            // No like found to remove
-            return false;
+    @Transactional
+    public VideoLikeDTO unlikeVideo(UUID userId, UUID videoId) {
+        boolean deleted = likeBloomFilter.mightContain(userId, videoId)
+                && videoLikeRepository.deleteByIds(UuidUtils.toBytes(userId), UuidUtils.toBytes(videoId)) == 1;
+        if (deleted && videoMetadataRepository.addLikeCount(videoId, -1) == 1) {
+            recordLikeCountChange(videoId, -1);
         }
+        serviceMetrics.recordLikeWrite("unlike", deleted);
+        return toDTO(userId, videoId, false, deleted);
+    }
 
-        // Remove the like
-        videoLikeRepository.delete(existingLike.get());
-        return true;
+    @Transactional(readOnly = true)
+    public boolean hasLiked(UUID userId, UUID videoId) {
+        return likeBloomFilter.mightContain(userId, videoId)
+                && videoLikeRepository.existsById(new VideoLike.VideoLikeId(userId, videoId));
     }
 
     // Method to get the like count for a video
@@ -54,12 +81,23 @@ public class VideoLikeService {
         return videoLikeRepository.countByVideoLikeId_VideoId(videoId);
     }
 
-    public boolean checkIfUserVideoMappingExist(String userId, String videoId) {
-        VideoLike.VideoLikeId videoLikeId = new VideoLike.VideoLikeId(UUID.fromString(userId), UUID.fromString(videoId));
-        Optional<VideoLike> existingLike = videoLikeRepository.findById(videoLikeId);
-        if (existingLike.isPresent()) return true;
-        return false;
+    // The row lock taken by addLikeCount is held until commit, so the count read here is this change's result
+    private void recordLikeCountChange(UUID videoId, long delta) {
+        Long likeCount = videoMetadataRepository.findLikeCount(videoId);
+        if (likeCount != null) {
+            analyticsRollupService.recordLikeCountChange(likeCount - delta, likeCount);
+            liveEventHub.publish(LiveEventHub.videoTopic(videoId), "likes",
+                    Map.of("videoId", videoId, "likeCount", likeCount));
+        }
+        videoMetadataCache.evict(videoId);
     }
 
-
+    private VideoLikeDTO toDTO(UUID userId, UUID videoId, boolean liked, boolean changed) {
+        VideoLikeDTO videoLikeDTO = new VideoLikeDTO();
+        videoLikeDTO.setUserId(userId.toString());
+        videoLikeDTO.setVideoId(videoId.toString());
+        videoLikeDTO.setLiked(liked);
+        videoLikeDTO.setChanged(changed);
+        return videoLikeDTO;
+    }
 }
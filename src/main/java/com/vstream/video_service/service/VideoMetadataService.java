@@ -1,47 +1,116 @@
 package com.vstream.video_service.service;
 
-import com.vstream.video_service.constant.AppConstants;
+import com.vstream.video_service.cache.HlsSegmentCache;
+import com.vstream.video_service.cache.VideoMetadataCache;
+import com.vstream.video_service.dto.MediaProbeResult;
 import com.vstream.video_service.dto.UpdateVideoDTO;
 import com.vstream.video_service.dto.UploadVideoDTO;
 import com.vstream.video_service.dto.VideoMetadataDTO;
+import com.vstream.video_service.dto.VideoPageDTO;
+import com.vstream.video_service.dto.ViewsLikesPointDTO;
+import com.vstream.video_service.metrics.ServiceMetrics;
 import com.vstream.video_service.model.VideoMetadata;
 import com.vstream.video_service.repository.VideoMetadataRepository;
+import com.vstream.video_service.repository.VideoTombstoneRepository;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import com.vstream.video_service.util.CursorToken;
+import com.vstream.video_service.util.FanOutScope;
+import com.vstream.video_service.util.UuidUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
-import java.io.File;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.LocalDate;
+import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.IsoFields;
 import java.util.*;
-import java.util.stream.Collectors;
-
-import static com.vstream.video_service.constant.AppConstants.thumbnailStorageDir;
-import static com.vstream.video_service.constant.AppConstants.videoStorageDir;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Slf4j
 @Service
 public class VideoMetadataService {
 
     @Autowired
-    private ModelMapper modelMapper;
+    private VideoMetadataRepository videoMetadataRepository;
 
     @Autowired
-    private VideoMetadataRepository videoMetadataRepository;
+    private VideoTombstoneRepository videoTombstoneRepository;
 
     @Autowired
     private FileService fileService;
 
     @Autowired
-    private VideoUtilityService videoUtilityService;
+    private TranscodeJobService transcodeJobService;
+
+    @Autowired
+    private MediaProbeService mediaProbeService;
+
+    @Autowired
+    private HlsSegmentCache hlsSegmentCache;
+
+    @Autowired
+    private VideoMetadataCache videoMetadataCache;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Autowired
+    private ViewCountAggregator viewCountAggregator;
+
+    @Autowired
+    private AnalyticsRollupService analyticsRollupService;
+
+    @Autowired
+    private ContentStoreService contentStoreService;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Value("${videos.page-size.default:20}")
+    private int defaultPageSize;
+
+    @Value("${videos.page-size.max:100}")
+    private int maxPageSize;
+
+    @Autowired
+    private Environment environment;
+
+    private Executor uploadExecutor;
+
+    // One virtual thread per upload step when virtual threads are on, otherwise pooled platform threads
+    @PostConstruct
+    void initUploadExecutor() {
+        uploadExecutor = Threading.VIRTUAL.isActive(environment)
+                ? new VirtualThreadTaskExecutor("upload-")
+                : Executors.newCachedThreadPool(new CustomizableThreadFactory("upload-"));
+    }
+
+    @PreDestroy
+    void stopUploadExecutor() {
+        if (uploadExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
 
     @Transactional
     public VideoMetadata uploadVideo(UploadVideoDTO uploadVideoDTO) throws Exception {
@@ -60,34 +129,114 @@ public class VideoMetadataService {
         VideoMetadata savedMetadata = videoMetadataRepository.save(videoMetadata);
         log.info("Video metadata saved to the database with ID: {}", savedMetadata.getVideoId());
 
-        String relativeVideoPath = uploadVideoDTO.getUploaderId() + "/" + videoMetadata.getVideoId() + ".mp4";
-        Path videoFilePath = Paths.get(videoStorageDir, relativeVideoPath);
-        Files.createDirectories(videoFilePath.getParent());
-        log.debug("Created directories for video storage if not already present. Path: {}", videoFilePath.getParent());
-        uploadVideoDTO.getVideoFile().transferTo(videoFilePath.toFile());
-
-        // Generate a unique filename for the video file
-
-        String relativeThumbnailPath = uploadVideoDTO.getUploaderId() + "/"
-                + fileService.getFileName(uploadVideoDTO.getThumbnailFile());
-        Path thumbnailFilePath = Paths.get(thumbnailStorageDir, relativeThumbnailPath);
-        Files.createDirectories(thumbnailFilePath.getParent());
-        log.debug("Created directories for video storage if not already present. Path: {}", thumbnailFilePath.getParent());
-        uploadVideoDTO.getThumbnailFile().transferTo(thumbnailFilePath.toFile());
-        log.info("Video file and thumbnail saved successfully. Path: {}", videoFilePath);
-
-        // Process HLS chunks
-        log.info("Starting HLS chunking for video file at: {}", videoFilePath);
-        videoUtilityService.createHLSChunks(videoFilePath, uploadVideoDTO.getUploaderId(), savedMetadata.getVideoId());
-        log.info("HLS chunking completed for video file at: {}", videoFilePath);
-
-        savedMetadata.setVideoUrl(relativeVideoPath);
-        savedMetadata.setThumbnailUrl(relativeThumbnailPath);
-        videoMetadata.setDuration(fileService.getVideoDuration(videoFilePath));
-        videoMetadata.setFileSize(fileService.getFileSize(uploadVideoDTO.getVideoFile()));
-        videoMetadata.setUploadInProgress(true);
-
-        return videoMetadataRepository.save(savedMetadata);
+        MultipartFile videoFile = uploadVideoDTO.getVideoFile();
+
+        return completeUpload(savedMetadata, () -> contentStoreService.stage(videoFile.getInputStream()),
+                uploadVideoDTO.getThumbnailFile(), fileService.getFileSize(videoFile));
+    }
+
+    // Shared tail of the multipart and chunked upload paths, called once the video file is fully on disk and hashed
+    @Transactional
+    public VideoMetadata completeUpload(VideoMetadata savedMetadata, ContentStoreService.StagedContent stagedContent,
+                                        MultipartFile thumbnailFile, long fileSize) throws Exception {
+        return completeUpload(savedMetadata, () -> stagedContent, thumbnailFile, fileSize);
+    }
+
+    // The file steps are independent of each other and of the row, so they run as subtasks while this thread
+    // keeps the transaction: staging, hashing and then probing the video on one, storing the thumbnail on another.
+    // Database work stays on the calling thread because the transaction is bound to it.
+    private VideoMetadata completeUpload(VideoMetadata savedMetadata,
+                                         Callable<ContentStoreService.StagedContent> stageVideo,
+                                         MultipartFile thumbnailFile, long fileSize) throws Exception {
+        Future<StagedUpload> stagedUpload;
+        Future<String> relativeThumbnailPath;
+        try (FanOutScope scope = new FanOutScope(uploadExecutor)) {
+            stagedUpload = scope.fork(() -> {
+                ContentStoreService.StagedContent stagedContent = stageVideo.call();
+                // Probe once here; the transcoder reads the stored result instead of inspecting the file again
+                return new StagedUpload(stagedContent, mediaProbeService.probe(stagedContent.file()));
+            });
+            relativeThumbnailPath = scope.fork(() -> thumbnailService.storeThumbnail(thumbnailFile));
+            scope.join();
+        }
+
+        ContentStoreService.ContentRef content = contentStoreService.claim(stagedUpload.get().content());
+        log.info("Video file and thumbnail saved successfully. Path: {}", content.sourcePath());
+
+        savedMetadata.setContentHash(content.contentHash());
+        savedMetadata.setVideoUrl(content.sourcePath());
+        savedMetadata.setThumbnailUrl(relativeThumbnailPath.get());
+        mediaProbeService.applyTo(stagedUpload.get().probe(), savedMetadata);
+        savedMetadata.setFileSize(fileSize);
+
+        // Same bytes as an earlier upload: its HLS output is already under the content prefix, or will be once its
+        // transcode finishes, so only the row is new and ffmpeg does not run again. claim() holds the content lock
+        // until commit, so a concurrent upload of the same bytes decides after this one and sees its job.
+        Optional<VideoMetadata> transcoded = content.duplicate()
+                ? videoMetadataRepository.findFinishedByContentHash(content.contentHash())
+                : Optional.empty();
+        if (transcoded.isPresent()) {
+            savedMetadata.setTranscodeMode(transcoded.get().getTranscodeMode());
+            savedMetadata.setUploadInProgress(false);
+        } else {
+            savedMetadata.setUploadInProgress(true);
+        }
+        VideoMetadata updatedMetadata = videoMetadataRepository.save(savedMetadata);
+        videoMetadataCache.evict(updatedMetadata.getVideoId());
+        // Counted here rather than when the row is created, so chunked uploads that are never finalized are not
+        analyticsRollupService.recordUpload(updatedMetadata.getUploaderId(), updatedMetadata.getUploadDate());
+
+        if (transcoded.isPresent()) {
+            log.info("Reusing HLS output of video ID: {} for video ID: {}", transcoded.get().getVideoId(),
+                    updatedMetadata.getVideoId());
+            serviceMetrics.recordUploadContent("reused");
+        } else if (content.duplicate() && transcodeJobService.hasPendingJobForContent(content.contentHash())) {
+            // Marked playable together with the upload whose job is running, see VideoUtilityService
+            log.info("Video ID: {} waits for the pending transcode of content {}", updatedMetadata.getVideoId(),
+                    content.contentHash());
+            serviceMetrics.recordUploadContent("waiting");
+        } else {
+            // HLS chunking runs on the transcode workers once this transaction commits
+            transcodeJobService.enqueue(updatedMetadata, content.sourcePath());
+            log.info("Queued HLS chunking for video file at: {}", content.sourcePath());
+            serviceMetrics.recordUploadContent("new");
+        }
+
+        return updatedMetadata;
+    }
+
+    private record StagedUpload(ContentStoreService.StagedContent content, MediaProbeResult probe) {
+    }
+
+    // Read-through cache for single-video lookups; sync makes concurrent misses for one video wait for a
+    // single load. Missing videos are cached too, so repeated lookups of a bad id stay off the database.
+    // Callers must not modify the returned DTO.
+    @Cacheable(cacheNames = VideoMetadataCache.CACHE_NAME, key = "#videoId", sync = true)
+    @Transactional(readOnly = true)
+    public VideoMetadataDTO getVideoMetadataDTO(UUID videoId) {
+        return videoMetadataRepository.findDTOByVideoId(videoId).orElse(null);
+    }
+
+    // Where the HLS endpoints read a video's files from; looked up on every playlist and segment request,
+    // so it is cached like the metadata and evicted with it
+    @Cacheable(cacheNames = VideoMetadataCache.HLS_LOCATION_CACHE_NAME, key = "#videoId", sync = true)
+    @Transactional(readOnly = true)
+    public HlsLocation getHlsLocation(UUID videoId) {
+        return videoMetadataRepository.findByVideoId(videoId)
+                .map(videoMetadata -> new HlsLocation(videoMetadata.getUploaderId(), StorageKeys.hls(
+                        videoMetadata.getUploaderId(), videoId, videoMetadata.getContentHash())))
+                .orElse(null);
+    }
+
+    // Serializable for the redis cache
+    public record HlsLocation(String uploaderId, String prefix) implements Serializable {
+    }
+
+    // Copy of a cached DTO with the views that have not been flushed yet
+    public VideoMetadataDTO withPendingViews(VideoMetadataDTO videoMetadataDTO) {
+        VideoMetadataDTO copy = new VideoMetadataDTO(videoMetadataDTO);
+        copy.setViewCount(copy.getViewCount() + viewCountAggregator.pendingViews(UUID.fromString(copy.getVideoId())));
+        return copy;
     }
 
     public Optional<VideoMetadata> getVideoMetadataById(String videoId) {
@@ -104,37 +253,39 @@ public class VideoMetadataService {
 
 
     // Fetch all videos with filtering options
-    public List<VideoMetadataDTO> getAllVideos(Optional<String> userId, Optional<Boolean> uploadInProgress) {
-        List<VideoMetadata> videos;
-
-        if (userId.isPresent() && uploadInProgress.isPresent()) {
-            // If both filters are provided, use the filter method
-            videos = videoMetadataRepository.findByUploaderIdAndUploadInProgress(userId.get(), uploadInProgress.get());
-        } else if (userId.isPresent()) {
-            // If only userId filter is provided
-            videos = videoMetadataRepository.findByUploaderIdAndUploadInProgress(userId.get(), false); // Default to false
+    // Keyset pagination newest first; one extra row is fetched to know whether another page exists
+    @Transactional(readOnly = true)
+    public VideoPageDTO getAllVideos(Optional<String> userId, Optional<Boolean> uploadInProgress,
+                                     String cursor, Integer limit) {
+        CursorToken after = CursorToken.decode(cursor);
+        int pageSize = limit == null ? defaultPageSize : Math.max(1, Math.min(limit, maxPageSize));
+        Pageable pageable = PageRequest.of(0, pageSize + 1);
+        List<VideoMetadataDTO> videos;
+
+        if (userId.isPresent()) {
+            // Uploader listings default to finished videos
+            videos = videoMetadataRepository.findPageByUploaderIdAndUploadInProgress(userId.get(),
+                    uploadInProgress.orElse(false), after.timestamp(), after.id(), pageable);
         } else if (uploadInProgress.isPresent()) {
-            // If only uploadInProgress filter is provided
-            videos = videoMetadataRepository.findByUploadInProgress(uploadInProgress.get());
+            videos = videoMetadataRepository.findPageByUploadInProgress(uploadInProgress.get(),
+                    after.timestamp(), after.id(), pageable);
         } else {
-            // If no filters are provided, return all videos
-            videos = videoMetadataRepository.findAll();
+            videos = videoMetadataRepository.findPage(after.timestamp(), after.id(), pageable);
         }
 
-        return videos.stream()
-                .map(this::convertToDTO)  // Convert VideoMetadata to VideoMetadataDTO
-                .collect(Collectors.toList());
+        VideoPageDTO videoPageDTO = new VideoPageDTO();
+        if (videos.size() > pageSize) {
+            videos = videos.subList(0, pageSize);
+            VideoMetadataDTO last = videos.get(pageSize - 1);
+            videoPageDTO.setNextCursor(new CursorToken(last.getUploadDate(), UUID.fromString(last.getVideoId())).encode());
+        }
+        videoPageDTO.setVideos(videos);
+        return videoPageDTO;
     }
 
-    public VideoMetadataDTO incrementViewCount(String videoId) {
-        Optional<VideoMetadata> videoMetadataOpt = videoMetadataRepository.findById(UUID.fromString(videoId));
-        if (videoMetadataOpt.isPresent()) {
-            VideoMetadata videoMetadata = videoMetadataOpt.get();
-            videoMetadata.setViewCount(videoMetadata.getViewCount() + 1);
-            return modelMapper.map(videoMetadataRepository.save(videoMetadata), VideoMetadataDTO.class);
-        } else {
-            return null;  // Video not found
-        }
+    // Counted in memory and written by ViewCountAggregator, so a view never waits on the database
+    public void incrementViewCount(String videoId) {
+        viewCountAggregator.recordView(UUID.fromString(videoId));
     }
 
     public VideoMetadataDTO convertToDTO(VideoMetadata videoMetadata) {
@@ -150,21 +301,20 @@ public class VideoMetadataService {
         videoMetadataDTO.setVideoUrl(videoMetadata.getVideoUrl());
         videoMetadataDTO.setLikeCount(videoMetadata.getLikeCount());
         videoMetadataDTO.setViewCount(videoMetadata.getViewCount());
+        videoMetadataDTO.setCommentCount(videoMetadata.getCommentCount());
+        videoMetadataDTO.setDurationMs(videoMetadata.getDurationMs());
+        videoMetadataDTO.setWidth(videoMetadata.getWidth());
+        videoMetadataDTO.setHeight(videoMetadata.getHeight());
+        videoMetadataDTO.setVideoCodec(videoMetadata.getVideoCodec());
+        videoMetadataDTO.setAudioCodec(videoMetadata.getAudioCodec());
+        videoMetadataDTO.setTranscodeMode(videoMetadata.getTranscodeMode() != null
+                ? videoMetadata.getTranscodeMode().name() : null);
 
         return videoMetadataDTO;
     }
 
-    public VideoMetadataDTO incrementLikeCount(String videoId) {
-        Optional<VideoMetadata> videoMetadataOpt = videoMetadataRepository.findById(UUID.fromString(videoId));
-        if (videoMetadataOpt.isPresent()) {
-            VideoMetadata videoMetadata = videoMetadataOpt.get();
-            videoMetadata.setLikeCount(videoMetadata.getLikeCount() + 1);
-            return modelMapper.map(videoMetadataRepository.save(videoMetadata), VideoMetadataDTO.class);
-        } else {
-            return null;  // Video not found
-        }
-    }
-
+    // Only marks the row as deleted, so the request returns without touching storage. From here on the video
+    // is gone for every read; VideoReaper removes its files, comments and likes and finally the row.
     @Transactional
     public boolean deleteVideo(String videoId) {
         Optional<VideoMetadata> videoMetadataOpt = videoMetadataRepository.findByVideoId(UUID.fromString(videoId));
@@ -174,39 +324,48 @@ public class VideoMetadataService {
         }
 
         VideoMetadata videoMetadata = videoMetadataOpt.get();
-
-        // Delete the video and thumbnail files from the storage
-        try {
-            Path hlsFolderPath = Paths.get(AppConstants.videoStorageDir, videoMetadata.getUploaderId(), videoId);
-            Path videoFilePath = Paths.get(videoStorageDir, videoMetadata.getVideoUrl());
-            Path thumbnailFilePath = Paths.get(thumbnailStorageDir, videoMetadata.getThumbnailUrl());
-            deleteDirectory(hlsFolderPath);
-
-            Files.deleteIfExists(videoFilePath);
-            Files.deleteIfExists(thumbnailFilePath);
-
-            // Delete metadata from the database
-            videoMetadataRepository.delete(videoMetadata);
-
-            return true;
-        } catch (Exception e) {
-            log.error("Error while deleting video and its metadata: {}", e.getMessage());
+        if (videoMetadataRepository.tombstone(UuidUtils.toBytes(videoMetadata.getVideoId()), LocalDateTime.now()) == 0) {
+            // Deleted concurrently
             return false;
         }
+        transcodeJobService.cancelQueued(videoMetadata.getVideoId());
+        videoMetadataCache.evict(videoMetadata.getVideoId());
+        // Without a video file the upload was never finalized, so it was never counted
+        if (videoMetadata.getVideoUrl() != null) {
+            analyticsRollupService.recordDelete(videoMetadata.getUploaderId(), videoMetadata.getUploadDate(),
+                    videoMetadata.getLikeCount());
+        }
+        log.info("Video ID: {} marked as deleted", videoId);
+        return true;
     }
 
-    private void deleteDirectory(Path directory) throws Exception {
-        if (Files.exists(directory)) {
-            Files.walk(directory)
-                    .sorted((path1, path2) -> path2.compareTo(path1))  // Delete files before directories
-                    .forEach(path -> {
-                        try {
-                            Files.delete(path);
-                        } catch (Exception e) {
-                            log.error("Error deleting file/directory: {}", path, e);
-                        }
-                    });
+    // Called by VideoReaper once the video's other rows are gone. Storage is removed while the row is locked
+    // and before the delete commits, so a failure rolls the whole step back (including the content reference)
+    // and the next attempt starts over. Returns false if another instance reaped the video first.
+    @Transactional(rollbackFor = Exception.class)
+    public boolean reapVideo(VideoTombstoneRepository.Tombstone tombstone) throws Exception {
+        if (videoTombstoneRepository.deleteTombstone(tombstone.videoId()) == 0) {
+            return false;
+        }
+
+        if (tombstone.contentHash() != null) {
+            // The shared source and HLS output go with their last reference
+            contentStoreService.release(tombstone.contentHash());
+        } else {
+            storageBackend.deletePrefix(StorageKeys.hls(tombstone.uploaderId(), tombstone.videoId(), null));
+            if (tombstone.videoUrl() != null) {
+                storageBackend.delete(StorageKeys.video(tombstone.videoUrl()));
+            }
+        }
+        hlsSegmentCache.invalidatePrefix(StorageKeys.hls(tombstone.uploaderId(), tombstone.videoId(),
+                tombstone.contentHash()));
+
+        // Identical thumbnails share one stored copy, only remove it with its last video. Tombstones count as
+        // references too, as they do for the orphan sweep, so the copy goes with the last row that mentions it.
+        if (tombstone.thumbnailUrl() != null && !isThumbnailShared(tombstone.thumbnailUrl(), tombstone.videoId())) {
+            thumbnailService.deleteThumbnail(tombstone.thumbnailUrl());
         }
+        return true;
     }
 
     @Transactional
@@ -231,79 +390,69 @@ public class VideoMetadataService {
 
         // Update thumbnail if provided
         if (updateVideoDTO.getThumbnailFile() != null && !updateVideoDTO.getThumbnailFile().isEmpty()) {
-            String relativeThumbnailPath = videoMetadata.getUploaderId() + "/"
-                    + fileService.getFileName(updateVideoDTO.getThumbnailFile());
-            Path thumbnailFilePath = Paths.get(thumbnailStorageDir, relativeThumbnailPath);
-            Files.createDirectories(thumbnailFilePath.getParent());
-            updateVideoDTO.getThumbnailFile().transferTo(thumbnailFilePath.toFile());
+            String previousThumbnailUrl = videoMetadata.getThumbnailUrl();
+            String relativeThumbnailPath = thumbnailService.storeThumbnail(updateVideoDTO.getThumbnailFile());
             videoMetadata.setThumbnailUrl(relativeThumbnailPath);
             log.debug("Updated thumbnail file: {}", relativeThumbnailPath);
+            // The same image uploaded again keeps its directory, even if the old row named the original differently
+            if (previousThumbnailUrl != null && !previousThumbnailUrl.equals(relativeThumbnailPath)
+                    && !Objects.equals(ThumbnailService.imageDirectory(previousThumbnailUrl),
+                            ThumbnailService.imageDirectory(relativeThumbnailPath))) {
+                releaseThumbnailAfterCommit(previousThumbnailUrl, videoMetadata.getVideoId());
+            }
         }
 
         // Save updated metadata
         VideoMetadata updatedMetadata = videoMetadataRepository.save(videoMetadata);
+        videoMetadataCache.evict(updatedMetadata.getVideoId());
         log.info("Successfully updated video metadata with ID: {}", updatedMetadata.getVideoId());
 
         return updatedMetadata;
     }
 
-    public Map<String, Long> getUploadTrends(String period) {
-        List<VideoMetadata> videos = videoMetadataRepository.findAll();
-        return videos.stream()
-                .collect(Collectors.groupingBy(video ->
-                        getPeriodKey(LocalDate.from(video.getUploadDate()), period), Collectors.counting()));
+    // The replaced thumbnail goes once the new one is committed, unless another video, live or tombstoned, shares
+    // the stored copy. A failure here only leaves it for the reaper's orphan sweep.
+    private void releaseThumbnailAfterCommit(String thumbnailUrl, UUID videoId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    if (!isThumbnailShared(thumbnailUrl, videoId)) {
+                        thumbnailService.deleteThumbnail(thumbnailUrl);
+                    }
+                } catch (Exception e) {
+                    log.warn("Could not release replaced thumbnail {}: {}", thumbnailUrl, e.getMessage());
+                }
+            }
+        });
     }
 
-    private String getPeriodKey(LocalDate uploadDate, String period) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        switch (period) {
-            case "day":
-                return uploadDate.format(formatter);
-            case "week":
-                return uploadDate.getYear() + "-W" + uploadDate.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
-            case "month":
-                return uploadDate.getYear() + "-" + uploadDate.getMonthValue();
-            default:
-                throw new IllegalArgumentException("Invalid period: " + period);
-        }
+    // Content-addressed thumbnails are shared by directory, whatever name each row gave the original
+    private boolean isThumbnailShared(String thumbnailUrl, UUID videoId) {
+        String imageDirectory = ThumbnailService.imageDirectory(thumbnailUrl);
+        return imageDirectory != null
+                ? videoTombstoneRepository.isThumbnailDirectoryReferenced(imageDirectory, videoId)
+                : videoTombstoneRepository.isThumbnailReferenced(thumbnailUrl, videoId);
     }
 
-    public Map<String, Long> getUploadCountByUser() {
-        // This method will get the count of videos uploaded by each user
-        return videoMetadataRepository.findAll().stream()
-                .collect(Collectors.groupingBy(VideoMetadata::getUploaderId, Collectors.counting()));
+    public Map<String, Long> getUploadTrends(String period) {
+        return analyticsRollupService.getUploadTrends(period);
     }
 
-    public List<Map<String, Object>> getViewsVsLikes() {
-        // This method returns a list of maps with view count and like count
-        return videoMetadataRepository.findAll().stream()
-                .map(video -> {
-                    Map<String, Object> data = new HashMap<>();
-                    data.put("views", video.getViewCount());
-                    data.put("likes", video.getLikeCount());
-                    return data;
-                })
-                .collect(Collectors.toList());
+    public Map<String, Long> getUploadCountByUser() {
+        // Count of videos uploaded by each user, read from the rollup table
+        return analyticsRollupService.getUploadCountByUser();
     }
 
-    public Map<String, Long> getLikeCountDistribution() {
-        // This method calculates the like count distribution in ranges
-        Map<String, Long> distribution = new HashMap<>();
-        List<VideoMetadata> allVideos = videoMetadataRepository.findAll();
-
-        for (VideoMetadata video : allVideos) {
-            int likeCount = Math.toIntExact(video.getLikeCount());
-            String range = getLikeCountRange(likeCount);
-            distribution.put(range, distribution.getOrDefault(range, 0L) + 1);
-        }
-        return distribution;
+    @Transactional(readOnly = true)
+    public List<ViewsLikesPointDTO> getViewsVsLikes() {
+        // One views/likes pair per video, selected without loading the entities
+        return videoMetadataRepository.findViewsAndLikes();
     }
 
-    private String getLikeCountRange(int likeCount) {
-        if (likeCount <= 10) return "0-10";
-        if (likeCount <= 50) return "11-50";
-        if (likeCount <= 100) return "51-100";
-        return "100+";
+    public Map<String, Long> getLikeCountDistribution() {
+        // Like count distribution in ranges, read from the rollup table
+        return analyticsRollupService.getLikeCountDistribution();
     }
 }
 
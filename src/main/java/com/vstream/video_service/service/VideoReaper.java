@@ -0,0 +1,257 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.repository.VideoTombstoneRepository;
+import com.vstream.video_service.storage.SpoolDirectory;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Removes deleted videos in the background: dependent rows in bounded batches, then storage and the row
+// itself (VideoMetadataService.reapVideo). Storage deletions are paced to reaper.deletes-per-second so a mass
+// delete cannot starve playback of disk or object store requests; a failed video is retried with backoff.
+// Every reaper.orphan-sweep-interval-ms it also compares storage with the database and removes what no row
+// refers to, e.g. files left by a crash between a storage write and its commit. Runs on its own thread
+// because pacing sleeps, which would hold up the shared @Scheduled thread.
+@Slf4j
+@Service
+public class VideoReaper {
+
+    private static final long MAX_RETRY_BACKOFF_MS = TimeUnit.HOURS.toMillis(6);
+    private static final Pattern HEX_SHARD = Pattern.compile("[0-9a-f]{2}");
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+
+    @Autowired
+    private VideoTombstoneRepository videoTombstoneRepository;
+
+    @Autowired
+    private VideoMetadataService videoMetadataService;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private SpoolDirectory spoolDirectory;
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Value("${reaper.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reaper.interval-ms:5000}")
+    private long intervalMs;
+
+    // Tombstones picked up per run
+    @Value("${reaper.batch-size:50}")
+    private int batchSize;
+
+    // Rows removed per statement from comments, video_likes, transcode_jobs and upload_sessions
+    @Value("${reaper.row-batch-size:1000}")
+    private int rowBatchSize;
+
+    // Videos or orphans removed from storage per second
+    @Value("${reaper.deletes-per-second:10}")
+    private int deletesPerSecond;
+
+    @Value("${reaper.retry-backoff-ms:60000}")
+    private long retryBackoffMs;
+
+    @Value("${reaper.orphan-sweep-interval-ms:21600000}")
+    private long orphanSweepIntervalMs;
+
+    private ScheduledExecutorService executor;
+    private long nextDeleteNanos;
+
+    // Orphans seen by the previous sweep. Only what is still orphaned one full interval later is deleted, so
+    // objects written just before their row commits are never mistaken for leftovers.
+    private Set<String> orphanCandidates = Set.of();
+
+    @PostConstruct
+    void start() {
+        serviceMetrics.registerTombstones(videoTombstoneRepository::countTombstones);
+        if (!enabled) {
+            log.info("Video reaper disabled, deleted videos stay as tombstones");
+            return;
+        }
+        // One thread for both tasks, so reaping and sweeping never run at the same time
+        executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("reaper-"));
+        executor.scheduleWithFixedDelay(this::reapDue, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::sweepOrphans, orphanSweepIntervalMs, orphanSweepIntervalMs,
+                TimeUnit.MILLISECONDS);
+        log.info("Video reaper started, {} deletes/s, orphan sweep every {} ms", deletesPerSecond,
+                orphanSweepIntervalMs);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            // Whatever was not reaped yet is picked up again on the next start
+            executor.shutdownNow();
+        }
+    }
+
+    // Exceptions are caught here: one escaping a scheduleWithFixedDelay task would cancel all later runs
+    void reapDue() {
+        try {
+            List<VideoTombstoneRepository.Tombstone> due = videoTombstoneRepository.findDue(LocalDateTime.now(),
+                    batchSize);
+            for (VideoTombstoneRepository.Tombstone tombstone : due) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                reap(tombstone);
+            }
+        } catch (Exception e) {
+            log.error("Reaper run failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void reap(VideoTombstoneRepository.Tombstone tombstone) {
+        UUID videoId = tombstone.videoId();
+        if (videoTombstoneRepository.hasRunningTranscode(videoId)) {
+            // Its worker still writes the job row and the HLS output; try again once it has finished
+            videoTombstoneRepository.postpone(videoId, tombstone.attempts(),
+                    LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(retryBackoffMs)));
+            serviceMetrics.recordReap("postponed");
+            return;
+        }
+        try {
+            pace();
+            for (String uploadFile : videoTombstoneRepository.findUnfinishedUploadFiles(videoId)) {
+                Files.deleteIfExists(spoolDirectory.resolve(uploadFile));
+            }
+            for (String table : VideoTombstoneRepository.DEPENDENT_TABLES) {
+                while (videoTombstoneRepository.deleteDependents(table, videoId, rowBatchSize) == rowBatchSize) {
+                    // Keep going until a batch comes back short
+                }
+            }
+            if (videoMetadataService.reapVideo(tombstone)) {
+                log.info("Reaped deleted video ID: {}", videoId);
+                serviceMetrics.recordReap("reaped");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            int attempts = tombstone.attempts() + 1;
+            long backoffMs = Math.min(retryBackoffMs << Math.min(attempts - 1, 16), MAX_RETRY_BACKOFF_MS);
+            videoTombstoneRepository.postpone(videoId, attempts,
+                    LocalDateTime.now().plusNanos(TimeUnit.MILLISECONDS.toNanos(backoffMs)));
+            log.warn("Reaping video ID: {} failed (attempt {}), retrying in {} ms: {}", videoId, attempts, backoffMs,
+                    e.getMessage());
+            serviceMetrics.recordReap("failed");
+        }
+    }
+
+    void sweepOrphans() {
+        try {
+            Set<String> orphans = findOrphans();
+            Set<String> deleted = new HashSet<>();
+            for (String key : orphans) {
+                if (!orphanCandidates.contains(key)) {
+                    continue;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                pace();
+                // The key may be a single file or a directory of objects; both calls are no-ops otherwise
+                storageBackend.deletePrefix(key);
+                storageBackend.delete(key);
+                deleted.add(key);
+                serviceMetrics.recordReap("orphan");
+            }
+            orphans.removeAll(deleted);
+            orphanCandidates = orphans;
+            log.info("Orphan sweep removed {} object(s), {} candidate(s) for the next sweep", deleted.size(),
+                    orphans.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Orphan sweep failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // Storage keys, one level below an uploader or hash shard, that no row (live or tombstoned) refers to
+    private Set<String> findOrphans() throws Exception {
+        Set<String> orphans = new LinkedHashSet<>();
+        for (String directory : storageBackend.list(StorageKeys.VIDEO_ROOT)) {
+            String directoryKey = StorageKeys.video(directory);
+            if (StorageKeys.CONTENT_DIRECTORY.equals(directory)) {
+                for (String shard : storageBackend.list(directoryKey)) {
+                    if (!HEX_SHARD.matcher(shard).matches()) {
+                        continue;
+                    }
+                    Set<String> contentHashes = videoTombstoneRepository.findContentHashes(shard);
+                    for (String contentHash : storageBackend.list(StorageKeys.child(directoryKey, shard))) {
+                        if (CONTENT_HASH.matcher(contentHash).matches() && !contentHashes.contains(contentHash)) {
+                            orphans.add(StorageKeys.child(directoryKey, shard, contentHash));
+                        }
+                    }
+                }
+            } else {
+                // Uploads from before content addressing: <uploaderId>/<videoId>/ and <uploaderId>/<videoId>.mp4
+                Set<UUID> videoIds = videoTombstoneRepository.findVideoIdsByUploader(directory);
+                for (String name : storageBackend.list(directoryKey)) {
+                    UUID videoId = parseVideoId(name);
+                    if (videoId != null && !videoIds.contains(videoId)) {
+                        orphans.add(StorageKeys.child(directoryKey, name));
+                    }
+                }
+            }
+        }
+
+        // Thumbnails live under <hash shard>/<sha256>/ or, from before sharding, <uploaderId>/<sha256>/
+        for (String directory : storageBackend.list(StorageKeys.THUMBNAIL_ROOT)) {
+            Set<String> referenced = new HashSet<>();
+            for (String thumbnailUrl : videoTombstoneRepository.findThumbnailUrls(directory + "/")) {
+                String rest = thumbnailUrl.substring(directory.length() + 1);
+                int slash = rest.indexOf('/');
+                referenced.add(slash >= 0 ? rest.substring(0, slash) : rest);
+            }
+            String directoryKey = StorageKeys.thumbnail(directory);
+            for (String name : storageBackend.list(directoryKey)) {
+                if (!referenced.contains(name)) {
+                    orphans.add(StorageKeys.child(directoryKey, name));
+                }
+            }
+        }
+        return orphans;
+    }
+
+    private static UUID parseVideoId(String name) {
+        String id = name.endsWith(".mp4") ? name.substring(0, name.length() - 4) : name;
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void pace() throws InterruptedException {
+        long now = System.nanoTime();
+        if (nextDeleteNanos > now) {
+            TimeUnit.NANOSECONDS.sleep(nextDeleteNanos - now);
+            now = nextDeleteNanos;
+        }
+        nextDeleteNanos = now + TimeUnit.SECONDS.toNanos(1) / Math.max(1, deletesPerSecond);
+    }
+}
@@ -1,73 +1,501 @@
 package com.vstream.video_service.service;
 
+import com.vstream.video_service.cache.HlsSegmentCache;
+import com.vstream.video_service.cache.VideoMetadataCache;
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.model.TranscodeJobStatus;
+import com.vstream.video_service.model.TranscodeMode;
 import com.vstream.video_service.model.VideoMetadata;
 import com.vstream.video_service.repository.VideoMetadataRepository;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
-
-import static com.vstream.video_service.constant.AppConstants.videoStorageDir;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
 public class VideoUtilityService {
 
+    public static final String MASTER_PLAYLIST = "master.m3u8";
+    public static final String AUDIO_ONLY_RENDITION = "audio";
+    public static final String SOURCE_RENDITION = "source";
+    public static final String TRICKPLAY_DIRECTORY = "trickplay";
+    public static final String TRICKPLAY_TRACK = "thumbnails.vtt";
+    private static final String TRICKPLAY_LABEL = "[trick]";
+
     @Autowired
     private VideoMetadataRepository videoMetadataRepository;
 
-    @Async
-    public void createHLSChunks(Path videoFilePath, String uploaderId, UUID videoId) throws Exception {
-        log.info("Initiating FFmpeg HLS chunking command for file: {}", videoFilePath);
+    @Autowired
+    private MediaProbeService mediaProbeService;
+
+    @Autowired
+    private HlsSegmentCache hlsSegmentCache;
+
+    @Autowired
+    private VideoMetadataCache videoMetadataCache;
+
+    @Autowired
+    private LiveEventHub liveEventHub;
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Autowired
+    private ContentStoreService contentStoreService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // ffmpeg is multi-threaded, so by default only let a quarter of the cores' worth of processes run at once
+    @Value("${transcode.max-concurrent-ffmpeg:0}")
+    private int maxConcurrentFfmpeg;
+
+    // Comma separated name:height:videoBitrate:audioBitrate entries, highest first
+    @Value("${transcode.hls.renditions:1080p:1080:5000k:192k,720p:720:2800k:128k,480p:480:1400k:128k,360p:360:800k:96k}")
+    private String renditionLadder;
+
+    // Bitrate of the audio-only rendition, empty to skip it
+    @Value("${transcode.hls.audio-only-bitrate:64k}")
+    private String audioOnlyBitrate;
+
+    @Value("${transcode.hls.segment-seconds:10}")
+    private int segmentSeconds;
+
+    // Remux H.264/AAC sources into HLS without re-encoding when their GOPs fit the segment length
+    @Value("${transcode.copy.enabled:true}")
+    private boolean copyEnabled;
+
+    // Seek preview sprites: one frame every interval, scaled to the width and tiled columns x rows per sheet
+    @Value("${transcode.trickplay.enabled:true}")
+    private boolean trickplayEnabled;
+
+    @Value("${transcode.trickplay.interval-seconds:5}")
+    private int trickplayIntervalSeconds;
+
+    @Value("${transcode.trickplay.width:160}")
+    private int trickplayWidth;
+
+    @Value("${transcode.trickplay.columns:10}")
+    private int trickplayColumns;
+
+    @Value("${transcode.trickplay.rows:10}")
+    private int trickplayRows;
+
+    private Semaphore ffmpegPermits;
+    private List<HlsRendition> renditions;
+
+    @PostConstruct
+    void init() {
+        int permits = maxConcurrentFfmpeg > 0
+                ? maxConcurrentFfmpeg
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        ffmpegPermits = new Semaphore(permits);
+        log.info("Allowing up to {} concurrent ffmpeg processes", permits);
+
+        renditions = new ArrayList<>();
+        for (String entry : renditionLadder.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid HLS rendition '" + entry
+                        + "', expected name:height:videoBitrate:audioBitrate");
+            }
+            renditions.add(new HlsRendition(parts[0], Integer.parseInt(parts[1]), parts[2], parts[3]));
+        }
+        log.info("HLS rendition ladder: {}", renditions);
+    }
+
+    // A transcode job takes a permit before it is claimed and holds it until it finishes, so jobs only leave the
+    // queue, in priority order, once one of their ffmpeg processes can actually start
+    public boolean tryAcquireFfmpegPermit() {
+        return ffmpegPermits.tryAcquire();
+    }
+
+    public void releaseFfmpegPermit() {
+        ffmpegPermits.release();
+    }
+
+    // Runs on a transcode worker thread holding an ffmpeg permit, see TranscodeJobService. Compatible sources
+    // are remuxed as a single "source" rendition; everything else is decoded once and split into every rung of
+    // the ladder. Either way the output is one playlist per rendition plus master.m3u8. ffmpeg works on local
+    // files, so with a remote backend the source is downloaded and the output uploaded once ffmpeg has finished.
+    public void createHLSChunks(String sourcePath, String uploaderId, UUID videoId) throws Exception {
+        log.info("Initiating FFmpeg HLS chunking command for file: {}", sourcePath);
+
+        VideoMetadata videoMetadata = videoMetadataRepository.findByVideoId(videoId)
+                .orElseThrow(() -> new Exception("Video with ID " + videoId + " not found"));
+        String hlsPrefix = StorageKeys.hls(uploaderId, videoId, videoMetadata.getContentHash());
+        // A retried job rewrites the playlists, drop anything served from an earlier attempt
+        hlsSegmentCache.invalidatePrefix(hlsPrefix);
+
+        try (StorageBackend.LocalFile source = storageBackend.fetch(StorageKeys.video(sourcePath));
+             StorageBackend.LocalDirectory output = storageBackend.stageDirectory(hlsPrefix)) {
+            Path videoFilePath = source.path();
+            Path hlsDirectory = output.path();
+            if (videoMetadata.getVideoCodec() == null && videoMetadata.getAudioCodec() == null) {
+                // Uploaded before media probing existed; an audio-only upload has no height but an audio codec
+                mediaProbeService.applyTo(mediaProbeService.probe(videoFilePath), videoMetadata);
+                videoMetadata = videoMetadataRepository.save(videoMetadata);
+            }
+
+            if (copyEnabled && isStreamCopyCompatible(videoMetadata)) {
+                log.info("Source is already H.264/AAC, remuxing without re-encoding: {}", sourcePath);
+                int copyExitCode = runFfmpeg(buildCopyCommand(videoFilePath, hlsDirectory, videoMetadata), "copy");
+                if (copyExitCode == 0) {
+                    log.info("FFmpeg remux completed successfully for file: {}", sourcePath);
+                    writeTrickplayTrack(hlsDirectory, videoMetadata);
+                    output.commit();
+                    markTranscodeComplete(videoId, TranscodeMode.COPY);
+                    return;
+                }
+                log.warn("FFmpeg remux failed with exit code {} for file: {}, falling back to re-encode",
+                        copyExitCode, sourcePath);
+                FileSystemUtils.deleteRecursively(hlsDirectory.resolve(SOURCE_RENDITION));
+                FileSystemUtils.deleteRecursively(hlsDirectory.resolve(TRICKPLAY_DIRECTORY));
+            }
+
+            List<String> command = buildLadderCommand(videoFilePath, hlsDirectory, videoMetadata);
+
+            int exitCode = runFfmpeg(command, "encode");
+
+            if (exitCode == 0) {
+                log.info("FFmpeg process completed successfully for file: {}", sourcePath);
+                writeTrickplayTrack(hlsDirectory, videoMetadata);
+                output.commit();
+                markTranscodeComplete(videoId, TranscodeMode.ENCODE);
+            } else {
+                log.error("FFmpeg process failed with exit code {} for file: {}", exitCode, sourcePath);
+                throw new Exception("Failed to create HLS chunks for video file: " + sourcePath);
+            }
+        }
+    }
+
+    // H.264 8-bit 4:2:0 video, AAC or no audio, and a keyframe at least once per segment
+    private boolean isStreamCopyCompatible(VideoMetadata videoMetadata) {
+        return "h264".equals(videoMetadata.getVideoCodec())
+                && (videoMetadata.getAudioCodec() == null || "aac".equals(videoMetadata.getAudioCodec()))
+                && ("yuv420p".equals(videoMetadata.getPixelFormat()) || "yuvj420p".equals(videoMetadata.getPixelFormat()))
+                && videoMetadata.getKeyframeIntervalMs() != null
+                && videoMetadata.getKeyframeIntervalMs() <= segmentSeconds * 1000L;
+    }
+
+    private List<String> buildCopyCommand(Path videoFilePath, Path hlsDirectory, VideoMetadata videoMetadata)
+            throws Exception {
+        boolean hasAudio = videoMetadata.getAudioCodec() != null;
+        Files.createDirectories(hlsDirectory.resolve(SOURCE_RENDITION));
+
+        List<String> command = new ArrayList<>(List.of("ffmpeg", "-y", "-i", videoFilePath.toString()));
+        if (hasTrickplay(videoMetadata)) {
+            // Packets are still copied into the HLS output; only the sprite branch decodes the video
+            command.addAll(List.of("-filter_complex", "[0:v:0]" + trickplayFilter()));
+        }
+        command.addAll(List.of("-map", "0:v:0"));
+        if (hasAudio) {
+            command.addAll(List.of("-map", "0:a:0"));
+        }
+        command.addAll(List.of("-c", "copy"));
+        command.addAll(hlsOutputOptions(hlsDirectory,
+                "v:0" + (hasAudio ? ",a:0" : "") + ",name:" + SOURCE_RENDITION));
+        addTrickplayOutput(command, hlsDirectory, videoMetadata);
+        return command;
+    }
 
-        // Define output paths for HLS playlist and segments in the desired directory
-        Path hlsDirectory = Paths.get(videoStorageDir, uploaderId, videoId.toString());
-        Files.createDirectories(hlsDirectory);
-        Path playlistPath = hlsDirectory.resolve("index.m3u8");
+    private List<String> buildLadderCommand(Path videoFilePath, Path hlsDirectory, VideoMetadata videoMetadata)
+            throws Exception {
+        boolean hasAudio = videoMetadata.getAudioCodec() != null;
+        if (videoMetadata.getVideoCodec() == null) {
+            return buildAudioOnlyCommand(videoFilePath, hlsDirectory);
+        }
+        List<HlsRendition> ladder = renditionsFor(videoMetadata.getHeight());
+        int rungs = ladder.size();
 
-        String[] command = {
-                "ffmpeg", "-i", videoFilePath.toString(),
+        // [0:v]split=N[s0][s1]...;[s0]scale=-2:'min(1080,ih)'[v0];... never upscales past the source height.
+        // The trickplay sprites take one more branch of the same decoded frames.
+        int branches = hasTrickplay(videoMetadata) ? rungs + 1 : rungs;
+        StringBuilder filter = new StringBuilder("[0:v]split=").append(branches);
+        for (int i = 0; i < branches; i++) {
+            filter.append("[s").append(i).append(']');
+        }
+        for (int i = 0; i < rungs; i++) {
+            filter.append(";[s").append(i).append("]scale=-2:'min(")
+                    .append(ladder.get(i).height()).append(",ih)'[v").append(i).append(']');
+        }
+        if (hasTrickplay(videoMetadata)) {
+            filter.append(";[s").append(rungs).append(']').append(trickplayFilter());
+        }
+
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg", "-y", "-i", videoFilePath.toString(),
+                "-filter_complex", filter.toString()));
+
+        StringBuilder varStreamMap = new StringBuilder();
+        for (int i = 0; i < rungs; i++) {
+            HlsRendition rendition = ladder.get(i);
+            Files.createDirectories(hlsDirectory.resolve(rendition.name()));
+            command.addAll(List.of("-map", "[v" + i + "]",
+                    "-b:v:" + i, rendition.videoBitrate(),
+                    "-maxrate:v:" + i, rendition.videoBitrate(),
+                    "-bufsize:v:" + i, doubleBitrate(rendition.videoBitrate())));
+            varStreamMap.append(varStreamMap.isEmpty() ? "" : " ").append("v:").append(i);
+            if (hasAudio) {
+                varStreamMap.append(",a:").append(i);
+            }
+            varStreamMap.append(",name:").append(rendition.name());
+        }
+        if (hasAudio) {
+            for (int i = 0; i < rungs; i++) {
+                command.addAll(List.of("-map", "0:a:0", "-b:a:" + i, ladder.get(i).audioBitrate()));
+            }
+            if (!audioOnlyBitrate.isBlank()) {
+                Files.createDirectories(hlsDirectory.resolve(AUDIO_ONLY_RENDITION));
+                command.addAll(List.of("-map", "0:a:0", "-b:a:" + rungs, audioOnlyBitrate));
+                varStreamMap.append(" a:").append(rungs).append(",name:").append(AUDIO_ONLY_RENDITION);
+            }
+        }
+
+        if (videoMetadata.getFrameRate() != null) {
+            // Fixed GOP of exactly one segment; -force_key_frames below still covers variable frame rates
+            String gopSize = String.valueOf(Math.round(videoMetadata.getFrameRate() * segmentSeconds));
+            command.addAll(List.of("-g", gopSize, "-keyint_min", gopSize, "-sc_threshold", "0"));
+        }
+        command.addAll(List.of(
                 "-c:v", "libx264",           // Ensure video is encoded with H.264
-                "-c:a", "aac",               // Ensure audio is encoded with AAC
+                "-preset", "fast",           // Set encoding speed/quality (optional)
+                // Keyframe on every segment boundary so all renditions switch at the same points
+                "-force_key_frames", "expr:gte(t,n_forced*" + segmentSeconds + ")",
+                "-c:a", "aac"                // Ensure audio is encoded with AAC
+        ));
+        command.addAll(hlsOutputOptions(hlsDirectory, varStreamMap.toString()));
+        addTrickplayOutput(command, hlsDirectory, videoMetadata);
+        return command;
+    }
+
+    // No video stream (cover art is not one): nothing to scale or sprite, just the audio rendition
+    private List<String> buildAudioOnlyCommand(Path videoFilePath, Path hlsDirectory) throws Exception {
+        String bitrate = audioOnlyBitrate.isBlank() ? renditions.get(0).audioBitrate() : audioOnlyBitrate;
+        Files.createDirectories(hlsDirectory.resolve(AUDIO_ONLY_RENDITION));
+        List<String> command = new ArrayList<>(List.of(
+                "ffmpeg", "-y", "-i", videoFilePath.toString(),
+                "-map", "0:a:0", "-c:a", "aac", "-b:a:0", bitrate));
+        command.addAll(hlsOutputOptions(hlsDirectory, "a:0,name:" + AUDIO_ONLY_RENDITION));
+        return command;
+    }
+
+    private boolean hasTrickplay(VideoMetadata videoMetadata) {
+        return trickplayEnabled && videoMetadata.getVideoCodec() != null;
+    }
+
+    // fps=1/5,scale=160:-2,tile=10x10[trick]
+    private String trickplayFilter() {
+        return "fps=1/" + trickplayIntervalSeconds + ",scale=" + trickplayWidth + ":-2,tile="
+                + trickplayColumns + "x" + trickplayRows + TRICKPLAY_LABEL;
+    }
+
+    // Second output of the same ffmpeg process, written as trickplay/sprite0.jpg, sprite1.jpg, ...
+    private void addTrickplayOutput(List<String> command, Path hlsDirectory, VideoMetadata videoMetadata)
+            throws Exception {
+        if (!hasTrickplay(videoMetadata)) {
+            return;
+        }
+        Path trickplayDirectory = hlsDirectory.resolve(TRICKPLAY_DIRECTORY);
+        FileSystemUtils.deleteRecursively(trickplayDirectory);
+        Files.createDirectories(trickplayDirectory);
+        command.addAll(List.of(
+                "-map", TRICKPLAY_LABEL,
+                "-c:v", "mjpeg",
+                "-q:v", "5",
+                "-f", "image2",
                 "-start_number", "0",
-                "-hls_time", "10",           // Duration of each segment in seconds
-                "-hls_list_size", "0",       // Include all segments in the playlist
-                "-hls_segment_filename", hlsDirectory.resolve("segment%d.ts").toString(),
+                trickplayDirectory.resolve("sprite%d.jpg").toString()
+        ));
+    }
+
+    // Maps each interval of the video to its tile, e.g. sprite0.jpg#xywh=160,0,160,90. Players only use the
+    // track if it exists, so a failure here is logged and does not fail the transcode.
+    private void writeTrickplayTrack(Path hlsDirectory, VideoMetadata videoMetadata) {
+        if (!hasTrickplay(videoMetadata)) {
+            return;
+        }
+        Long durationMs = videoMetadata.getDurationMs();
+        Path trickplayDirectory = hlsDirectory.resolve(TRICKPLAY_DIRECTORY);
+        try {
+            int sheets = 0;
+            while (Files.exists(trickplayDirectory.resolve("sprite" + sheets + ".jpg"))) {
+                sheets++;
+            }
+            if (sheets == 0) {
+                log.warn("No trickplay sprites were written to {}", trickplayDirectory);
+                return;
+            }
+            // The scaled height depends on the source aspect ratio, so take it from the sheet itself
+            int tileHeight = imageHeight(trickplayDirectory.resolve("sprite0.jpg")) / trickplayRows;
+            int tilesPerSheet = trickplayColumns * trickplayRows;
+            long intervalMs = trickplayIntervalSeconds * 1000L;
+            // Without a probed duration every tile is listed, the last sheet may then end in blank tiles
+            long totalMs = durationMs != null && durationMs > 0 ? durationMs : sheets * tilesPerSheet * intervalMs;
+            int cues = (int) Math.min((totalMs + intervalMs - 1) / intervalMs, (long) sheets * tilesPerSheet);
+
+            StringBuilder track = new StringBuilder("WEBVTT\n");
+            for (int i = 0; i < cues; i++) {
+                int tile = i % tilesPerSheet;
+                track.append('\n')
+                        .append(formatCueTime(i * intervalMs)).append(" --> ")
+                        .append(formatCueTime(Math.min((i + 1) * intervalMs, totalMs))).append('\n')
+                        .append("sprite").append(i / tilesPerSheet).append(".jpg#xywh=")
+                        .append((tile % trickplayColumns) * trickplayWidth).append(',')
+                        .append((tile / trickplayColumns) * tileHeight).append(',')
+                        .append(trickplayWidth).append(',').append(tileHeight).append('\n');
+            }
+            Files.writeString(trickplayDirectory.resolve(TRICKPLAY_TRACK), track);
+            log.info("Wrote trickplay track with {} cue(s) over {} sheet(s) to {}", cues, sheets, trickplayDirectory);
+        } catch (Exception e) {
+            log.warn("Could not write trickplay track for {}: {}", trickplayDirectory, e.getMessage());
+        }
+    }
+
+    // Reads only the image header, not the pixels
+    private int imageHeight(Path imagePath) throws Exception {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(imagePath.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (!readers.hasNext()) {
+                throw new IllegalStateException("Unreadable image " + imagePath);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream);
+                return reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // WebVTT timestamp, HH:MM:SS.mmm
+    private static String formatCueTime(long millis) {
+        return String.format("%02d:%02d:%02d.%03d", millis / 3_600_000, (millis / 60_000) % 60,
+                (millis / 1000) % 60, millis % 1000);
+    }
+
+    private List<String> hlsOutputOptions(Path hlsDirectory, String varStreamMap) {
+        return List.of(
                 "-f", "hls",                 // Set output format to HLS
-                "-preset", "fast",           // Set encoding speed/quality (optional)
+                "-start_number", "0",
+                "-hls_time", String.valueOf(segmentSeconds),
+                "-hls_list_size", "0",       // Include all segments in the playlist
                 "-hls_playlist_type", "vod", // For Video on Demand
-                playlistPath.toString()      // Output playlist path
-        };
+                "-hls_segment_filename", hlsDirectory.resolve("%v").resolve("segment%d.ts").toString(),
+                "-master_pl_name", MASTER_PLAYLIST,
+                "-var_stream_map", varStreamMap,
+                hlsDirectory.resolve("%v").resolve("index.m3u8").toString()
+        );
+    }
 
+    // Runs ffmpeg once a permit is free; interrupting the caller kills the process. kind tags the metrics.
+    private int runFfmpeg(List<String> command, String kind) throws Exception {
         ProcessBuilder processBuilder = new ProcessBuilder(command);
         processBuilder.inheritIO();
 
-        log.debug("Executing FFmpeg command: {}", (Object) command);
+        log.debug("Executing FFmpeg command: {}", command);
         Process process = processBuilder.start();
-        int exitCode = process.waitFor();
+        long startNanos = System.nanoTime();
+        Duration cpu = Duration.ZERO;
+        try {
+            // CPU time can only be read while the process is alive, so sample it as we wait
+            while (!process.waitFor(1, TimeUnit.SECONDS)) {
+                cpu = process.info().totalCpuDuration().orElse(cpu);
+            }
+            int exitCode = process.exitValue();
+            serviceMetrics.recordFfmpegRun(kind, System.nanoTime() - startNanos, cpu);
+            serviceMetrics.recordFfmpegExit(kind, exitCode);
+            return exitCode;
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
 
-        if (exitCode == 0) {
-            log.info("FFmpeg process completed successfully for file: {}", videoFilePath);
-            updateVideoMetadataUploadInProgressFlag(videoId);
-        } else {
-            log.error("FFmpeg process failed with exit code {} for file: {}", exitCode, videoFilePath);
-            throw new Exception("Failed to create HLS chunks for video file: " + videoFilePath);
+    // Rungs at or below the source height; a source smaller than the whole ladder gets the lowest rung
+    private List<HlsRendition> renditionsFor(Integer sourceHeight) {
+        if (sourceHeight == null || sourceHeight <= 0) {
+            return renditions;
+        }
+        List<HlsRendition> applicable = new ArrayList<>();
+        for (HlsRendition rendition : renditions) {
+            if (rendition.height() <= sourceHeight) {
+                applicable.add(rendition);
+            }
         }
+        if (applicable.isEmpty()) {
+            applicable.add(renditions.get(renditions.size() - 1));
+        }
+        return applicable;
+    }
+
+    // Buffer of two seconds at the target bitrate, e.g. 2800k -> 5600k
+    private String doubleBitrate(String bitrate) {
+        String digits = bitrate.replaceAll("[^0-9]", "");
+        String unit = bitrate.replaceAll("[0-9]", "");
+        return (Long.parseLong(digits) * 2) + unit;
     }
 
-    private void updateVideoMetadataUploadInProgressFlag(UUID videoId) {
+    // Duplicate uploads of the same content share this output, so they become playable at the same time. The
+    // duplicates are looked up under the content lock, after any upload that claimed the content meanwhile and
+    // found this transcode pending has committed.
+    private void markTranscodeComplete(UUID videoId, TranscodeMode transcodeMode) {
         Optional<VideoMetadata> videoMetadataOptional = videoMetadataRepository.findByVideoId(videoId);
-        if (videoMetadataOptional.isPresent()) {
-            VideoMetadata videoMetadata = videoMetadataOptional.get();
-            videoMetadata.setUploadInProgress(false);
-            videoMetadataRepository.save(videoMetadata);
+        if (videoMetadataOptional.isEmpty()) {
+            return;
         }
+        VideoMetadata videoMetadata = videoMetadataOptional.get();
+        String contentHash = videoMetadata.getContentHash();
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            if (contentHash != null) {
+                contentStoreService.lock(contentHash);
+            }
+            markPlayable(videoMetadata, transcodeMode);
+            if (contentHash != null) {
+                videoMetadataRepository.findByContentHashAndUploadInProgressTrue(contentHash)
+                        .forEach(duplicate -> markPlayable(duplicate, transcodeMode));
+            }
+        });
     }
 
+    private void markPlayable(VideoMetadata videoMetadata, TranscodeMode transcodeMode) {
+        UUID videoId = videoMetadata.getVideoId();
+        videoMetadata.setUploadInProgress(false);
+        videoMetadata.setTranscodeMode(transcodeMode);
+        videoMetadataRepository.save(videoMetadata);
+        videoMetadataCache.evict(videoId);
+        Map<String, Object> status = Map.of("videoId", videoId, "status", TranscodeJobStatus.SUCCEEDED.name(),
+                "transcodeMode", transcodeMode.name());
+        liveEventHub.publish(LiveEventHub.videoTopic(videoId), "transcode", status);
+        liveEventHub.publish(LiveEventHub.uploaderTopic(videoMetadata.getUploaderId()), "transcode", status);
+    }
+
+    private record HlsRendition(String name, int height, String videoBitrate, String audioBitrate) {
+    }
 }
@@ -0,0 +1,105 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.cache.VideoMetadataCache;
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.repository.VideoCounterRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Write-behind view counter. Views are summed in memory and written with one batched
+// "view_count = view_count + ?" per video on every flush, so a view ping never touches the database.
+// Each thread updates one of several shards, which keeps a viral video from serialising every request
+// on a single map entry. merge() and remove() are atomic per key, so draining a shard loses no views.
+@Slf4j
+@Service
+public class ViewCountAggregator {
+
+    private static final int SHARDS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+
+    @Autowired
+    private VideoCounterRepository videoCounterRepository;
+
+    @Autowired
+    private VideoMetadataCache videoMetadataCache;
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @Autowired
+    private LiveEventHub liveEventHub;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<UUID, Long>[] shards = new ConcurrentHashMap[SHARDS];
+
+    public ViewCountAggregator() {
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    public void recordView(UUID videoId) {
+        shardForCurrentThread().merge(videoId, 1L, Long::sum);
+        serviceMetrics.recordView();
+    }
+
+    // Views recorded but not yet flushed, so reads can include them
+    public long pendingViews(UUID videoId) {
+        long pending = 0;
+        for (ConcurrentHashMap<UUID, Long> shard : shards) {
+            pending += shard.getOrDefault(videoId, 0L);
+        }
+        return pending;
+    }
+
+    @Scheduled(fixedDelayString = "${views.flush-interval-ms:1000}")
+    public void flush() {
+        Map<UUID, Long> deltas = new HashMap<>();
+        for (ConcurrentHashMap<UUID, Long> shard : shards) {
+            for (UUID videoId : shard.keySet()) {
+                Long delta = shard.remove(videoId);
+                if (delta != null) {
+                    deltas.merge(videoId, delta, Long::sum);
+                }
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            videoCounterRepository.addViewCounts(deltas);
+            videoMetadataCache.evictAll(deltas.keySet());
+            serviceMetrics.recordViewFlush(deltas.values().stream().mapToLong(Long::longValue).sum(), true);
+            log.debug("Flushed view counts for {} video(s)", deltas.size());
+            // Pushed once per flush rather than per view, so a viral video costs one event a second
+            deltas.forEach((videoId, delta) -> liveEventHub.publish(LiveEventHub.videoTopic(videoId), "views",
+                    Map.of("videoId", videoId, "viewsAdded", delta)));
+        } catch (Exception e) {
+            // Put the views back so the next flush retries them
+            log.error("Failed to flush view counts for {} video(s): {}", deltas.size(), e.getMessage());
+            serviceMetrics.recordViewFlush(0, false);
+            ConcurrentHashMap<UUID, Long> shard = shardForCurrentThread();
+            deltas.forEach((videoId, delta) -> shard.merge(videoId, delta, Long::sum));
+        }
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+
+    // Identity hash rather than Thread.getId(), which is deprecated and whose replacement needs Java 19. It is
+    // fixed for the thread's lifetime and works the same for platform and virtual threads.
+    private ConcurrentHashMap<UUID, Long> shardForCurrentThread() {
+        int hash = System.identityHashCode(Thread.currentThread());
+        return shards[(hash ^ (hash >>> 16)) & (SHARDS - 1)];
+    }
+}
@@ -0,0 +1,88 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.dto.ViewsLikesHistogramDTO;
+import com.vstream.video_service.repository.VideoStatsRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds the views-vs-likes chart as a log2 histogram in one streaming pass. Counts are first binned by
+// bit length (0, 1, 2-3, 4-7, ...) into a fixed 64x64 grid, then adjacent bins are merged so each axis
+// has at most the requested number of bins over the range actually seen. The response size depends only
+// on the bin count, never on the number of videos.
+@Service
+public class ViewsLikesHistogramService {
+
+    public static final int MAX_BINS = 64;
+
+    @Autowired
+    private VideoStatsRepository videoStatsRepository;
+
+    public ViewsLikesHistogramDTO getHistogram(int bins, String uploaderId, LocalDateTime from, LocalDateTime to) {
+        if (bins < 1 || bins > MAX_BINS) {
+            throw new IllegalArgumentException("bins must be between 1 and " + MAX_BINS);
+        }
+
+        long[] grid = new long[MAX_BINS * MAX_BINS];
+        int[] maxBins = new int[2];
+        long[] total = new long[1];
+        videoStatsRepository.forEachViewsAndLikes(uploaderId, from, to, (views, likes) -> {
+            int viewBin = log2Bin(views);
+            int likeBin = log2Bin(likes);
+            grid[viewBin * MAX_BINS + likeBin]++;
+            maxBins[0] = Math.max(maxBins[0], viewBin);
+            maxBins[1] = Math.max(maxBins[1], likeBin);
+            total[0]++;
+        });
+
+        // Fine bins merged into one output bin per axis
+        int viewGroup = (maxBins[0] + bins) / bins;
+        int likeGroup = (maxBins[1] + bins) / bins;
+        int viewBins = maxBins[0] / viewGroup + 1;
+        int likeBins = maxBins[1] / likeGroup + 1;
+
+        long[] merged = new long[viewBins * likeBins];
+        for (int viewBin = 0; viewBin <= maxBins[0]; viewBin++) {
+            for (int likeBin = 0; likeBin <= maxBins[1]; likeBin++) {
+                merged[(viewBin / viewGroup) * likeBins + likeBin / likeGroup] += grid[viewBin * MAX_BINS + likeBin];
+            }
+        }
+
+        List<long[]> cells = new ArrayList<>();
+        for (int i = 0; i < merged.length; i++) {
+            if (merged[i] > 0) {
+                cells.add(new long[]{i / likeBins, i % likeBins, merged[i]});
+            }
+        }
+
+        ViewsLikesHistogramDTO histogramDTO = new ViewsLikesHistogramDTO();
+        histogramDTO.setTotalVideos(total[0]);
+        histogramDTO.setViewEdges(edges(viewBins, viewGroup));
+        histogramDTO.setLikeEdges(edges(likeBins, likeGroup));
+        histogramDTO.setCells(cells);
+        return histogramDTO;
+    }
+
+    // 0 for 0, otherwise the bit length: 1 for 1, 2 for 2-3, 3 for 4-7 and so on
+    private static int log2Bin(long value) {
+        return value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    // Lower bound of each merged bin followed by the exclusive upper bound of the last one
+    private static long[] edges(int binCount, int group) {
+        long[] edges = new long[binCount + 1];
+        for (int i = 0; i <= binCount; i++) {
+            edges[i] = lowerBound(i * group);
+        }
+        return edges;
+    }
+
+    private static long lowerBound(int fineBin) {
+        if (fineBin == 0) return 0;
+        if (fineBin >= 64) return Long.MAX_VALUE;
+        return 1L << (fineBin - 1);
+    }
+}
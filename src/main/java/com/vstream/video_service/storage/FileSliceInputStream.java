@@ -0,0 +1,54 @@
+package com.vstream.video_service.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// length bytes of a file from start on, read through a channel of its own
+final class FileSliceInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    private FileSliceInputStream(FileChannel fileChannel, long length) {
+        super(Channels.newInputStream(fileChannel));
+        this.remaining = length;
+    }
+
+    static FileSliceInputStream open(Path file, long start, long length) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            fileChannel.position(start);
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+        return new FileSliceInputStream(fileChannel, length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int read = super.read();
+        if (read >= 0) {
+            remaining--;
+        }
+        return read;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        int read = super.read(buffer, offset, (int) Math.min(count, remaining));
+        if (read > 0) {
+            remaining -= read;
+        }
+        return read;
+    }
+}
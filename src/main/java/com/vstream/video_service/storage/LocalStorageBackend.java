@@ -0,0 +1,154 @@
+package com.vstream.video_service.storage;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Objects are files under storage.local.root at their key, so fetch and stageDirectory hand out the real
+// paths and ffmpeg reads and writes in place. A directory emptied by deleting its last object is removed too;
+// shard and uploader directories above it are kept, they are few and likely to be reused.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalStorageBackend implements StorageBackend {
+
+    @Value("${storage.local.root}")
+    private String localRoot;
+
+    private Path root;
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Paths.get(localRoot).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        log.info("Local storage backend at {}", root);
+    }
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        try {
+            // One stat call gives existence, size and mtime
+            BasicFileAttributes attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+            return attributes.isRegularFile()
+                    ? new StoredObject(attributes.size(), attributes.lastModifiedTime().toMillis()) : null;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.isRegularFile(resolve(key));
+    }
+
+    @Override
+    public InputStream openRange(String key, long start, long length) throws IOException {
+        return FileSliceInputStream.open(resolve(key), start, length);
+    }
+
+    @Override
+    public void putFile(String key, Path file) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Spool on another filesystem, fall back to copy and delete
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Path path = resolve(key);
+        Files.deleteIfExists(path);
+        try {
+            Files.deleteIfExists(path.getParent());
+        } catch (DirectoryNotEmptyException e) {
+            // Other objects still live there
+        }
+    }
+
+    @Override
+    public void deletePrefix(String prefix) throws IOException {
+        Path directory = resolve(prefix);
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        try (Stream<Path> children = Files.list(resolve(prefix))) {
+            return children.map(child -> child.getFileName().toString()).toList();
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return resolve(key);
+    }
+
+    @Override
+    public LocalFile fetch(String key) throws IOException {
+        Path path = resolve(key);
+        if (!Files.isRegularFile(path)) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return new LocalFile() {
+            @Override
+            public Path path() {
+                return path;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public LocalDirectory stageDirectory(String prefix) throws IOException {
+        Path directory = resolve(prefix);
+        Files.createDirectories(directory);
+        return new LocalDirectory() {
+            @Override
+            public Path path() {
+                return directory;
+            }
+
+            @Override
+            public void commit() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    // Keys come from StorageKeys, but parts of them (uploader ids, file names) come from requests
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IllegalArgumentException("Storage key outside the storage root: " + key);
+        }
+        return path;
+    }
+}
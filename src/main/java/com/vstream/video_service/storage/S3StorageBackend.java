@@ -0,0 +1,310 @@
+package com.vstream.video_service.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.core.sync.ResponseTransformer;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// S3-compatible object storage (AWS S3, MinIO, Ceph RGW, ...). Files above the multipart threshold, which is
+// most sources and the larger HLS segments, are sent in parts so a failed part is retried on its own rather
+// than restarting the whole upload. Path-style addressing is used since MinIO and most self-hosted services
+// do not serve bucket subdomains.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "s3")
+public class S3StorageBackend implements StorageBackend {
+
+    // DeleteObjects limit
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    @Autowired
+    private SpoolDirectory spoolDirectory;
+
+    @Value("${storage.s3.endpoint:}")
+    private String endpoint;
+
+    @Value("${storage.s3.region}")
+    private String region;
+
+    @Value("${storage.s3.bucket}")
+    private String bucket;
+
+    @Value("${storage.s3.access-key:}")
+    private String accessKey;
+
+    @Value("${storage.s3.secret-key:}")
+    private String secretKey;
+
+    @Value("${storage.s3.multipart-threshold-bytes}")
+    private long multipartThresholdBytes;
+
+    @Value("${storage.s3.part-size-bytes}")
+    private long partSizeBytes;
+
+    private S3Client s3Client;
+
+    @PostConstruct
+    void init() {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(true);
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        // Without explicit keys fall back to the usual environment/profile/instance role chain
+        builder.credentialsProvider(StringUtils.hasText(accessKey)
+                ? StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey))
+                : DefaultCredentialsProvider.create());
+        s3Client = builder.build();
+        log.info("S3 storage backend, bucket {} at {}", bucket, StringUtils.hasText(endpoint) ? endpoint : region);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        s3Client.close();
+    }
+
+    @Override
+    public StoredObject stat(String key) throws IOException {
+        try {
+            HeadObjectResponse response = s3Client.headObject(request -> request.bucket(bucket).key(key));
+            return new StoredObject(response.contentLength(), response.lastModified().toEpochMilli());
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            // HEAD responses have no body, so a missing key only shows up as the status code
+            if (e.statusCode() == 404) {
+                return null;
+            }
+            throw new IOException("HEAD " + key + " failed", e);
+        }
+    }
+
+    @Override
+    public boolean exists(String key) throws IOException {
+        return stat(key) != null;
+    }
+
+    @Override
+    public InputStream openRange(String key, long start, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        try {
+            return s3Client.getObject(request -> request.bucket(bucket).key(key)
+                    .range("bytes=" + start + "-" + (start + length - 1)));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        } catch (S3Exception e) {
+            throw new IOException("GET " + key + " failed", e);
+        }
+    }
+
+    @Override
+    public void putFile(String key, Path file) throws IOException {
+        long size = Files.size(file);
+        try {
+            if (size > multipartThresholdBytes) {
+                putMultipart(key, file, size);
+            } else {
+                s3Client.putObject(request -> request.bucket(bucket).key(key), RequestBody.fromFile(file));
+            }
+        } catch (S3Exception e) {
+            throw new IOException("PUT " + key + " failed", e);
+        }
+        Files.delete(file);
+    }
+
+    private void putMultipart(String key, Path file, long size) throws IOException {
+        String uploadId = s3Client.createMultipartUpload(request -> request.bucket(bucket).key(key)).uploadId();
+        try {
+            List<CompletedPart> parts = new ArrayList<>();
+            int partNumber = 1;
+            for (long offset = 0; offset < size; offset += partSizeBytes, partNumber++) {
+                long partOffset = offset;
+                long partSize = Math.min(partSizeBytes, size - offset);
+                int number = partNumber;
+                // The SDK retries a failed part by asking the provider for the body again, so every attempt opens
+                // its own stream over the part's slice of the file; nothing beyond the stream buffer is in memory
+                List<InputStream> attempts = new ArrayList<>();
+                String eTag;
+                try {
+                    eTag = s3Client.uploadPart(request -> request.bucket(bucket).key(key)
+                                    .uploadId(uploadId).partNumber(number).contentLength(partSize),
+                            RequestBody.fromContentProvider(() -> {
+                                try {
+                                    InputStream slice = FileSliceInputStream.open(file, partOffset, partSize);
+                                    attempts.add(slice);
+                                    return slice;
+                                } catch (IOException e) {
+                                    throw new UncheckedIOException(e);
+                                }
+                            }, partSize, "application/octet-stream")).eTag();
+                } finally {
+                    for (InputStream attempt : attempts) {
+                        attempt.close();
+                    }
+                }
+                parts.add(CompletedPart.builder().partNumber(number).eTag(eTag).build());
+            }
+            s3Client.completeMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()));
+        } catch (Exception e) {
+            // Otherwise the uploaded parts are kept, and billed, until a bucket lifecycle rule removes them
+            try {
+                s3Client.abortMultipartUpload(request -> request.bucket(bucket).key(key).uploadId(uploadId));
+            } catch (Exception abortException) {
+                log.warn("Could not abort multipart upload {} of {}", uploadId, key, abortException);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3Client.deleteObject(request -> request.bucket(bucket).key(key));
+        } catch (S3Exception e) {
+            throw new IOException("DELETE " + key + " failed", e);
+        }
+    }
+
+    @Override
+    public void deletePrefix(String prefix) throws IOException {
+        try {
+            List<ObjectIdentifier> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+            for (S3Object object : s3Client.listObjectsV2Paginator(request -> request.bucket(bucket)
+                    .prefix(prefix + "/")).contents()) {
+                batch.add(ObjectIdentifier.builder().key(object.key()).build());
+                if (batch.size() == DELETE_BATCH_SIZE) {
+                    deleteBatch(batch);
+                }
+            }
+            if (!batch.isEmpty()) {
+                deleteBatch(batch);
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Deleting " + prefix + "/ failed", e);
+        }
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+        String listPrefix = prefix + "/";
+        List<String> names = new ArrayList<>();
+        try {
+            // With a delimiter, deeper keys are rolled up into one common prefix per child "directory"
+            for (ListObjectsV2Response page : s3Client.listObjectsV2Paginator(request -> request.bucket(bucket)
+                    .prefix(listPrefix).delimiter("/"))) {
+                for (CommonPrefix commonPrefix : page.commonPrefixes()) {
+                    String name = commonPrefix.prefix().substring(listPrefix.length());
+                    names.add(name.substring(0, name.length() - 1));
+                }
+                for (S3Object object : page.contents()) {
+                    names.add(object.key().substring(listPrefix.length()));
+                }
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Listing " + listPrefix + " failed", e);
+        }
+        return names;
+    }
+
+    private void deleteBatch(List<ObjectIdentifier> batch) {
+        List<ObjectIdentifier> objects = List.copyOf(batch);
+        s3Client.deleteObjects(request -> request.bucket(bucket)
+                .delete(delete -> delete.objects(objects).quiet(true)));
+        batch.clear();
+    }
+
+    @Override
+    public Path localPath(String key) {
+        return null;
+    }
+
+    @Override
+    public LocalFile fetch(String key) throws IOException {
+        Path file = spoolDirectory.newFile("-" + Path.of(key).getFileName());
+        try {
+            s3Client.getObject(request -> request.bucket(bucket).key(key), ResponseTransformer.toFile(file));
+        } catch (NoSuchKeyException e) {
+            Files.deleteIfExists(file);
+            throw new NoSuchFileException(key);
+        } catch (S3Exception e) {
+            Files.deleteIfExists(file);
+            throw new IOException("GET " + key + " failed", e);
+        }
+        return new LocalFile() {
+            @Override
+            public Path path() {
+                return file;
+            }
+
+            @Override
+            public void close() throws IOException {
+                Files.deleteIfExists(file);
+            }
+        };
+    }
+
+    @Override
+    public LocalDirectory stageDirectory(String prefix) throws IOException {
+        Path directory = spoolDirectory.newDirectory();
+        return new LocalDirectory() {
+            @Override
+            public Path path() {
+                return directory;
+            }
+
+            @Override
+            public void commit() throws IOException {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(directory)) {
+                    files = walk.filter(Files::isRegularFile).toList();
+                }
+                for (Path file : files) {
+                    String relativePath = directory.relativize(file).toString().replace('\\', '/');
+                    putFile(prefix + "/" + relativePath, file);
+                }
+            }
+
+            @Override
+            public void close() {
+                FileSystemUtils.deleteRecursively(directory.toFile());
+            }
+        };
+    }
+}
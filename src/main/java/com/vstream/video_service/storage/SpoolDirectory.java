@@ -0,0 +1,46 @@
+package com.vstream.video_service.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+// Node-local scratch space: uploads being received and hashed, and local copies for ffmpeg when the storage
+// backend is remote. With the local backend it should be on the same filesystem as storage.local.root so
+// putFile is a rename rather than a copy.
+@Component
+public class SpoolDirectory {
+
+    @Value("${storage.spool-dir}")
+    private String spoolDir;
+
+    private Path root;
+
+    @PostConstruct
+    void init() throws IOException {
+        root = Paths.get(spoolDir).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+    }
+
+    public Path resolve(String relativePath) {
+        return root.resolve(relativePath);
+    }
+
+    // A path for a new file in the spool; the file itself is not created
+    public Path newFile(String suffix) throws IOException {
+        Path directory = root.resolve("tmp");
+        Files.createDirectories(directory);
+        return directory.resolve(UUID.randomUUID() + suffix);
+    }
+
+    public Path newDirectory() throws IOException {
+        Path directory = root.resolve("tmp").resolve(UUID.randomUUID().toString());
+        Files.createDirectories(directory);
+        return directory;
+    }
+}
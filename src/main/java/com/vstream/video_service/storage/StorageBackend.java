@@ -0,0 +1,62 @@
+package com.vstream.video_service.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+// Where uploaded sources, HLS output and thumbnails live, addressed by the keys built in StorageKeys.
+// storage.backend picks the implementation: local (default) keeps objects as files under one root, s3 talks
+// to any S3-compatible service. ffmpeg only works on local files, so fetch and stageDirectory give it local
+// paths: the stored objects themselves on the local backend, spool copies that are synced on the others.
+public interface StorageBackend {
+
+    // Size and modification time of an object, or null if it does not exist
+    StoredObject stat(String key) throws IOException;
+
+    boolean exists(String key) throws IOException;
+
+    // length bytes starting at start; the caller closes the stream
+    InputStream openRange(String key, long start, long length) throws IOException;
+
+    // Moves a local file into storage under key, replacing any existing object; the file is gone afterwards
+    void putFile(String key, Path file) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    // Deletes every object under prefix + "/"
+    void deletePrefix(String prefix) throws IOException;
+
+    // Names of the objects and sub-prefixes directly under prefix + "/", one level deep; empty if there are none
+    List<String> list(String prefix) throws IOException;
+
+    // The object as a file on this node, if the backend keeps it as one, so it can be sent with sendfile
+    Path localPath(String key);
+
+    // A local file with the object's content, downloaded if needed
+    LocalFile fetch(String key) throws IOException;
+
+    // A local directory whose files end up under prefix once committed
+    LocalDirectory stageDirectory(String prefix) throws IOException;
+
+    record StoredObject(long size, long lastModified) {
+    }
+
+    interface LocalFile extends AutoCloseable {
+        Path path();
+
+        // Removes the local copy if one was made
+        @Override
+        void close() throws IOException;
+    }
+
+    interface LocalDirectory extends AutoCloseable {
+        Path path();
+
+        void commit() throws IOException;
+
+        // Removes the local copy if one was made, committed or not
+        @Override
+        void close() throws IOException;
+    }
+}
@@ -0,0 +1,55 @@
+package com.vstream.video_service.storage;
+
+import java.util.UUID;
+
+// Object key layout. video_metadata.video_url, transcode_jobs.source_path and thumbnail_url hold paths relative
+// to the video and thumbnail roots, as they always have, so they map to keys without a migration. Anything
+// addressed by a hash is sharded on its first two hex digits, which keeps every directory (or listing prefix)
+// to a few thousand entries however many videos there are.
+public final class StorageKeys {
+
+    public static final String VIDEO_ROOT = "video_storage";
+    public static final String THUMBNAIL_ROOT = "thumbnail_storage";
+    public static final String CONTENT_DIRECTORY = "content";
+    public static final String SOURCE_NAME = "source.mp4";
+    public static final String HLS_DIRECTORY = "hls";
+
+    private StorageKeys() {
+    }
+
+    public static String video(String relativePath) {
+        return VIDEO_ROOT + "/" + relativePath;
+    }
+
+    public static String thumbnail(String relativePath) {
+        return THUMBNAIL_ROOT + "/" + relativePath;
+    }
+
+    public static String child(String prefix, String... names) {
+        StringBuilder key = new StringBuilder(prefix);
+        for (String name : names) {
+            key.append('/').append(name);
+        }
+        return key.toString();
+    }
+
+    public static String shard(String hash) {
+        return hash.substring(0, 2) + "/" + hash;
+    }
+
+    // Relative to VIDEO_ROOT, see ContentStoreService
+    public static String contentDirectory(String contentHash) {
+        return CONTENT_DIRECTORY + "/" + shard(contentHash);
+    }
+
+    public static String contentSource(String contentHash) {
+        return contentDirectory(contentHash) + "/" + SOURCE_NAME;
+    }
+
+    // Prefix of a video's HLS output: shared per content, or per video for uploads from before content addressing
+    public static String hls(String uploaderId, UUID videoId, String contentHash) {
+        return contentHash != null
+                ? video(contentDirectory(contentHash) + "/" + HLS_DIRECTORY)
+                : video(uploaderId + "/" + videoId);
+    }
+}
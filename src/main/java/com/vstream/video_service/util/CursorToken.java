@@ -0,0 +1,49 @@
+package com.vstream.video_service.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.UUID;
+
+// Opaque continuation token for keyset pagination: the sort timestamp and id of the last row returned.
+// Clients pass it back unchanged; the layout is an implementation detail.
+public record CursorToken(LocalDateTime timestamp, UUID id) {
+
+    // Sorts after every real row, used for the first page of a descending listing
+    public static final CursorToken DESCENDING_START = new CursorToken(LocalDateTime.of(9999, 12, 31, 23, 59, 59),
+            new UUID(-1L, -1L));
+
+    // Sorts before every real row, used for the first page of an ascending listing
+    public static final CursorToken ASCENDING_START = new CursorToken(LocalDateTime.of(1000, 1, 1, 0, 0),
+            new UUID(0L, 0L));
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(28)
+                .putLong(timestamp.toEpochSecond(ZoneOffset.UTC))
+                .putInt(timestamp.getNano())
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    public static CursorToken decode(String token) {
+        return decode(token, DESCENDING_START);
+    }
+
+    // Null or empty means start from the beginning; anything malformed is an IllegalArgumentException
+    public static CursorToken decode(String token, CursorToken start) {
+        if (token == null || token.isEmpty()) {
+            return start;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+            LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+            return new CursorToken(timestamp, new UUID(buffer.getLong(), buffer.getLong()));
+        } catch (BufferUnderflowException | DateTimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+    }
+}
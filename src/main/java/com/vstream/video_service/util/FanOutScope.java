@@ -0,0 +1,114 @@
+package com.vstream.video_service.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Small stand-in for StructuredTaskScope.ShutdownOnFailure, which is still a preview API on Java 21.
+// Subtasks forked in a scope are joined together; the first failure cancels (interrupts) the others and
+// is rethrown, and closing the scope cancels anything still running and waits for it to stop, so no subtask
+// outlives its caller.
+public class FanOutScope implements AutoCloseable {
+
+    private final Executor executor;
+    private final List<Subtask<?>> subtasks = new ArrayList<>();
+    private final BlockingQueue<Subtask<?>> completed = new LinkedBlockingQueue<>();
+
+    public FanOutScope(Executor executor) {
+        this.executor = executor;
+    }
+
+    public <T> Future<T> fork(Callable<T> task) {
+        Subtask<T> subtask = new Subtask<>(task);
+        subtasks.add(subtask);
+        executor.execute(subtask);
+        return subtask;
+    }
+
+    // Waits for every forked subtask, in completion order so a failure is seen as soon as it happens
+    public void join() throws Exception {
+        try {
+            for (int i = 0; i < subtasks.size(); i++) {
+                completed.take().get();
+            }
+        } catch (ExecutionException e) {
+            cancelAll();
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+        boolean interrupted = false;
+        for (Subtask<?> subtask : subtasks) {
+            // A cancelled Future reports done at once; this waits for the subtask's thread to actually leave it
+            while (true) {
+                try {
+                    subtask.awaitExit();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void cancelAll() {
+        for (Subtask<?> subtask : subtasks) {
+            subtask.cancel(true);
+        }
+    }
+
+    private final class Subtask<T> extends FutureTask<T> {
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CountDownLatch exited = new CountDownLatch(1);
+
+        private Subtask(Callable<T> task) {
+            super(task);
+        }
+
+        @Override
+        public void run() {
+            // Lost to awaitExit: the scope was closed before the executor got to this subtask
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                super.run();
+            } finally {
+                exited.countDown();
+            }
+        }
+
+        @Override
+        protected void done() {
+            completed.add(this);
+        }
+
+        // Never started subtasks are claimed here so they cannot start later; started ones are waited for
+        private void awaitExit() throws InterruptedException {
+            if (claimed.compareAndSet(false, true)) {
+                return;
+            }
+            exited.await();
+        }
+    }
+}
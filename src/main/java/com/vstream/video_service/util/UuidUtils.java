@@ -0,0 +1,24 @@
+package com.vstream.video_service.util;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+// UUID primary keys are stored as binary(16) in the same big-endian layout Hibernate uses,
+// this converts them for plain JDBC statements
+public final class UuidUtils {
+
+    private UuidUtils() {
+    }
+
+    public static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
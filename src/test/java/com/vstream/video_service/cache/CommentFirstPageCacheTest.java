@@ -0,0 +1,174 @@
+package com.vstream.video_service.cache;
+
+import com.vstream.video_service.dto.CommentDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommentFirstPageCacheTest {
+
+    private CommentFirstPageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CommentFirstPageCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxVideos", 2);
+        ReflectionTestUtils.setField(cache, "pageSize", 3);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 60L);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+    }
+
+    private static CommentDTO comment(UUID videoId, int minute) {
+        CommentDTO comment = new CommentDTO();
+        comment.setCommentId(UUID.randomUUID());
+        comment.setVideoId(videoId);
+        comment.setUserId(UUID.randomUUID());
+        comment.setContent("comment " + minute);
+        comment.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, minute));
+        comment.setReplyCount(0L);
+        return comment;
+    }
+
+    private void load(UUID videoId, List<CommentDTO> comments, boolean hasMore) {
+        cache.put(videoId, comments, hasMore, cache.version(videoId));
+    }
+
+    @Test
+    void writeToAnotherVideoDoesNotRejectALoad() {
+        UUID videoId = UUID.randomUUID();
+        UUID otherVideoId = UUID.randomUUID();
+        long version = cache.version(videoId);
+
+        cache.commentAdded(comment(otherVideoId, 1));
+        cache.put(videoId, List.of(comment(videoId, 0)), false, version);
+
+        assertNotNull(cache.get(videoId, 3));
+    }
+
+    @Test
+    void writeToTheSameVideoRejectsALoadThatRaced() {
+        UUID videoId = UUID.randomUUID();
+        long version = cache.version(videoId);
+
+        cache.commentAdded(comment(videoId, 1));
+        cache.put(videoId, List.of(comment(videoId, 0)), false, version);
+
+        assertNull(cache.get(videoId, 3));
+    }
+
+    @Test
+    void forgottenWriteStillRejectsALoadThatRaced() {
+        UUID videoId = UUID.randomUUID();
+        long version = cache.version(videoId);
+
+        cache.commentAdded(comment(videoId, 1));
+        // maxVideos is 2, so the fifth tracked video trims videoId from the tracked writes
+        for (int minute = 2; minute < 6; minute++) {
+            cache.commentAdded(comment(UUID.randomUUID(), minute));
+        }
+        assertFalse(((Map<?, ?>) ReflectionTestUtils.getField(cache, "lastWrites")).containsKey(videoId));
+        cache.put(videoId, List.of(comment(videoId, 0)), false, version);
+
+        assertNull(cache.get(videoId, 3));
+    }
+
+    @Test
+    void evictAllRejectsLoadsOfThoseVideosOnly() {
+        UUID videoId = UUID.randomUUID();
+        UUID otherVideoId = UUID.randomUUID();
+        long version = cache.version(videoId);
+        long otherVersion = cache.version(otherVideoId);
+
+        cache.evictAll(List.of(videoId));
+        cache.put(videoId, List.of(comment(videoId, 0)), false, version);
+        cache.put(otherVideoId, List.of(comment(otherVideoId, 0)), false, otherVersion);
+
+        assertNull(cache.get(videoId, 3));
+        assertNotNull(cache.get(otherVideoId, 3));
+    }
+
+    @Test
+    void newCommentIsInsertedAndTheOldestPushedOut() {
+        UUID videoId = UUID.randomUUID();
+        CommentDTO newest = comment(videoId, 30);
+        CommentDTO middle = comment(videoId, 20);
+        CommentDTO oldest = comment(videoId, 10);
+        load(videoId, List.of(newest, middle, oldest), false);
+
+        CommentDTO added = comment(videoId, 25);
+        cache.commentAdded(added);
+
+        CommentFirstPageCache.CachedPage page = cache.get(videoId, 3);
+        assertEquals(List.of(newest.getCommentId(), added.getCommentId(), middle.getCommentId()),
+                page.comments().stream().map(CommentDTO::getCommentId).toList());
+        assertTrue(page.hasMore());
+    }
+
+    @Test
+    void deleteFromAFullPageDropsIt() {
+        UUID videoId = UUID.randomUUID();
+        CommentDTO first = comment(videoId, 30);
+        load(videoId, List.of(first, comment(videoId, 20), comment(videoId, 10)), true);
+
+        cache.commentDeleted(videoId, first.getCommentId());
+
+        assertNull(cache.get(videoId, 3));
+    }
+
+    @Test
+    void shorterRequestIsServedFromALongerPage() {
+        UUID videoId = UUID.randomUUID();
+        load(videoId, List.of(comment(videoId, 30), comment(videoId, 20)), false);
+
+        CommentFirstPageCache.CachedPage page = cache.get(videoId, 1);
+
+        assertEquals(1, page.comments().size());
+        assertTrue(page.hasMore());
+        assertFalse(cache.get(videoId, 3).hasMore());
+    }
+
+    @Test
+    void videosLoadedAndPatchedConcurrentlyKeepTheirOwnComments() throws Exception {
+        ReflectionTestUtils.setField(cache, "maxVideos", 100);
+        ReflectionTestUtils.invokeMethod(cache, "init");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CommentDTO>> added = new ArrayList<>();
+            List<UUID> videoIds = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                UUID videoId = UUID.randomUUID();
+                videoIds.add(videoId);
+                added.add(executor.submit(() -> {
+                    load(videoId, List.of(comment(videoId, 10)), false);
+                    CommentDTO comment = comment(videoId, 20);
+                    cache.commentAdded(comment);
+                    return comment;
+                }));
+            }
+            for (int i = 0; i < videoIds.size(); i++) {
+                UUID addedId = added.get(i).get().getCommentId();
+                CommentFirstPageCache.CachedPage page = cache.get(videoIds.get(i), 3);
+                assertEquals(addedId, page.comments().get(0).getCommentId());
+                assertEquals(2, page.comments().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.vstream.video_service.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HlsSegmentCacheTest {
+
+    private static final int KB = 1024;
+
+    private HlsSegmentCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = newCache(64 * KB, 8 * KB);
+    }
+
+    private static HlsSegmentCache newCache(long maxBytes, long maxEntryBytes) {
+        HlsSegmentCache cache = new HlsSegmentCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+        ReflectionTestUtils.setField(cache, "maxEntryBytes", maxEntryBytes);
+        ReflectionTestUtils.setField(cache, "windowPercent", 1);
+        cache.init();
+        return cache;
+    }
+
+    private static HlsSegmentCache.InputStreamSupplier bytes(int size) {
+        return () -> new ByteArrayInputStream(new byte[size]);
+    }
+
+    @Test
+    void firstRequestIsNotAdmittedForLoading() {
+        assertNull(cache.get("a/seg0.ts"));
+        assertFalse(cache.admits("a/seg0.ts", KB));
+
+        assertNull(cache.get("a/seg0.ts"));
+        assertTrue(cache.admits("a/seg0.ts", KB));
+    }
+
+    @Test
+    void oversizedFilesAreNeverAdmitted() {
+        for (int i = 0; i < 5; i++) {
+            cache.get("a/big.ts");
+        }
+        assertFalse(cache.admits("a/big.ts", 9 * KB));
+    }
+
+    @Test
+    void loadedFileIsServedFromMemory() throws IOException {
+        cache.get("a/seg0.ts");
+        HlsSegmentCache.CachedFile loaded = cache.load("a/seg0.ts", bytes(KB), KB, 42L, 0);
+
+        assertNotNull(loaded);
+        assertSame(loaded, cache.get("a/seg0.ts"));
+        assertEquals(KB, loaded.size());
+        assertEquals(42L, loaded.getLastModified());
+    }
+
+    @Test
+    void truncatedObjectIsNotCached() throws IOException {
+        assertNull(cache.load("a/seg0.ts", bytes(KB / 2), KB, 0L, 0));
+        assertNull(cache.get("a/seg0.ts"));
+    }
+
+    @Test
+    void expiredEntryIsDropped() throws Exception {
+        cache.load("a/index.m3u8", bytes(KB), KB, 0L, 1);
+        Thread.sleep(5);
+
+        assertNull(cache.get("a/index.m3u8"));
+        assertEquals(1L, cache.getStats().get("expirations"));
+    }
+
+    @Test
+    void invalidatePrefixDropsOnlyThatVideo() throws IOException {
+        cache.load("a/seg0.ts", bytes(KB), KB, 0L, 0);
+        cache.load("ab/seg0.ts", bytes(KB), KB, 0L, 0);
+
+        cache.invalidatePrefix("a");
+
+        assertNull(cache.get("a/seg0.ts"));
+        assertNotNull(cache.get("ab/seg0.ts"));
+        assertEquals((long) KB, cache.getStats().get("bytes"));
+    }
+
+    @Test
+    void loadOverlappingAnInvalidationIsNotCached() throws IOException {
+        // The video is re-transcoded while the old segment is still being read
+        HlsSegmentCache.CachedFile loaded = cache.load("a/seg0.ts", () -> {
+            cache.invalidatePrefix("a");
+            return new ByteArrayInputStream(new byte[KB]);
+        }, KB, 0L, 0);
+
+        assertNotNull(loaded);
+        assertNull(cache.get("a/seg0.ts"));
+        assertEquals(0L, cache.getStats().get("bytes"));
+        assertNotNull(cache.load("a/seg0.ts", bytes(KB), KB, 0L, 0));
+        assertNotNull(cache.get("a/seg0.ts"));
+    }
+
+    @Test
+    void admissionDoesNotWaitForABusyLock() throws Exception {
+        cache.get("a/seg0.ts");
+        cache.get("a/seg0.ts");
+        ReentrantLock policyLock = (ReentrantLock) ReflectionTestUtils.getField(cache, "policyLock");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            policyLock.lock();
+            try {
+                assertFalse(executor.submit(() -> cache.admits("a/seg0.ts", KB)).get(5, TimeUnit.SECONDS));
+            } finally {
+                policyLock.unlock();
+            }
+            assertTrue(cache.admits("a/seg0.ts", KB));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void scanDoesNotFlushPopularEntries() throws IOException {
+        for (int i = 0; i < 6; i++) {
+            String key = "hot/seg" + i + ".ts";
+            for (int request = 0; request < 5; request++) {
+                cache.get(key);
+            }
+            cache.load(key, bytes(8 * KB), 8 * KB, 0L, 0);
+        }
+        // Every long-tail segment is requested once, more than the whole capacity in total
+        for (int i = 0; i < 32; i++) {
+            String key = "tail/seg" + i + ".ts";
+            cache.get(key);
+            cache.load(key, bytes(8 * KB), 8 * KB, 0L, 0);
+        }
+
+        int hotHits = 0;
+        for (int i = 0; i < 6; i++) {
+            if (cache.get("hot/seg" + i + ".ts") != null) {
+                hotHits++;
+            }
+        }
+        assertEquals(6, hotHits);
+        assertTrue(cache.getStats().get("bytes") <= 64 * KB);
+    }
+
+    @Test
+    void concurrentMissesLoadAFileOnce() throws Exception {
+        AtomicInteger opened = new AtomicInteger();
+        CountDownLatch firstOpened = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        HlsSegmentCache.InputStreamSupplier slowStream = () -> {
+            opened.incrementAndGet();
+            firstOpened.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayInputStream(new byte[KB]);
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<HlsSegmentCache.CachedFile> first = executor.submit(
+                    () -> cache.load("a/seg0.ts", slowStream, KB, 0L, 0));
+            assertTrue(firstOpened.await(5, TimeUnit.SECONDS));
+            // The second request finds the load in flight and is told to use storage instead
+            assertNull(cache.load("a/seg0.ts", slowStream, KB, 0L, 0));
+            release.countDown();
+            assertNotNull(first.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    void concurrentAccessKeepsAccountingConsistent() throws Exception {
+        HlsSegmentCache small = newCache(32 * KB, 4 * KB);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int thread = 0; thread < futures.length; thread++) {
+                int seed = thread;
+                futures[thread] = executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        String key = "v" + ((i * 31 + seed) % 50) + "/seg.ts";
+                        if (small.get(key) == null && small.admits(key, KB)) {
+                            small.load(key, () -> new ByteArrayInputStream(new byte[KB]), KB, 0L, 0);
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long bytes = small.getStats().get("bytes");
+        assertEquals(bytes, small.getStats().get("entries") * KB);
+        assertTrue(bytes <= 32 * KB);
+    }
+
+    @Test
+    void disabledCacheNeverAdmits() {
+        ReflectionTestUtils.setField(cache, "enabled", false);
+        assertNull(cache.get("a/seg0.ts"));
+        assertNull(cache.get("a/seg0.ts"));
+        assertFalse(cache.admits("a/seg0.ts", KB));
+    }
+}
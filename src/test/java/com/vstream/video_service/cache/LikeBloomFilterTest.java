@@ -0,0 +1,115 @@
+package com.vstream.video_service.cache;
+
+import com.vstream.video_service.model.VideoLike;
+import com.vstream.video_service.repository.VideoLikeRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class LikeBloomFilterTest {
+
+    private final VideoLikeRepository videoLikeRepository = mock(VideoLikeRepository.class);
+
+    private LikeBloomFilter newFilter(boolean enabled, List<VideoLike.VideoLikeId> existingLikes) {
+        when(videoLikeRepository.count()).thenReturn((long) existingLikes.size());
+        when(videoLikeRepository.streamAllIds()).thenReturn(existingLikes.stream());
+        LikeBloomFilter filter = new LikeBloomFilter();
+        ReflectionTestUtils.setField(filter, "videoLikeRepository", videoLikeRepository);
+        ReflectionTestUtils.setField(filter, "enabled", enabled);
+        ReflectionTestUtils.setField(filter, "expectedLikes", 10_000L);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.invokeMethod(filter, "init");
+        filter.load();
+        return filter;
+    }
+
+    @Test
+    void disabledFilterAlwaysAnswersMaybe() {
+        LikeBloomFilter filter = newFilter(false, List.of());
+
+        assertTrue(filter.mightContain(UUID.randomUUID(), UUID.randomUUID()));
+        verifyNoInteractions(videoLikeRepository);
+    }
+
+    @Test
+    void loadedAndAddedLikesAreNeverMissed() {
+        List<VideoLike.VideoLikeId> existing = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            existing.add(new VideoLike.VideoLikeId(UUID.randomUUID(), UUID.randomUUID()));
+        }
+        LikeBloomFilter filter = newFilter(true, existing);
+        UUID userId = UUID.randomUUID();
+        UUID videoId = UUID.randomUUID();
+        filter.add(userId, videoId);
+
+        for (VideoLike.VideoLikeId likeId : existing) {
+            assertTrue(filter.mightContain(likeId.getUserId(), likeId.getVideoId()));
+        }
+        assertTrue(filter.mightContain(userId, videoId));
+    }
+
+    @Test
+    void likeAddedWhileTheSnapshotIsReadIsKept() {
+        UUID userId = UUID.randomUUID();
+        UUID videoId = UUID.randomUUID();
+        when(videoLikeRepository.count()).thenReturn(0L);
+        LikeBloomFilter filter = new LikeBloomFilter();
+        ReflectionTestUtils.setField(filter, "videoLikeRepository", videoLikeRepository);
+        ReflectionTestUtils.setField(filter, "enabled", true);
+        ReflectionTestUtils.setField(filter, "expectedLikes", 10_000L);
+        ReflectionTestUtils.setField(filter, "falsePositiveRate", 0.01);
+        ReflectionTestUtils.invokeMethod(filter, "init");
+        // Committed after the snapshot was taken, so only the add can put it in the filter
+        when(videoLikeRepository.streamAllIds()).thenAnswer(invocation -> {
+            filter.add(userId, videoId);
+            return Stream.<VideoLike.VideoLikeId>empty();
+        });
+
+        assertTrue(filter.mightContain(userId, videoId));
+        filter.load();
+
+        assertTrue(filter.mightContain(userId, videoId));
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTheTarget() {
+        LikeBloomFilter filter = newFilter(true, List.of());
+        for (int i = 0; i < 10_000; i++) {
+            filter.add(UUID.randomUUID(), UUID.randomUUID());
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(UUID.randomUUID(), UUID.randomUUID())) {
+                falsePositives++;
+            }
+        }
+        // 1% target, with room for randomness
+        assertTrue(falsePositives < 300, falsePositives + " false positives");
+    }
+
+    @Test
+    void sameUserOnAnotherVideoIsNotAMatch() {
+        UUID userId = UUID.randomUUID();
+        UUID videoId = UUID.randomUUID();
+        LikeBloomFilter filter = newFilter(true, List.of(new VideoLike.VideoLikeId(userId, videoId)));
+
+        int matches = 0;
+        for (int i = 0; i < 100; i++) {
+            if (filter.mightContain(userId, UUID.randomUUID())) {
+                matches++;
+            }
+        }
+        assertFalse(matches > 5, matches + " matches");
+    }
+}
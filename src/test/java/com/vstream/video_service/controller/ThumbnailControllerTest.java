@@ -0,0 +1,86 @@
+package com.vstream.video_service.controller;
+
+import com.vstream.video_service.dto.VideoMetadataDTO;
+import com.vstream.video_service.service.FileStreamingService;
+import com.vstream.video_service.service.ThumbnailService;
+import com.vstream.video_service.service.VideoMetadataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ThumbnailControllerTest {
+
+    private static final String HASH = "ab" + "0".repeat(62);
+
+    private final VideoMetadataService videoMetadataService = mock(VideoMetadataService.class);
+    private final FileStreamingService fileStreamingService = mock(FileStreamingService.class);
+    private final UUID videoId = UUID.randomUUID();
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/thumbnails/" + videoId);
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private ThumbnailController thumbnailController;
+
+    @BeforeEach
+    void setUp() {
+        ThumbnailService thumbnailService = new ThumbnailService();
+        ReflectionTestUtils.setField(thumbnailService, "webpEnabled", true);
+        thumbnailController = new ThumbnailController();
+        ReflectionTestUtils.setField(thumbnailController, "videoMetadataService", videoMetadataService);
+        ReflectionTestUtils.setField(thumbnailController, "thumbnailService", thumbnailService);
+        ReflectionTestUtils.setField(thumbnailController, "fileStreamingService", fileStreamingService);
+        ReflectionTestUtils.setField(thumbnailController, "thumbnailMaxAgeSeconds", 60L);
+        ReflectionTestUtils.setField(thumbnailController, "versionedMaxAgeSeconds", 31536000L);
+
+        VideoMetadataDTO videoMetadataDTO = new VideoMetadataDTO();
+        videoMetadataDTO.setThumbnailUrl("ab/" + HASH + "/original");
+        when(videoMetadataService.getVideoMetadataDTO(videoId)).thenReturn(videoMetadataDTO);
+    }
+
+    private CacheControl servedWith() throws Exception {
+        ArgumentCaptor<CacheControl> captor = ArgumentCaptor.forClass(CacheControl.class);
+        verify(fileStreamingService).serve(anyString(), any(), captor.capture(), eq(request), eq(response));
+        return captor.getValue();
+    }
+
+    @Test
+    void currentVersionIsCachedAsImmutable() throws Exception {
+        thumbnailController.serveThumbnail(videoId, 320, HASH, request, response);
+
+        assertEquals("max-age=31536000, public, immutable", servedWith().getHeaderValue());
+        assertEquals("nosniff", response.getHeader("X-Content-Type-Options"));
+    }
+
+    @Test
+    void unversionedUrlIsRevalidatedSoon() throws Exception {
+        thumbnailController.serveThumbnail(videoId, null, null, request, response);
+
+        assertEquals("max-age=60, public", servedWith().getHeaderValue());
+    }
+
+    @Test
+    void outdatedVersionIsRedirectedToTheCurrentImage() throws Exception {
+        request.setQueryString("w=320&v=cd" + "0".repeat(62));
+
+        thumbnailController.serveThumbnail(videoId, 320, "cd" + "0".repeat(62), request, response);
+
+        assertEquals(302, response.getStatus());
+        assertEquals("http://localhost/thumbnails/" + videoId + "?w=320&v=" + HASH,
+                response.getHeader(HttpHeaders.LOCATION));
+        verifyNoInteractions(fileStreamingService);
+    }
+}
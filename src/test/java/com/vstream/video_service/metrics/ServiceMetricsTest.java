@@ -0,0 +1,50 @@
+package com.vstream.video_service.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ServiceMetricsTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ServiceMetrics serviceMetrics = new ServiceMetrics(meterRegistry);
+
+    @Test
+    void taggedMetersAreRegisteredOncePerTagSet() {
+        serviceMetrics.recordHlsRequest("segment", 100, 1_000);
+        serviceMetrics.recordHlsRequest("segment", 50, 1_000);
+        serviceMetrics.recordHlsRequest("playlist", 10, 1_000);
+
+        assertEquals(2, meterRegistry.find("vstream.hls.requests").timers().size());
+        assertEquals(2, meterRegistry.get("vstream.hls.requests").tag("type", "segment").timer().count());
+        assertEquals(150.0, meterRegistry.get("vstream.hls.bytes").tag("type", "segment").counter().count());
+    }
+
+    @Test
+    void metersWithTheSameTagValuesUnderDifferentNamesStaySeparate() {
+        serviceMetrics.recordFfmpegRun("encode", 1_000, Duration.ofMillis(2));
+        serviceMetrics.recordFfmpegExit("encode", 0);
+        serviceMetrics.recordFfmpegExit("encode", 0);
+        serviceMetrics.recordFfmpegExit("encode", 1);
+
+        assertEquals(1, meterRegistry.get("vstream.ffmpeg.wall").tag("command", "encode").timer().count());
+        assertEquals(2.0, meterRegistry.get("vstream.ffmpeg.exits").tag("exit.code", "0").counter().count());
+        assertEquals(1.0, meterRegistry.get("vstream.ffmpeg.exits").tag("exit.code", "1").counter().count());
+    }
+
+    @Test
+    void droppedSubscribersAreCountedPerReason() {
+        serviceMetrics.recordEventSubscriberDropped("overflow");
+        serviceMetrics.recordEventSubscriberDropped("overflow");
+        serviceMetrics.recordEventSubscriberDropped("stalled");
+
+        assertEquals(2.0, meterRegistry.get("vstream.events.subscribers.dropped").tag("reason", "overflow")
+                .counter().count());
+        assertEquals(1.0, meterRegistry.get("vstream.events.subscribers.dropped").tag("reason", "stalled")
+                .counter().count());
+    }
+}
@@ -0,0 +1,130 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.repository.AnalyticsRollupRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class AnalyticsRollupServiceTest {
+
+    private final AnalyticsRollupRepository analyticsRollupRepository = mock(AnalyticsRollupRepository.class);
+    private AnalyticsRollupService analyticsRollupService;
+
+    @BeforeEach
+    void setUp() {
+        analyticsRollupService = new AnalyticsRollupService();
+        ReflectionTestUtils.setField(analyticsRollupService, "analyticsRollupRepository", analyticsRollupRepository);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> flushedDeltas() {
+        ArgumentCaptor<Map<String, Long>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(analyticsRollupRepository).addLikeBucketVideos(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    void likeWithinABucketWritesNothing() {
+        analyticsRollupService.recordLikeCountChange(3, 4);
+        analyticsRollupService.flushLikeBuckets();
+
+        verify(analyticsRollupRepository, never()).addLikeBucketVideos(anyMap());
+    }
+
+    @Test
+    void likeAndUnlikeAcrossABoundaryAreFlushedInBucketOrder() {
+        analyticsRollupService.recordLikeCountChange(10, 11);
+        analyticsRollupService.recordLikeCountChange(101, 100);
+        analyticsRollupService.recordLikeCountChange(101, 100);
+        analyticsRollupService.flushLikeBuckets();
+
+        Map<String, Long> deltas = flushedDeltas();
+        assertEquals(List.of("0-10", "100+", "11-50", "51-100"), List.copyOf(deltas.keySet()));
+        assertEquals(Map.of("0-10", -1L, "11-50", 1L, "100+", -2L, "51-100", 2L), deltas);
+    }
+
+    @Test
+    void changesThatCancelOutAreNotWritten() {
+        analyticsRollupService.recordLikeCountChange(10, 11);
+        analyticsRollupService.recordLikeCountChange(11, 10);
+        analyticsRollupService.flushLikeBuckets();
+
+        verify(analyticsRollupRepository, never()).addLikeBucketVideos(anyMap());
+    }
+
+    @Test
+    void bucketChangesWaitForTheCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            analyticsRollupService.recordLikeCountChange(50, 51);
+            analyticsRollupService.flushLikeBuckets();
+            verify(analyticsRollupRepository, never()).addLikeBucketVideos(anyMap());
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCommit();
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        analyticsRollupService.flushLikeBuckets();
+
+        assertEquals(Map.of("11-50", -1L, "51-100", 1L), flushedDeltas());
+    }
+
+    @Test
+    void failedFlushIsRetried() {
+        analyticsRollupService.recordLikeCountChange(10, 11);
+        doThrow(new IllegalStateException("connection reset"))
+                .when(analyticsRollupRepository).addLikeBucketVideos(any());
+        analyticsRollupService.flushLikeBuckets();
+
+        reset(analyticsRollupRepository);
+        analyticsRollupService.flushLikeBuckets();
+
+        assertEquals(Map.of("0-10", -1L, "11-50", 1L), flushedDeltas());
+    }
+
+    @Test
+    void uploadWritesPeriodsAndUploaderInTheTransaction() {
+        analyticsRollupService.recordUpload("alice", LocalDate.of(2024, 1, 15).atStartOfDay());
+
+        verify(analyticsRollupRepository).addUploads(
+                Map.of("day", "2024-01-15", "week", "2024-W3", "month", "2024-1"), 1);
+        verify(analyticsRollupRepository).addUploaderVideos("alice", 1);
+        analyticsRollupService.flushLikeBuckets();
+        verify(analyticsRollupRepository, times(1)).addLikeBucketVideos(Map.of("0-10", 1L));
+    }
+
+    @Test
+    void periodKeysMatchTheChangelogBackfill() {
+        LocalDate uploadDate = LocalDate.of(2024, 7, 4);
+        assertEquals("2024-07-04", AnalyticsRollupService.getPeriodKey(uploadDate, "day"));
+        assertEquals("2024-W27", AnalyticsRollupService.getPeriodKey(uploadDate, "week"));
+        assertEquals("2024-7", AnalyticsRollupService.getPeriodKey(uploadDate, "month"));
+    }
+
+    @Test
+    void likeCountRangesIncludeTheirUpperBound() {
+        assertEquals("0-10", AnalyticsRollupService.getLikeCountRange(10));
+        assertEquals("11-50", AnalyticsRollupService.getLikeCountRange(50));
+        assertEquals("51-100", AnalyticsRollupService.getLikeCountRange(100));
+        assertEquals("100+", AnalyticsRollupService.getLikeCountRange(101));
+    }
+}
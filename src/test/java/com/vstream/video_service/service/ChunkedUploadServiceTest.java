@@ -0,0 +1,155 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.model.UploadSession;
+import com.vstream.video_service.model.UploadSessionStatus;
+import com.vstream.video_service.repository.UploadSessionRepository;
+import com.vstream.video_service.storage.SpoolDirectory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkedUploadServiceTest {
+
+    private final UploadSessionRepository uploadSessionRepository = mock(UploadSessionRepository.class);
+    private final VideoMetadataService videoMetadataService = mock(VideoMetadataService.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final UploadSession uploadSession = new UploadSession();
+    private Path spool;
+    private ChunkedUploadService chunkedUploadService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        spool = Files.createTempDirectory("chunked-upload-test");
+        SpoolDirectory spoolDirectory = new SpoolDirectory();
+        ReflectionTestUtils.setField(spoolDirectory, "spoolDir", spool.toString());
+        ReflectionTestUtils.invokeMethod(spoolDirectory, "init");
+
+        chunkedUploadService = new ChunkedUploadService();
+        ReflectionTestUtils.setField(chunkedUploadService, "uploadSessionRepository", uploadSessionRepository);
+        ReflectionTestUtils.setField(chunkedUploadService, "videoMetadataService", videoMetadataService);
+        ReflectionTestUtils.setField(chunkedUploadService, "spoolDirectory", spoolDirectory);
+        ReflectionTestUtils.setField(chunkedUploadService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(chunkedUploadService, "expireAfterHours", 24L);
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+
+        uploadSession.setSessionId(UUID.randomUUID());
+        uploadSession.setVideoId(UUID.randomUUID());
+        uploadSession.setUploaderId("alice");
+        uploadSession.setVideoUrl("uploads/alice/video.part");
+        uploadSession.setTotalSize(10L);
+        Files.createDirectories(spool.resolve("uploads/alice"));
+        Files.createFile(spool.resolve(uploadSession.getVideoUrl()));
+        when(uploadSessionRepository.findById(uploadSession.getSessionId())).thenReturn(Optional.of(uploadSession));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        FileSystemUtils.deleteRecursively(spool.toFile());
+    }
+
+    private void append(long offset, String chunk) throws IOException {
+        byte[] bytes = chunk.getBytes(StandardCharsets.US_ASCII);
+        chunkedUploadService.appendChunk(uploadSession.getSessionId(), offset, new ByteArrayInputStream(bytes),
+                bytes.length);
+    }
+
+    private void expireWithIdleSessions(UploadSession... sessions) {
+        when(uploadSessionRepository.findByStatusAndUpdatedAtBefore(eq(UploadSessionStatus.ACTIVE), any(), any()))
+                .thenReturn(List.of(sessions));
+        chunkedUploadService.expireAbandonedSessions();
+    }
+
+    @Test
+    void chunksAreWrittenAtTheirOffset() throws IOException {
+        append(0, "01234");
+        append(5, "56789");
+
+        assertEquals("0123456789", Files.readString(spool.resolve(uploadSession.getVideoUrl())));
+        assertEquals(10L, uploadSession.getBytesReceived());
+    }
+
+    @Test
+    void chunkForAFinishedSessionIsRejectedAndReleasesTheSession() throws IOException {
+        uploadSession.setStatus(UploadSessionStatus.EXPIRED);
+        assertThrows(IllegalStateException.class, () -> append(0, "01234"));
+
+        uploadSession.setStatus(UploadSessionStatus.ACTIVE);
+        append(0, "01234");
+        assertEquals(5L, uploadSession.getBytesReceived());
+    }
+
+    @Test
+    void noChunkIsWrittenUntilFinalizeHasCommitted() throws Exception {
+        TransactionSynchronizationManager.initSynchronization();
+        // Fails on the incomplete upload, but the session stays locked until the transaction ends
+        assertThrows(IllegalStateException.class,
+                () -> chunkedUploadService.finalizeSession(uploadSession.getSessionId(), null));
+
+        assertThrows(IllegalStateException.class, () -> append(0, "01234"));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        append(0, "01234");
+        assertEquals(5L, uploadSession.getBytesReceived());
+    }
+
+    @Test
+    void idleSessionIsExpiredAndItsVideoDeleted() {
+        when(uploadSessionRepository.expire(eq(uploadSession.getSessionId()), any(), any())).thenReturn(1);
+
+        expireWithIdleSessions(uploadSession);
+
+        verify(videoMetadataService).deleteVideo(uploadSession.getVideoId().toString());
+    }
+
+    @Test
+    void sessionThatReceivedAChunkMeanwhileIsKept() {
+        when(uploadSessionRepository.expire(eq(uploadSession.getSessionId()), any(), any())).thenReturn(0);
+
+        expireWithIdleSessions(uploadSession);
+
+        verify(videoMetadataService, never()).deleteVideo(anyString());
+    }
+
+    @Test
+    void expiryWaitsForTheCutoff() {
+        LocalDateTime before = LocalDateTime.now().minusHours(24);
+        when(uploadSessionRepository.expire(any(), any(), any())).thenReturn(1);
+
+        expireWithIdleSessions(uploadSession);
+
+        verify(uploadSessionRepository).findByStatusAndUpdatedAtBefore(eq(UploadSessionStatus.ACTIVE),
+                argThat(cutoff -> !cutoff.isBefore(before)
+                        && cutoff.isBefore(LocalDateTime.now().minusHours(23))), any());
+    }
+}
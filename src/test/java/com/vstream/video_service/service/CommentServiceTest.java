@@ -0,0 +1,113 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.cache.CommentFirstPageCache;
+import com.vstream.video_service.cache.VideoMetadataCache;
+import com.vstream.video_service.dto.CommentDTO;
+import com.vstream.video_service.dto.CommentPageDTO;
+import com.vstream.video_service.model.Comment;
+import com.vstream.video_service.repository.CommentBatchRepository;
+import com.vstream.video_service.repository.CommentRepository;
+import com.vstream.video_service.repository.VideoMetadataRepository;
+import com.vstream.video_service.util.CursorToken;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CommentServiceTest {
+
+    private final CommentRepository commentRepository = mock(CommentRepository.class);
+    private final UUID videoId = UUID.randomUUID();
+    private CommentFirstPageCache commentFirstPageCache;
+    private CommentService commentService;
+
+    @BeforeEach
+    void setUp() {
+        commentFirstPageCache = new CommentFirstPageCache();
+        ReflectionTestUtils.setField(commentFirstPageCache, "enabled", true);
+        ReflectionTestUtils.setField(commentFirstPageCache, "maxVideos", 10);
+        ReflectionTestUtils.setField(commentFirstPageCache, "pageSize", 3);
+        ReflectionTestUtils.setField(commentFirstPageCache, "ttlSeconds", 60L);
+        ReflectionTestUtils.invokeMethod(commentFirstPageCache, "init");
+
+        commentService = new CommentService(commentRepository, mock(CommentBatchRepository.class),
+                mock(VideoMetadataRepository.class), mock(VideoMetadataCache.class), commentFirstPageCache,
+                mock(LiveEventHub.class));
+        ReflectionTestUtils.setField(commentService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(commentService, "maxPageSize", 5);
+    }
+
+    private Comment comment(int minute) {
+        Comment comment = new Comment();
+        comment.setCommentId(UUID.randomUUID());
+        comment.setVideoId(videoId);
+        comment.setUserId(UUID.randomUUID());
+        comment.setContent("comment " + minute);
+        comment.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, minute));
+        comment.setUpdatedAt(comment.getCreatedAt());
+        comment.setReplyCount(0L);
+        return comment;
+    }
+
+    private static List<UUID> ids(List<CommentDTO> comments) {
+        return comments.stream().map(CommentDTO::getCommentId).toList();
+    }
+
+    @Test
+    void nextPageStartsAfterTheLastCommentReturned() {
+        List<Comment> rows = List.of(comment(5), comment(4), comment(3));
+        CursorToken after = new CursorToken(LocalDateTime.of(2024, 1, 1, 12, 6), UUID.randomUUID());
+        when(commentRepository.findPageNewestFirst(videoId, after.timestamp(), after.id(), PageRequest.of(0, 3)))
+                .thenReturn(rows);
+
+        CommentPageDTO commentPageDTO = commentService.getCommentsByVideoId(videoId, false, after.encode(), null);
+
+        assertEquals(List.of(rows.get(0).getCommentId(), rows.get(1).getCommentId()),
+                ids(commentPageDTO.getComments()));
+        assertEquals(new CursorToken(rows.get(1).getCreatedAt(), rows.get(1).getCommentId()),
+                CursorToken.decode(commentPageDTO.getNextCursor()));
+    }
+
+    @Test
+    void oldestFirstStartsBeforeEveryComment() {
+        when(commentRepository.findPageOldestFirst(videoId, CursorToken.ASCENDING_START.timestamp(),
+                CursorToken.ASCENDING_START.id(), PageRequest.of(0, 6))).thenReturn(List.of(comment(1)));
+
+        CommentPageDTO commentPageDTO = commentService.getCommentsByVideoId(videoId, true, null, 50);
+
+        assertEquals(1, commentPageDTO.getComments().size());
+        assertNull(commentPageDTO.getNextCursor());
+    }
+
+    @Test
+    void firstPageIsLoadedOnceAndThenServedFromMemory() {
+        List<Comment> rows = List.of(comment(5), comment(4), comment(3), comment(2));
+        when(commentRepository.findPageNewestFirst(eq(videoId), any(), any(), eq(PageRequest.of(0, 4))))
+                .thenReturn(rows);
+
+        CommentPageDTO first = commentService.getCommentsByVideoId(videoId, false, null, null);
+        CommentPageDTO second = commentService.getCommentsByVideoId(videoId, false, null, 3);
+
+        verify(commentRepository, times(1)).findPageNewestFirst(any(), any(), any(), any());
+        assertEquals(2, first.getComments().size());
+        assertEquals(new CursorToken(rows.get(1).getCreatedAt(), rows.get(1).getCommentId()),
+                CursorToken.decode(first.getNextCursor()));
+        // The cache holds three of the four rows it read, so the full cached page still has a successor
+        assertEquals(3, second.getComments().size());
+        assertEquals(new CursorToken(rows.get(2).getCreatedAt(), rows.get(2).getCommentId()),
+                CursorToken.decode(second.getNextCursor()));
+    }
+}
@@ -0,0 +1,158 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.repository.ContentObjectRepository;
+import com.vstream.video_service.storage.SpoolDirectory;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ContentStoreServiceTest {
+
+    // SHA-256 of "hello"
+    private static final String HELLO_HASH = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    private final ContentObjectRepository contentObjectRepository = mock(ContentObjectRepository.class);
+    private final StorageBackend storageBackend = mock(StorageBackend.class);
+    private ContentStoreService contentStoreService;
+    private Path spool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        spool = Files.createTempDirectory("content-store-test");
+        SpoolDirectory spoolDirectory = new SpoolDirectory();
+        ReflectionTestUtils.setField(spoolDirectory, "spoolDir", spool.toString());
+        ReflectionTestUtils.invokeMethod(spoolDirectory, "init");
+
+        contentStoreService = new ContentStoreService();
+        ReflectionTestUtils.setField(contentStoreService, "contentObjectRepository", contentObjectRepository);
+        ReflectionTestUtils.setField(contentStoreService, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(contentStoreService, "spoolDirectory", spoolDirectory);
+        ReflectionTestUtils.setField(contentStoreService, "transactionManager", mock(PlatformTransactionManager.class));
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        TransactionSynchronizationManager.clearSynchronization();
+        try (var files = Files.walk(spool)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private ContentStoreService.StagedContent stageHello() throws Exception {
+        return contentStoreService.stage(new ByteArrayInputStream("hello".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void complete(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(status);
+        }
+    }
+
+    @Test
+    void stageHashesWhileCopying() throws Exception {
+        ContentStoreService.StagedContent staged = stageHello();
+
+        assertEquals(HELLO_HASH, staged.contentHash());
+        assertEquals(5, staged.size());
+        assertEquals(staged, contentStoreService.hashExisting(staged.file()));
+    }
+
+    @Test
+    void newContentIsMovedIntoPlace() throws Exception {
+        ContentStoreService.StagedContent staged = stageHello();
+        when(contentObjectRepository.addReference(eq(HELLO_HASH), eq(5L), any())).thenReturn(1);
+
+        ContentStoreService.ContentRef ref = contentStoreService.claim(staged);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertFalse(ref.duplicate());
+        assertEquals(StorageKeys.contentSource(HELLO_HASH), ref.sourcePath());
+        verify(storageBackend).putFile(StorageKeys.video(ref.sourcePath()), staged.file());
+        verify(storageBackend, never()).deletePrefix(any());
+    }
+
+    @Test
+    void duplicateDropsTheStagedFileOnlyAfterCommit() throws Exception {
+        ContentStoreService.StagedContent staged = stageHello();
+        when(contentObjectRepository.addReference(eq(HELLO_HASH), eq(5L), any())).thenReturn(2);
+        when(storageBackend.exists(StorageKeys.video(StorageKeys.contentSource(HELLO_HASH)))).thenReturn(true);
+
+        ContentStoreService.ContentRef ref = contentStoreService.claim(staged);
+
+        assertTrue(ref.duplicate());
+        assertTrue(Files.exists(staged.file()));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertFalse(Files.exists(staged.file()));
+        verify(storageBackend, never()).putFile(any(), any());
+    }
+
+    @Test
+    void rolledBackClaimRemovesTheMovedSource() throws Exception {
+        when(contentObjectRepository.addReference(eq(HELLO_HASH), eq(5L), any())).thenReturn(1);
+        contentStoreService.claim(stageHello());
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(storageBackend).deletePrefix(StorageKeys.video(StorageKeys.contentDirectory(HELLO_HASH)));
+    }
+
+    @Test
+    void rolledBackClaimKeepsContentClaimedSince() throws Exception {
+        when(contentObjectRepository.addReference(eq(HELLO_HASH), eq(5L), any())).thenReturn(1);
+        when(contentObjectRepository.lockRefCount(HELLO_HASH)).thenReturn(1L);
+        contentStoreService.claim(stageHello());
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(storageBackend, never()).deletePrefix(any());
+    }
+
+    @Test
+    void lastReleaseDeletesObjectsAfterCommit() throws Exception {
+        when(contentObjectRepository.deleteUnreferenced(HELLO_HASH)).thenReturn(1);
+
+        contentStoreService.release(HELLO_HASH);
+
+        verify(contentObjectRepository).addRefCount(HELLO_HASH, -1);
+        verify(storageBackend, never()).deletePrefix(any());
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        verify(storageBackend).deletePrefix(StorageKeys.video(StorageKeys.contentDirectory(HELLO_HASH)));
+    }
+
+    @Test
+    void releaseWithReferencesLeftKeepsObjects() throws Exception {
+        when(contentObjectRepository.deleteUnreferenced(HELLO_HASH)).thenReturn(0);
+
+        contentStoreService.release(HELLO_HASH);
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(storageBackend, never()).deletePrefix(any());
+        verify(contentObjectRepository, never()).addReference(any(), anyLong(), any());
+    }
+}
@@ -0,0 +1,180 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.cache.HlsSegmentCache;
+import com.vstream.video_service.storage.StorageBackend;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileStreamingServiceTest {
+
+    private static final String KEY = "video_storage/ab/ab12/hls/segment_000.ts";
+    private static final byte[] BODY = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+
+    private final StorageBackend storageBackend = mock(StorageBackend.class);
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hls/segment_000.ts");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private FileStreamingService fileStreamingService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileStreamingService = new FileStreamingService();
+        ReflectionTestUtils.setField(fileStreamingService, "hlsSegmentCache", mock(HlsSegmentCache.class));
+        ReflectionTestUtils.setField(fileStreamingService, "storageBackend", storageBackend);
+        when(storageBackend.stat(KEY)).thenReturn(new StorageBackend.StoredObject(BODY.length, LAST_MODIFIED));
+        when(storageBackend.openRange(anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+            int start = (int) (long) invocation.getArgument(1, Long.class);
+            int length = (int) (long) invocation.getArgument(2, Long.class);
+            return new ByteArrayInputStream(BODY, start, length);
+        });
+    }
+
+    private long serve() throws IOException {
+        return fileStreamingService.serve(KEY, MediaType.APPLICATION_OCTET_STREAM, CacheControl.noCache(), request,
+                response);
+    }
+
+    private static String eTag() {
+        return "\"" + Long.toHexString(BODY.length) + "-" + Long.toHexString(LAST_MODIFIED) + "\"";
+    }
+
+    @Test
+    void singleRangeIsReadFromStorageAlone() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+        assertEquals(4, serve());
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("2345", response.getContentAsString());
+        verify(storageBackend).openRange(KEY, 2, 4);
+    }
+
+    @Test
+    void suffixRangeCoversTheEndOfTheObject() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+
+        serve();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("789", response.getContentAsString());
+    }
+
+    @Test
+    void rangePastTheEndIsNotSatisfiable() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=20-");
+
+        assertEquals(0, serve());
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        verify(storageBackend, never()).openRange(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void multipleOrMalformedRangesGetTheWholeObject() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,4-5");
+        serve();
+        assertEquals(200, response.getStatus());
+        assertEquals("0123456789", response.getContentAsString());
+
+        MockHttpServletResponse malformedResponse = new MockHttpServletResponse();
+        MockHttpServletRequest malformedRequest = new MockHttpServletRequest("GET", "/hls/segment_000.ts");
+        malformedRequest.addHeader(HttpHeaders.RANGE, "items=0-1");
+        fileStreamingService.serve(KEY, MediaType.APPLICATION_OCTET_STREAM, CacheControl.noCache(), malformedRequest,
+                malformedResponse);
+        assertEquals(200, malformedResponse.getStatus());
+        assertEquals(10, malformedResponse.getContentLengthLong());
+    }
+
+    @Test
+    void rangeIsIgnoredWhenIfRangeNoLongerMatches() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+
+        serve();
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("0123456789", response.getContentAsString());
+    }
+
+    @Test
+    void rangeIsHonouredWhenIfRangeMatches() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        request.addHeader(HttpHeaders.IF_RANGE, eTag());
+
+        serve();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", response.getContentAsString());
+    }
+
+    @Test
+    void unchangedObjectIsAnsweredWithNotModified() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag());
+
+        assertEquals(0, serve());
+
+        assertEquals(304, response.getStatus());
+        verify(storageBackend, never()).openRange(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    void localRangeIsHandedToSendfileWithAnExclusiveEnd() throws IOException {
+        Path file = Files.createTempFile("file-streaming-test", ".ts");
+        try {
+            Files.write(file, BODY);
+            when(storageBackend.localPath(KEY)).thenReturn(file);
+            request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+            request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+
+            assertEquals(4, serve());
+
+            assertEquals(file.toAbsolutePath().toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+            assertEquals(2L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+            assertEquals(6L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+            assertEquals(0, response.getContentAsByteArray().length);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void localRangeIsCopiedWithoutSendfile() throws IOException {
+        Path file = Files.createTempFile("file-streaming-test", ".ts");
+        try {
+            Files.write(file, BODY);
+            when(storageBackend.localPath(KEY)).thenReturn(file);
+            request.addHeader(HttpHeaders.RANGE, "bytes=6-");
+
+            assertEquals(4, serve());
+
+            assertEquals("6789", response.getContentAsString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
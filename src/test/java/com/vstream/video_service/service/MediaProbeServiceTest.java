@@ -0,0 +1,27 @@
+package com.vstream.video_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MediaProbeServiceTest {
+
+    @Test
+    void oneLongGopSetsTheInterval() {
+        // Averages to 4 s, but the 12 s GOP would overrun a 10 s segment
+        assertEquals(12_000L, MediaProbeService.longestKeyframeIntervalMs(List.of(0.0, 2.0, 4.0, 16.0, 18.0, 20.0)));
+    }
+
+    @Test
+    void keyframesOutOfOrderAreSorted() {
+        assertEquals(2_500L, MediaProbeService.longestKeyframeIntervalMs(List.of(5.0, 0.0, 2.5)));
+    }
+
+    @Test
+    void singleKeyframeHasNoInterval() {
+        assertNull(MediaProbeService.longestKeyframeIntervalMs(List.of(0.0)));
+    }
+}
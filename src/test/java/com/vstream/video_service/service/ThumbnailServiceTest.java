@@ -0,0 +1,83 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.storage.SpoolDirectory;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class ThumbnailServiceTest {
+
+    private static final String DIRECTORY = "ab/ab" + "0".repeat(62);
+
+    private final StorageBackend storageBackend = mock(StorageBackend.class);
+    private final SpoolDirectory spoolDirectory = mock(SpoolDirectory.class);
+    private ThumbnailService thumbnailService;
+
+    @BeforeEach
+    void setUp() {
+        thumbnailService = new ThumbnailService();
+        ReflectionTestUtils.setField(thumbnailService, "serviceMetrics", mock(ServiceMetrics.class));
+        ReflectionTestUtils.setField(thumbnailService, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(thumbnailService, "spoolDirectory", spoolDirectory);
+        ReflectionTestUtils.setField(thumbnailService, "webpEnabled", true);
+    }
+
+    @Test
+    void nonImageUploadIsRejectedBeforeAnythingIsStored() {
+        for (String name : new String[]{"page.html", "drawing.svg", "script.js", "noextension"}) {
+            MockMultipartFile file = new MockMultipartFile("thumbnailFile", name, "image/png", new byte[]{1});
+            assertThrows(IllegalArgumentException.class, () -> thumbnailService.storeThumbnail(file));
+        }
+        verifyNoInteractions(storageBackend, spoolDirectory);
+    }
+
+    @Test
+    void originalIsServedAsAnImageWhateverItsName() throws Exception {
+        ThumbnailService.Variant variant = thumbnailService.resolve("alice/0123abcd/page.html", 320, true);
+
+        assertEquals(StorageKeys.thumbnail("alice/0123abcd/page.html"), variant.key());
+        assertEquals(MediaType.IMAGE_PNG, variant.mediaType());
+    }
+
+    @Test
+    void variantIsPickedByNameWithoutAskingStorage() {
+        assertEquals(new ThumbnailService.Variant(StorageKeys.thumbnail(DIRECTORY + "/320.webp"),
+                        MediaType.parseMediaType("image/webp")),
+                thumbnailService.resolve(DIRECTORY + "/original", 200, true));
+        assertEquals(new ThumbnailService.Variant(StorageKeys.thumbnail(DIRECTORY + "/640.jpg"), MediaType.IMAGE_JPEG),
+                thumbnailService.resolve(DIRECTORY + "/original", 1000, false));
+        // Stored before the name was fixed, when WebP variants were optional
+        assertEquals(new ThumbnailService.Variant(StorageKeys.thumbnail(DIRECTORY + "/160.jpg"), MediaType.IMAGE_JPEG),
+                thumbnailService.resolve(DIRECTORY + "/original.png", 100, true));
+        verifyNoInteractions(storageBackend);
+    }
+
+    @Test
+    void noWebpIsServedWhileItIsTurnedOff() {
+        ReflectionTestUtils.setField(thumbnailService, "webpEnabled", false);
+
+        assertEquals(MediaType.IMAGE_JPEG, thumbnailService.resolve(DIRECTORY + "/original", 320, true).mediaType());
+    }
+
+    @Test
+    void onlyHashNamedDirectoriesHoldASingleImage() {
+        assertEquals(DIRECTORY, ThumbnailService.imageDirectory(DIRECTORY + "/original"));
+        assertEquals("alice/ab" + "0".repeat(62), ThumbnailService.imageDirectory("alice/ab" + "0".repeat(62)
+                + "/original.jpeg"));
+        assertNull(ThumbnailService.imageDirectory("alice/original.png"));
+        assertNull(ThumbnailService.imageDirectory("alice/cat.png"));
+        assertEquals("ab" + "0".repeat(62), ThumbnailService.version(DIRECTORY + "/original"));
+        assertNull(ThumbnailService.version("alice/cat.png"));
+    }
+}
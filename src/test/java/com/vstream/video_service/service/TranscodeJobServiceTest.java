@@ -0,0 +1,196 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.model.TranscodeJob;
+import com.vstream.video_service.model.TranscodeJobStatus;
+import com.vstream.video_service.repository.TranscodeJobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TranscodeJobServiceTest {
+
+    private final TranscodeJobRepository transcodeJobRepository = mock(TranscodeJobRepository.class);
+    private final VideoUtilityService videoUtilityService = mock(VideoUtilityService.class);
+    private final Semaphore ffmpegPermits = new Semaphore(2);
+    private final List<Runnable> started = new ArrayList<>();
+    private TranscodeJobService transcodeJobService;
+
+    @BeforeEach
+    void setUp() {
+        transcodeJobService = new TranscodeJobService();
+        ReflectionTestUtils.setField(transcodeJobService, "transcodeJobRepository", transcodeJobRepository);
+        ReflectionTestUtils.setField(transcodeJobService, "videoUtilityService", videoUtilityService);
+        ReflectionTestUtils.setField(transcodeJobService, "serviceMetrics", mock(ServiceMetrics.class));
+        ReflectionTestUtils.setField(transcodeJobService, "liveEventHub", mock(LiveEventHub.class));
+        ReflectionTestUtils.setField(transcodeJobService, "workers", 4);
+        ReflectionTestUtils.setField(transcodeJobService, "leaseMs", 60_000L);
+        ReflectionTestUtils.setField(transcodeJobService, "executor", (Executor) started::add);
+        when(videoUtilityService.tryAcquireFfmpegPermit()).thenAnswer(invocation -> ffmpegPermits.tryAcquire());
+        doAnswer(invocation -> {
+            ffmpegPermits.release();
+            return null;
+        }).when(videoUtilityService).releaseFfmpegPermit();
+    }
+
+    private static TranscodeJob queuedJob() {
+        TranscodeJob transcodeJob = new TranscodeJob();
+        transcodeJob.setJobId(UUID.randomUUID());
+        transcodeJob.setVideoId(UUID.randomUUID());
+        transcodeJob.setUploaderId("alice");
+        transcodeJob.setSourcePath("content/ab/ab12/source.mp4");
+        transcodeJob.setMaxAttempts(3);
+        return transcodeJob;
+    }
+
+    private int requestedJobs() {
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        verify(transcodeJobRepository).findDueJobs(any(), page.capture());
+        return page.getValue().getPageSize();
+    }
+
+    @Test
+    void onlyAsManyJobsAsFreePermitsAreRequested() {
+        when(transcodeJobRepository.findDueJobs(any(), any())).thenReturn(List.of());
+
+        transcodeJobService.dispatchDueJobs();
+
+        assertEquals(2, requestedJobs());
+        assertEquals(2, ffmpegPermits.availablePermits());
+    }
+
+    @Test
+    void nothingIsClaimedWithoutAPermit() {
+        ffmpegPermits.acquireUninterruptibly(2);
+
+        transcodeJobService.dispatchDueJobs();
+
+        verify(transcodeJobRepository, never()).findDueJobs(any(), any());
+    }
+
+    @Test
+    void runningJobHoldsItsPermitUntilItFinishes() throws Exception {
+        TranscodeJob transcodeJob = queuedJob();
+        when(transcodeJobRepository.findDueJobs(any(), any())).thenReturn(List.of(transcodeJob));
+        when(transcodeJobRepository.claim(eq(transcodeJob.getJobId()), any(), anyString(), any())).thenReturn(1);
+        when(transcodeJobRepository.finish(any(), anyString(), any(), any(), any(), any())).thenReturn(1);
+
+        transcodeJobService.dispatchDueJobs();
+
+        assertEquals(1, started.size());
+        assertEquals(1, ffmpegPermits.availablePermits());
+        assertEquals(TranscodeJobStatus.RUNNING, transcodeJob.getStatus());
+
+        started.get(0).run();
+
+        assertEquals(2, ffmpegPermits.availablePermits());
+        verify(videoUtilityService).createHLSChunks(transcodeJob.getSourcePath(), "alice", transcodeJob.getVideoId());
+        assertEquals(TranscodeJobStatus.SUCCEEDED, transcodeJob.getStatus());
+        assertNull(transcodeJob.getWorkerId());
+        verify(transcodeJobRepository).finish(eq(transcodeJob.getJobId()),
+                eq((String) ReflectionTestUtils.getField(transcodeJobService, "workerId")),
+                eq(TranscodeJobStatus.SUCCEEDED), any(), any(), any());
+        verify(transcodeJobRepository, never()).save(any());
+    }
+
+    @Test
+    void resultOfAJobWhoseLeaseLapsedIsDropped() throws Exception {
+        TranscodeJob transcodeJob = queuedJob();
+        LiveEventHub liveEventHub = mock(LiveEventHub.class);
+        ReflectionTestUtils.setField(transcodeJobService, "liveEventHub", liveEventHub);
+        when(transcodeJobRepository.findDueJobs(any(), any())).thenReturn(List.of(transcodeJob));
+        when(transcodeJobRepository.claim(any(), any(), anyString(), any())).thenReturn(1);
+        // Requeued by another instance and claimed by its worker while this one was still running it
+        when(transcodeJobRepository.finish(any(), anyString(), any(), any(), any(), any())).thenReturn(0);
+        transcodeJob.setMaxAttempts(1);
+        doThrow(new IOException("ffmpeg exited with 1")).when(videoUtilityService)
+                .createHLSChunks(any(), any(), any());
+
+        transcodeJobService.dispatchDueJobs();
+        started.get(0).run();
+
+        verify(transcodeJobRepository, never()).save(any());
+        // Only the RUNNING event from the start, the other worker reports how its run ends
+        verify(liveEventHub, times(2)).publish(any(), any(), any());
+        assertEquals(2, ffmpegPermits.availablePermits());
+    }
+
+    @Test
+    void permitOfAJobClaimedElsewhereIsReturned() {
+        TranscodeJob transcodeJob = queuedJob();
+        when(transcodeJobRepository.findDueJobs(any(), any())).thenReturn(List.of(transcodeJob));
+        when(transcodeJobRepository.claim(any(), any(), anyString(), any())).thenReturn(0);
+
+        transcodeJobService.dispatchDueJobs();
+
+        assertEquals(0, started.size());
+        assertEquals(2, ffmpegPermits.availablePermits());
+    }
+
+    @Test
+    void claimLeasesTheJobToThisInstance() {
+        TranscodeJob transcodeJob = queuedJob();
+        when(transcodeJobRepository.findDueJobs(any(), any())).thenReturn(List.of(transcodeJob));
+        when(transcodeJobRepository.claim(any(), any(), anyString(), any())).thenReturn(1);
+        LocalDateTime before = LocalDateTime.now();
+
+        transcodeJobService.dispatchDueJobs();
+
+        ArgumentCaptor<String> workerId = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<LocalDateTime> leaseExpiresAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(transcodeJobRepository).claim(eq(transcodeJob.getJobId()), any(), workerId.capture(),
+                leaseExpiresAt.capture());
+        assertEquals(ReflectionTestUtils.getField(transcodeJobService, "workerId"), workerId.getValue());
+        assertEquals(workerId.getValue(), transcodeJob.getWorkerId());
+        assertTrue(leaseExpiresAt.getValue().isAfter(before.plusSeconds(59)));
+    }
+
+    @Test
+    void leasesAreOnlyRenewedWhileJobsRun() {
+        transcodeJobService.renewLeases();
+        verify(transcodeJobRepository, never()).renewLeases(anyString(), any());
+
+        TranscodeJob transcodeJob = queuedJob();
+        when(transcodeJobRepository.findDueJobs(any(), any())).thenReturn(List.of(transcodeJob));
+        when(transcodeJobRepository.claim(any(), any(), anyString(), any())).thenReturn(1);
+        transcodeJobService.dispatchDueJobs();
+        transcodeJobService.renewLeases();
+
+        verify(transcodeJobRepository).renewLeases(eq(transcodeJob.getWorkerId()), any());
+    }
+
+    @Test
+    void shutdownHandsBackOnlyThisInstancesJobs() {
+        ReflectionTestUtils.setField(transcodeJobService, "executor", (Executor) Runnable::run);
+
+        transcodeJobService.stopWorkers();
+
+        verify(transcodeJobRepository).requeueOwned(
+                eq((String) ReflectionTestUtils.getField(transcodeJobService, "workerId")), any());
+        verify(transcodeJobRepository, never()).requeueExpired(any());
+    }
+}
@@ -0,0 +1,225 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.cache.HlsSegmentCache;
+import com.vstream.video_service.cache.VideoMetadataCache;
+import com.vstream.video_service.dto.UpdateVideoDTO;
+import com.vstream.video_service.dto.VideoMetadataDTO;
+import com.vstream.video_service.dto.VideoPageDTO;
+import com.vstream.video_service.model.VideoMetadata;
+import com.vstream.video_service.repository.VideoMetadataRepository;
+import com.vstream.video_service.repository.VideoTombstoneRepository;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.util.CursorToken;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class VideoMetadataServiceTest {
+
+    private static final String OLD_DIRECTORY = "ab/ab" + "0".repeat(62);
+    private static final String OLD_THUMBNAIL = OLD_DIRECTORY + "/original";
+    private static final String NEW_THUMBNAIL = "cd/cd" + "0".repeat(62) + "/original";
+
+    private final VideoMetadataRepository videoMetadataRepository = mock(VideoMetadataRepository.class);
+    private final VideoTombstoneRepository videoTombstoneRepository = mock(VideoTombstoneRepository.class);
+    private final ThumbnailService thumbnailService = mock(ThumbnailService.class);
+    private final ContentStoreService contentStoreService = mock(ContentStoreService.class);
+    private final StorageBackend storageBackend = mock(StorageBackend.class);
+    private final VideoMetadata videoMetadata = new VideoMetadata();
+    private VideoMetadataService videoMetadataService;
+
+    @BeforeEach
+    void setUp() {
+        videoMetadataService = new VideoMetadataService();
+        ReflectionTestUtils.setField(videoMetadataService, "videoMetadataRepository", videoMetadataRepository);
+        ReflectionTestUtils.setField(videoMetadataService, "videoTombstoneRepository", videoTombstoneRepository);
+        ReflectionTestUtils.setField(videoMetadataService, "thumbnailService", thumbnailService);
+        ReflectionTestUtils.setField(videoMetadataService, "videoMetadataCache", mock(VideoMetadataCache.class));
+        ReflectionTestUtils.setField(videoMetadataService, "contentStoreService", contentStoreService);
+        ReflectionTestUtils.setField(videoMetadataService, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(videoMetadataService, "hlsSegmentCache", mock(HlsSegmentCache.class));
+        ReflectionTestUtils.setField(videoMetadataService, "defaultPageSize", 2);
+        ReflectionTestUtils.setField(videoMetadataService, "maxPageSize", 3);
+        videoMetadata.setVideoId(UUID.randomUUID());
+        videoMetadata.setThumbnailUrl(OLD_THUMBNAIL);
+        when(videoMetadataRepository.findById(videoMetadata.getVideoId())).thenReturn(Optional.of(videoMetadata));
+        when(videoMetadataRepository.save(videoMetadata)).thenReturn(videoMetadata);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    private void replaceThumbnail() throws Exception {
+        UpdateVideoDTO updateVideoDTO = new UpdateVideoDTO();
+        updateVideoDTO.setThumbnailFile(new MockMultipartFile("thumbnailFile", "new.jpg", "image/jpeg", new byte[]{1}));
+        videoMetadataService.updateVideoDetails(videoMetadata.getVideoId().toString(), updateVideoDTO);
+    }
+
+    private static void commit() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCommit();
+        }
+    }
+
+    @Test
+    void replacedThumbnailIsDeletedAfterCommit() throws Exception {
+        when(thumbnailService.storeThumbnail(any())).thenReturn(NEW_THUMBNAIL);
+
+        replaceThumbnail();
+        verify(thumbnailService, never()).deleteThumbnail(anyString());
+        commit();
+
+        verify(thumbnailService).deleteThumbnail(OLD_THUMBNAIL);
+    }
+
+    @Test
+    void replacedThumbnailSharedWithAnotherVideoIsKept() throws Exception {
+        when(thumbnailService.storeThumbnail(any())).thenReturn(NEW_THUMBNAIL);
+        when(videoTombstoneRepository.isThumbnailDirectoryReferenced(OLD_DIRECTORY, videoMetadata.getVideoId()))
+                .thenReturn(true);
+
+        replaceThumbnail();
+        commit();
+
+        verify(thumbnailService, never()).deleteThumbnail(anyString());
+    }
+
+    @Test
+    void uploadingTheSameThumbnailAgainKeepsIt() throws Exception {
+        when(thumbnailService.storeThumbnail(any())).thenReturn(OLD_THUMBNAIL);
+
+        replaceThumbnail();
+        commit();
+
+        verify(thumbnailService, never()).deleteThumbnail(anyString());
+    }
+
+    @Test
+    void sameImageStoredUnderItsOlderNameIsKept() throws Exception {
+        videoMetadata.setThumbnailUrl(OLD_DIRECTORY + "/original.jpeg");
+        when(thumbnailService.storeThumbnail(any())).thenReturn(OLD_THUMBNAIL);
+
+        replaceThumbnail();
+        commit();
+
+        verify(thumbnailService, never()).deleteThumbnail(anyString());
+    }
+
+    @Test
+    void uploaderNamedThumbnailIsOnlyKeptForAnExactMatch() throws Exception {
+        videoMetadata.setThumbnailUrl("alice/cat.png");
+        when(thumbnailService.storeThumbnail(any())).thenReturn(NEW_THUMBNAIL);
+
+        replaceThumbnail();
+        commit();
+
+        verify(videoTombstoneRepository).isThumbnailReferenced("alice/cat.png", videoMetadata.getVideoId());
+        verify(thumbnailService).deleteThumbnail("alice/cat.png");
+    }
+
+    private VideoTombstoneRepository.Tombstone tombstone(String contentHash) {
+        VideoTombstoneRepository.Tombstone tombstone = new VideoTombstoneRepository.Tombstone(
+                videoMetadata.getVideoId(), "alice", "content/ab/ab12/source.mp4", contentHash, OLD_THUMBNAIL, 0);
+        when(videoTombstoneRepository.deleteTombstone(tombstone.videoId())).thenReturn(1);
+        return tombstone;
+    }
+
+    @Test
+    void reapReleasesTheContentAndTheLastThumbnail() throws Exception {
+        assertTrue(videoMetadataService.reapVideo(tombstone("ab12")));
+
+        verify(contentStoreService).release("ab12");
+        verify(thumbnailService).deleteThumbnail(OLD_THUMBNAIL);
+    }
+
+    @Test
+    void reapKeepsAThumbnailAnotherTombstoneStillReferences() throws Exception {
+        // The repository lookup includes tombstoned rows, which the entity queries filter out
+        when(videoTombstoneRepository.isThumbnailDirectoryReferenced(OLD_DIRECTORY, videoMetadata.getVideoId()))
+                .thenReturn(true);
+
+        assertTrue(videoMetadataService.reapVideo(tombstone("ab12")));
+
+        verify(thumbnailService, never()).deleteThumbnail(anyString());
+    }
+
+    @Test
+    void uploadFromBeforeContentAddressingIsRemovedByPath() throws Exception {
+        assertTrue(videoMetadataService.reapVideo(tombstone(null)));
+
+        verify(storageBackend).deletePrefix(anyString());
+        verify(storageBackend).delete(anyString());
+        verifyNoInteractions(contentStoreService);
+    }
+
+    @Test
+    void videoReapedElsewhereIsLeftAlone() throws Exception {
+        VideoTombstoneRepository.Tombstone tombstone = tombstone("ab12");
+        when(videoTombstoneRepository.deleteTombstone(tombstone.videoId())).thenReturn(0);
+
+        assertFalse(videoMetadataService.reapVideo(tombstone));
+
+        verifyNoInteractions(contentStoreService, thumbnailService, storageBackend);
+    }
+
+    private static VideoMetadataDTO listed(int minutesAgo) {
+        VideoMetadataDTO videoMetadataDTO = new VideoMetadataDTO();
+        videoMetadataDTO.setVideoId(UUID.randomUUID().toString());
+        videoMetadataDTO.setUploadDate(LocalDateTime.now().minusMinutes(minutesAgo));
+        return videoMetadataDTO;
+    }
+
+    @Test
+    void fullPageCarriesTheCursorOfItsLastRow() {
+        List<VideoMetadataDTO> rows = List.of(listed(1), listed(2), listed(3));
+        when(videoMetadataRepository.findPage(CursorToken.DESCENDING_START.timestamp(),
+                CursorToken.DESCENDING_START.id(), PageRequest.of(0, 3))).thenReturn(rows);
+
+        VideoPageDTO videoPageDTO = videoMetadataService.getAllVideos(Optional.empty(), Optional.empty(), null, null);
+
+        assertEquals(rows.subList(0, 2), videoPageDTO.getVideos());
+        CursorToken next = CursorToken.decode(videoPageDTO.getNextCursor());
+        assertEquals(rows.get(1).getUploadDate(), next.timestamp());
+        assertEquals(rows.get(1).getVideoId(), next.id().toString());
+    }
+
+    @Test
+    void lastPageHasNoCursorAndTheLimitIsCapped() {
+        CursorToken after = new CursorToken(LocalDateTime.now(), UUID.randomUUID());
+        List<VideoMetadataDTO> rows = List.of(listed(1));
+        when(videoMetadataRepository.findPageByUploaderIdAndUploadInProgress(eq("alice"), eq(false),
+                eq(after.timestamp()), eq(after.id()), eq(PageRequest.of(0, 4)))).thenReturn(rows);
+
+        VideoPageDTO videoPageDTO = videoMetadataService.getAllVideos(Optional.of("alice"), Optional.empty(),
+                after.encode(), 100);
+
+        assertEquals(rows, videoPageDTO.getVideos());
+        assertNull(videoPageDTO.getNextCursor());
+    }
+}
@@ -0,0 +1,104 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.repository.VideoTombstoneRepository;
+import com.vstream.video_service.storage.SpoolDirectory;
+import com.vstream.video_service.storage.StorageBackend;
+import com.vstream.video_service.storage.StorageKeys;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VideoReaperTest {
+
+    private final VideoTombstoneRepository videoTombstoneRepository = mock(VideoTombstoneRepository.class);
+    private final VideoMetadataService videoMetadataService = mock(VideoMetadataService.class);
+    private final StorageBackend storageBackend = mock(StorageBackend.class);
+    private final VideoTombstoneRepository.Tombstone tombstone = new VideoTombstoneRepository.Tombstone(
+            UUID.randomUUID(), "alice", "content/ab/ab12/source.mp4", "ab12", null, 2);
+    private VideoReaper videoReaper;
+
+    @BeforeEach
+    void setUp() {
+        videoReaper = new VideoReaper();
+        ReflectionTestUtils.setField(videoReaper, "videoTombstoneRepository", videoTombstoneRepository);
+        ReflectionTestUtils.setField(videoReaper, "videoMetadataService", videoMetadataService);
+        ReflectionTestUtils.setField(videoReaper, "storageBackend", storageBackend);
+        ReflectionTestUtils.setField(videoReaper, "spoolDirectory", mock(SpoolDirectory.class));
+        ReflectionTestUtils.setField(videoReaper, "serviceMetrics", mock(ServiceMetrics.class));
+        ReflectionTestUtils.setField(videoReaper, "batchSize", 50);
+        ReflectionTestUtils.setField(videoReaper, "rowBatchSize", 1000);
+        ReflectionTestUtils.setField(videoReaper, "deletesPerSecond", 1000);
+        ReflectionTestUtils.setField(videoReaper, "retryBackoffMs", 60_000L);
+        when(videoTombstoneRepository.findDue(any(), anyInt())).thenReturn(List.of(tombstone));
+    }
+
+    @Test
+    void dependentRowsGoBeforeTheVideo() throws Exception {
+        when(videoTombstoneRepository.deleteDependents(eq("comments"), eq(tombstone.videoId()), anyInt()))
+                .thenReturn(1000, 1000, 3);
+
+        videoReaper.reapDue();
+
+        verify(videoTombstoneRepository, times(3))
+                .deleteDependents(eq("comments"), eq(tombstone.videoId()), anyInt());
+        verify(videoMetadataService).reapVideo(tombstone);
+    }
+
+    @Test
+    void videoWithARunningTranscodeIsPostponed() throws Exception {
+        when(videoTombstoneRepository.hasRunningTranscode(tombstone.videoId())).thenReturn(true);
+
+        videoReaper.reapDue();
+
+        verify(videoTombstoneRepository).postpone(eq(tombstone.videoId()), eq(2), any());
+        verify(videoMetadataService, never()).reapVideo(any());
+    }
+
+    @Test
+    void failedReapIsRetriedWithDoublingBackoff() throws Exception {
+        when(videoMetadataService.reapVideo(tombstone)).thenThrow(new IOException("storage unavailable"));
+        LocalDateTime before = LocalDateTime.now();
+
+        videoReaper.reapDue();
+
+        // Third attempt: 60 s << 2
+        verify(videoTombstoneRepository).postpone(eq(tombstone.videoId()), eq(3),
+                argThat(reapAfter -> !reapAfter.isBefore(before.plusSeconds(240))
+                        && reapAfter.isBefore(before.plusSeconds(250))));
+    }
+
+    @Test
+    void orphanIsOnlyDeletedWhenTwoSweepsAgree() throws Exception {
+        String shardKey = StorageKeys.thumbnail("ab");
+        when(storageBackend.list(StorageKeys.VIDEO_ROOT)).thenReturn(List.of());
+        when(storageBackend.list(StorageKeys.THUMBNAIL_ROOT)).thenReturn(List.of("ab"));
+        when(storageBackend.list(shardKey)).thenReturn(List.of("ab12", "cd34"));
+        // Tombstoned rows are included, so ab12 still belongs to a video the reaper has not removed yet
+        when(videoTombstoneRepository.findThumbnailUrls("ab/")).thenReturn(Set.of("ab/ab12/original.jpg"));
+
+        videoReaper.sweepOrphans();
+        verify(storageBackend, never()).deletePrefix(anyString());
+
+        videoReaper.sweepOrphans();
+        verify(storageBackend).deletePrefix(StorageKeys.child(shardKey, "cd34"));
+        verify(storageBackend, never()).deletePrefix(StorageKeys.child(shardKey, "ab12"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.model.VideoMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VideoUtilityServiceTest {
+
+    private final Path source = Path.of("source.mp4");
+    private Path hlsDirectory;
+    private VideoUtilityService videoUtilityService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        hlsDirectory = Files.createTempDirectory("hls-test");
+        videoUtilityService = new VideoUtilityService();
+        ReflectionTestUtils.setField(videoUtilityService, "maxConcurrentFfmpeg", 1);
+        ReflectionTestUtils.setField(videoUtilityService, "renditionLadder", "720p:720:2800k:128k,360p:360:800k:96k");
+        ReflectionTestUtils.setField(videoUtilityService, "audioOnlyBitrate", "64k");
+        ReflectionTestUtils.setField(videoUtilityService, "segmentSeconds", 10);
+        ReflectionTestUtils.setField(videoUtilityService, "copyEnabled", true);
+        ReflectionTestUtils.setField(videoUtilityService, "trickplayEnabled", true);
+        ReflectionTestUtils.setField(videoUtilityService, "trickplayIntervalSeconds", 5);
+        ReflectionTestUtils.setField(videoUtilityService, "trickplayWidth", 160);
+        ReflectionTestUtils.setField(videoUtilityService, "trickplayColumns", 10);
+        ReflectionTestUtils.setField(videoUtilityService, "trickplayRows", 10);
+        ReflectionTestUtils.invokeMethod(videoUtilityService, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        FileSystemUtils.deleteRecursively(hlsDirectory.toFile());
+    }
+
+    private static VideoMetadata h264Source() {
+        VideoMetadata videoMetadata = new VideoMetadata();
+        videoMetadata.setVideoCodec("h264");
+        videoMetadata.setAudioCodec("aac");
+        videoMetadata.setPixelFormat("yuv420p");
+        videoMetadata.setHeight(720);
+        videoMetadata.setFrameRate(30.0);
+        videoMetadata.setKeyframeIntervalMs(2000L);
+        return videoMetadata;
+    }
+
+    private static VideoMetadata audioOnlySource() {
+        VideoMetadata videoMetadata = new VideoMetadata();
+        videoMetadata.setAudioCodec("mp3");
+        videoMetadata.setDurationMs(180_000L);
+        return videoMetadata;
+    }
+
+    private List<String> ladderCommand(VideoMetadata videoMetadata) {
+        return ReflectionTestUtils.invokeMethod(videoUtilityService, "buildLadderCommand", source, hlsDirectory,
+                videoMetadata);
+    }
+
+    private static String argumentAfter(List<String> command, String option) {
+        return command.get(command.indexOf(option) + 1);
+    }
+
+    @Test
+    void audioOnlySourceGetsOnlyTheAudioRendition() {
+        List<String> command = ladderCommand(audioOnlySource());
+
+        assertFalse(command.contains("-filter_complex"));
+        assertFalse(command.contains("-c:v"));
+        assertEquals("0:a:0", argumentAfter(command, "-map"));
+        assertEquals("a:0,name:audio", argumentAfter(command, "-var_stream_map"));
+        assertTrue(Files.isDirectory(hlsDirectory.resolve(VideoUtilityService.AUDIO_ONLY_RENDITION)));
+        assertFalse(Files.exists(hlsDirectory.resolve(VideoUtilityService.TRICKPLAY_DIRECTORY)));
+    }
+
+    @Test
+    void audioOnlySourceIsNeverRemuxed() {
+        Boolean compatible = ReflectionTestUtils.invokeMethod(videoUtilityService, "isStreamCopyCompatible",
+                audioOnlySource());
+
+        assertFalse(compatible);
+    }
+
+    @Test
+    void videoLadderSplitsForEveryRungAndTheSprites() {
+        List<String> command = ladderCommand(h264Source());
+
+        assertTrue(argumentAfter(command, "-filter_complex").startsWith("[0:v]split=3[s0][s1][s2]"));
+        assertEquals("v:0,a:0,name:720p v:1,a:1,name:360p a:2,name:audio", argumentAfter(command, "-var_stream_map"));
+        assertTrue(command.contains("[trick]"));
+    }
+
+    @Test
+    void copyKeepsTheSpritesBranch() {
+        List<String> command = ReflectionTestUtils.invokeMethod(videoUtilityService, "buildCopyCommand", source,
+                hlsDirectory, h264Source());
+
+        assertTrue(argumentAfter(command, "-filter_complex").startsWith("[0:v:0]fps=1/5"));
+        assertEquals("v:0,a:0,name:source", argumentAfter(command, "-var_stream_map"));
+    }
+}
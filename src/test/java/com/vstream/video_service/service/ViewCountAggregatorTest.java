@@ -0,0 +1,80 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.cache.VideoMetadataCache;
+import com.vstream.video_service.metrics.ServiceMetrics;
+import com.vstream.video_service.repository.VideoCounterRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+
+class ViewCountAggregatorTest {
+
+    private final VideoCounterRepository videoCounterRepository = mock(VideoCounterRepository.class);
+    private final UUID videoId = UUID.randomUUID();
+    private ViewCountAggregator viewCountAggregator;
+
+    @BeforeEach
+    void setUp() {
+        viewCountAggregator = new ViewCountAggregator();
+        ReflectionTestUtils.setField(viewCountAggregator, "videoCounterRepository", videoCounterRepository);
+        ReflectionTestUtils.setField(viewCountAggregator, "videoMetadataCache", mock(VideoMetadataCache.class));
+        ReflectionTestUtils.setField(viewCountAggregator, "serviceMetrics", mock(ServiceMetrics.class));
+        ReflectionTestUtils.setField(viewCountAggregator, "liveEventHub", mock(LiveEventHub.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<UUID, Long> flushedDeltas() {
+        ArgumentCaptor<Map<UUID, Long>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(videoCounterRepository).addViewCounts(captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    void viewsFromManyThreadsAreAllFlushedOnce() throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    viewCountAggregator.recordView(videoId);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, viewCountAggregator.pendingViews(videoId));
+        viewCountAggregator.flush();
+
+        assertEquals(Map.of(videoId, 8000L), flushedDeltas());
+        assertEquals(0, viewCountAggregator.pendingViews(videoId));
+    }
+
+    @Test
+    void failedFlushKeepsTheViews() {
+        viewCountAggregator.recordView(videoId);
+        viewCountAggregator.recordView(videoId);
+        doThrow(new IllegalStateException("connection reset")).when(videoCounterRepository).addViewCounts(any());
+        viewCountAggregator.flush();
+
+        assertEquals(2, viewCountAggregator.pendingViews(videoId));
+        reset(videoCounterRepository);
+        viewCountAggregator.flush();
+
+        assertEquals(Map.of(videoId, 2L), flushedDeltas());
+    }
+}
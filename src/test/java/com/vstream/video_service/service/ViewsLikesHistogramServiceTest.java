@@ -0,0 +1,108 @@
+package com.vstream.video_service.service;
+
+import com.vstream.video_service.dto.ViewsLikesHistogramDTO;
+import com.vstream.video_service.repository.VideoStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class ViewsLikesHistogramServiceTest {
+
+    private final VideoStatsRepository videoStatsRepository = mock(VideoStatsRepository.class);
+    private ViewsLikesHistogramService viewsLikesHistogramService;
+
+    @BeforeEach
+    void setUp() {
+        viewsLikesHistogramService = new ViewsLikesHistogramService();
+        ReflectionTestUtils.setField(viewsLikesHistogramService, "videoStatsRepository", videoStatsRepository);
+    }
+
+    // Each pair is views, likes
+    private void videos(long... viewsAndLikes) {
+        doAnswer(invocation -> {
+            VideoStatsRepository.ViewsLikesConsumer consumer = invocation.getArgument(3);
+            for (int i = 0; i < viewsAndLikes.length; i += 2) {
+                consumer.accept(viewsAndLikes[i], viewsAndLikes[i + 1]);
+            }
+            return null;
+        }).when(videoStatsRepository).forEachViewsAndLikes(any(), any(), any(), any());
+    }
+
+    private static long count(ViewsLikesHistogramDTO histogramDTO, int viewBin, int likeBin) {
+        return histogramDTO.getCells().stream()
+                .filter(cell -> cell[0] == viewBin && cell[1] == likeBin)
+                .mapToLong(cell -> cell[2])
+                .sum();
+    }
+
+    @Test
+    void countsAreBinnedByBitLength() {
+        videos(0, 0, 1, 0, 3, 2, 2, 3, 1000, 10);
+
+        ViewsLikesHistogramDTO histogramDTO = viewsLikesHistogramService.getHistogram(64, null, null, null);
+
+        assertEquals(5, histogramDTO.getTotalVideos());
+        assertArrayEquals(new long[]{0, 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024}, histogramDTO.getViewEdges());
+        assertArrayEquals(new long[]{0, 1, 2, 4, 8, 16}, histogramDTO.getLikeEdges());
+        assertEquals(1, count(histogramDTO, 0, 0));
+        assertEquals(1, count(histogramDTO, 1, 0));
+        assertEquals(2, count(histogramDTO, 2, 2));
+        assertEquals(1, count(histogramDTO, 10, 4));
+        assertEquals(4, histogramDTO.getCells().size());
+    }
+
+    @Test
+    void fineBinsAreMergedDownToTheRequestedCount() {
+        videos(0, 0, 5, 1, 40, 1, 1000, 10);
+
+        ViewsLikesHistogramDTO histogramDTO = viewsLikesHistogramService.getHistogram(2, null, null, null);
+
+        // Views reach fine bin 10, so groups of six; likes reach fine bin 4, so groups of three
+        assertArrayEquals(new long[]{0, 32, 2048}, histogramDTO.getViewEdges());
+        assertArrayEquals(new long[]{0, 4, 32}, histogramDTO.getLikeEdges());
+        assertEquals(2, count(histogramDTO, 0, 0));
+        assertEquals(1, count(histogramDTO, 1, 0));
+        assertEquals(1, count(histogramDTO, 1, 1));
+        assertEquals(3, histogramDTO.getCells().size());
+    }
+
+    @Test
+    void largestCountsStayInsideTheLastEdge() {
+        videos(Long.MAX_VALUE, 0);
+
+        ViewsLikesHistogramDTO histogramDTO = viewsLikesHistogramService.getHistogram(64, null, null, null);
+
+        long[] viewEdges = histogramDTO.getViewEdges();
+        assertEquals(Long.MAX_VALUE, viewEdges[viewEdges.length - 1]);
+        assertEquals(1L << 62, viewEdges[viewEdges.length - 2]);
+        assertEquals(1, count(histogramDTO, viewEdges.length - 2, 0));
+    }
+
+    @Test
+    void noVideosGivesAnEmptyHistogram() {
+        videos();
+
+        ViewsLikesHistogramDTO histogramDTO = viewsLikesHistogramService.getHistogram(16, "alice", null, null);
+
+        assertEquals(0, histogramDTO.getTotalVideos());
+        assertEquals(List.of(), histogramDTO.getCells());
+        assertArrayEquals(new long[]{0, 1}, histogramDTO.getViewEdges());
+    }
+
+    @Test
+    void binCountOutsideTheGridIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> viewsLikesHistogramService.getHistogram(0, null, null, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> viewsLikesHistogramService.getHistogram(ViewsLikesHistogramService.MAX_BINS + 1, null, null, null));
+    }
+}
@@ -0,0 +1,107 @@
+package com.vstream.video_service.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalStorageBackendTest {
+
+    private Path root;
+    private Path spool;
+    private LocalStorageBackend storageBackend;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = Files.createTempDirectory("local-backend-test");
+        spool = Files.createTempDirectory("local-backend-spool");
+        storageBackend = new LocalStorageBackend();
+        ReflectionTestUtils.setField(storageBackend, "localRoot", root.toString());
+        ReflectionTestUtils.invokeMethod(storageBackend, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        FileSystemUtils.deleteRecursively(root.toFile());
+        FileSystemUtils.deleteRecursively(spool.toFile());
+    }
+
+    private void put(String key, String content) throws IOException {
+        Path file = spool.resolve("upload");
+        Files.writeString(file, content);
+        storageBackend.putFile(key, file);
+    }
+
+    private String readRange(String key, long start, long length) throws IOException {
+        try (InputStream stream = storageBackend.openRange(key, start, length)) {
+            return new String(stream.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Test
+    void putMovesTheFileUnderItsKey() throws IOException {
+        put("video_storage/a/seg0.ts", "0123456789");
+
+        assertFalse(Files.exists(spool.resolve("upload")));
+        assertEquals(10, storageBackend.stat("video_storage/a/seg0.ts").size());
+        assertTrue(storageBackend.exists("video_storage/a/seg0.ts"));
+        assertEquals(root.resolve("video_storage/a/seg0.ts"), storageBackend.localPath("video_storage/a/seg0.ts"));
+    }
+
+    @Test
+    void openRangeReadsOnlyTheRange() throws IOException {
+        put("video_storage/a/seg0.ts", "0123456789");
+
+        assertEquals("345", readRange("video_storage/a/seg0.ts", 3, 3));
+        assertEquals("89", readRange("video_storage/a/seg0.ts", 8, 10));
+        assertEquals("", readRange("video_storage/a/seg0.ts", 4, 0));
+    }
+
+    @Test
+    void missingObjectHasNoStat() throws IOException {
+        assertNull(storageBackend.stat("video_storage/missing.ts"));
+        assertFalse(storageBackend.exists("video_storage/missing.ts"));
+        assertEquals(List.of(), storageBackend.list("video_storage/missing"));
+    }
+
+    @Test
+    void deleteRemovesTheEmptiedDirectory() throws IOException {
+        put("video_storage/a/seg0.ts", "0");
+        put("video_storage/a/seg1.ts", "1");
+
+        storageBackend.delete("video_storage/a/seg0.ts");
+        assertTrue(Files.isDirectory(root.resolve("video_storage/a")));
+        storageBackend.delete("video_storage/a/seg1.ts");
+        assertFalse(Files.exists(root.resolve("video_storage/a")));
+    }
+
+    @Test
+    void deletePrefixRemovesOnlyThatPrefix() throws IOException {
+        put("video_storage/a/hls/seg0.ts", "0");
+        put("video_storage/ab/hls/seg0.ts", "0");
+
+        storageBackend.deletePrefix("video_storage/a");
+
+        assertEquals(List.of("ab"), storageBackend.list("video_storage"));
+    }
+
+    @Test
+    void keysCannotEscapeTheRoot() {
+        assertThrows(IllegalArgumentException.class, () -> storageBackend.stat("video_storage/../../etc/passwd"));
+        assertThrows(IllegalArgumentException.class, () -> storageBackend.deletePrefix("video_storage/.."));
+    }
+}
@@ -0,0 +1,140 @@
+package com.vstream.video_service.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+class S3StorageBackendTest {
+
+    private final S3Client s3Client = mock(S3Client.class);
+    private S3StorageBackend storageBackend;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storageBackend = new S3StorageBackend();
+        ReflectionTestUtils.setField(storageBackend, "s3Client", s3Client);
+        ReflectionTestUtils.setField(storageBackend, "bucket", "vstream");
+        ReflectionTestUtils.setField(storageBackend, "multipartThresholdBytes", 5L);
+        ReflectionTestUtils.setField(storageBackend, "partSizeBytes", 4L);
+        file = Files.createTempFile("s3-backend-test", ".ts");
+        Files.writeString(file, "0123456789");
+        when(s3Client.createMultipartUpload(any(Consumer.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static String read(RequestBody body) throws IOException {
+        try (InputStream stream = body.contentStreamProvider().newStream()) {
+            return new String(stream.readAllBytes(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Test
+    void everyAttemptAtAPartReadsTheSameSlice() throws IOException {
+        List<String> firstAttempts = new ArrayList<>();
+        List<String> retries = new ArrayList<>();
+        when(s3Client.uploadPart(any(Consumer.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            RequestBody body = invocation.getArgument(1);
+            firstAttempts.add(read(body));
+            // What the SDK does when it retries a part after a connection reset
+            retries.add(read(body));
+            return UploadPartResponse.builder().eTag("etag-" + firstAttempts.size()).build();
+        });
+
+        storageBackend.putFile("video_storage/a/source.mp4", file);
+
+        assertEquals(List.of("0123", "4567", "89"), firstAttempts);
+        assertEquals(firstAttempts, retries);
+        verify(s3Client).completeMultipartUpload(any(Consumer.class));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void failedPartAbortsTheUploadAndKeepsTheFile() {
+        when(s3Client.uploadPart(any(Consumer.class), any(RequestBody.class)))
+                .thenThrow(S3Exception.builder().statusCode(500).message("internal error").build());
+
+        assertThrows(IOException.class, () -> storageBackend.putFile("video_storage/a/source.mp4", file));
+
+        verify(s3Client).abortMultipartUpload(any(Consumer.class));
+        verify(s3Client, never()).completeMultipartUpload(any(Consumer.class));
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    void smallFileIsOnePut() throws IOException {
+        Files.writeString(file, "01234");
+
+        storageBackend.putFile("thumbnail_storage/a.jpg", file);
+
+        verify(s3Client).putObject(any(Consumer.class), any(RequestBody.class));
+        verify(s3Client, never()).createMultipartUpload(any(Consumer.class));
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void notFoundHeadMeansMissing() throws IOException {
+        when(s3Client.headObject(any(Consumer.class)))
+                .thenThrow(S3Exception.builder().statusCode(404).build());
+
+        assertNull(storageBackend.stat("video_storage/missing"));
+        assertFalse(storageBackend.exists("video_storage/missing"));
+    }
+
+    @Test
+    void otherHeadFailuresAreErrors() {
+        when(s3Client.headObject(any(Consumer.class)))
+                .thenThrow(S3Exception.builder().statusCode(403).build());
+
+        assertThrows(IOException.class, () -> storageBackend.stat("video_storage/forbidden"));
+    }
+
+    @Test
+    void listReturnsDirectChildren() throws IOException {
+        when(s3Client.listObjectsV2Paginator(any(Consumer.class)))
+                .thenReturn(new ListObjectsV2Iterable(s3Client, ListObjectsV2Request.builder().build()));
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .commonPrefixes(CommonPrefix.builder().prefix("video_storage/content/ab/").build())
+                .contents(S3Object.builder().key("video_storage/content/source.mp4").build())
+                .build());
+
+        assertEquals(List.of("ab", "source.mp4"), storageBackend.list("video_storage/content"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.vstream.video_service.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CursorTokenTest {
+
+    @Test
+    void encodedTokenDecodesToTheSameRow() {
+        CursorToken cursorToken = new CursorToken(LocalDateTime.of(2024, 3, 1, 12, 30, 15, 123_456_789),
+                UUID.randomUUID());
+
+        assertEquals(cursorToken, CursorToken.decode(cursorToken.encode()));
+    }
+
+    @Test
+    void missingTokenStartsFromTheBeginning() {
+        assertSame(CursorToken.DESCENDING_START, CursorToken.decode(null));
+        assertSame(CursorToken.DESCENDING_START, CursorToken.decode(""));
+        assertSame(CursorToken.ASCENDING_START, CursorToken.decode(null, CursorToken.ASCENDING_START));
+    }
+
+    @Test
+    void startTokensSortOutsideEveryRealRow() {
+        LocalDateTime now = LocalDateTime.now();
+
+        assertTrue(CursorToken.DESCENDING_START.timestamp().isAfter(now));
+        assertTrue(CursorToken.ASCENDING_START.timestamp().isBefore(now));
+    }
+
+    @Test
+    void malformedTokenIsRejected() {
+        String truncated = Base64.getUrlEncoder().withoutPadding().encodeToString(new byte[12]);
+
+        assertThrows(IllegalArgumentException.class, () -> CursorToken.decode("not a cursor!"));
+        assertThrows(IllegalArgumentException.class, () -> CursorToken.decode(truncated));
+    }
+}
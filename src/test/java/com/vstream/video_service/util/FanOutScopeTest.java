@@ -0,0 +1,113 @@
+package com.vstream.video_service.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FanOutScopeTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void joinReturnsResultsOfAllSubtasks() throws Exception {
+        Future<Integer> first;
+        Future<String> second;
+        try (FanOutScope scope = new FanOutScope(executor)) {
+            first = scope.fork(() -> 1);
+            second = scope.fork(() -> "two");
+            scope.join();
+        }
+        assertEquals(1, first.get());
+        assertEquals("two", second.get());
+    }
+
+    @Test
+    void firstFailureIsRethrownAndCancelsTheOthers() throws Exception {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        AtomicBoolean slowInterrupted = new AtomicBoolean();
+        try (FanOutScope scope = new FanOutScope(executor)) {
+            scope.fork(() -> {
+                slowStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                } catch (InterruptedException e) {
+                    slowInterrupted.set(true);
+                }
+                return null;
+            });
+            scope.fork(() -> {
+                slowStarted.await();
+                throw new IOException("disk full");
+            });
+            IOException failure = assertThrows(IOException.class, scope::join);
+            assertEquals("disk full", failure.getMessage());
+        }
+        assertTrue(slowInterrupted.get());
+    }
+
+    @Test
+    void closeWaitsForCancelledSubtasksToExit() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean exited = new AtomicBoolean();
+        try (FanOutScope scope = new FanOutScope(executor)) {
+            scope.fork(() -> {
+                started.countDown();
+                // Ignores the interrupt for a while, like a subtask stuck in non-interruptible I/O
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+                while (System.nanoTime() < deadline) {
+                    Thread.onSpinWait();
+                }
+                exited.set(true);
+                return null;
+            });
+            started.await();
+        }
+        assertTrue(exited.get());
+    }
+
+    @Test
+    void closeKeepsSubtasksThatNeverStartedFromRunning() throws Exception {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        try {
+            // Occupies the only thread so the scope's subtask stays queued
+            singleThread.execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            try (FanOutScope scope = new FanOutScope(singleThread)) {
+                scope.fork(() -> {
+                    queuedRan.set(true);
+                    return null;
+                });
+            }
+            release.countDown();
+            singleThread.shutdown();
+            assertTrue(singleThread.awaitTermination(5, TimeUnit.SECONDS));
+            assertFalse(queuedRan.get());
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+}